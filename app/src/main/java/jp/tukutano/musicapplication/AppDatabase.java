@@ -1,16 +1,247 @@
 package jp.tukutano.musicapplication;
 
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.room.Database;
+import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import jp.tukutano.musicapplication.db.FavoriteDao;
 import jp.tukutano.musicapplication.db.FavoriteSong;
+import jp.tukutano.musicapplication.db.LibraryDao;
+import jp.tukutano.musicapplication.db.LibrarySong;
+import jp.tukutano.musicapplication.db.LoudnessDao;
+import jp.tukutano.musicapplication.db.Playlist;
+import jp.tukutano.musicapplication.db.PlaylistDao;
+import jp.tukutano.musicapplication.db.PlaylistEntry;
 import jp.tukutano.musicapplication.db.SettingDao;
 import jp.tukutano.musicapplication.db.Setting;
+import jp.tukutano.musicapplication.db.SyncState;
+import jp.tukutano.musicapplication.db.TrackLoudness;
+import jp.tukutano.musicapplication.library.PlaylistStore;
+import jp.tukutano.musicapplication.util.Metric;
+import jp.tukutano.musicapplication.util.Metrics;
 
-@Database(entities = {FavoriteSong.class, Setting.class}, version = 1)
+@Database(entities = {FavoriteSong.class, Setting.class, LibrarySong.class, SyncState.class,
+        Playlist.class, PlaylistEntry.class, TrackLoudness.class},
+        version = 4)
 public abstract class AppDatabase extends RoomDatabase {
+    private static final String TAG = "AppDatabase";
+    private static final String DB_NAME = "music_app_db";
+
+    // プロセス内で共有する唯一のインスタンス
+    private static volatile AppDatabase instance;
+    // DB 専用のクエリ実行スレッド（UI スレッドからのクエリは許可しない）
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService QUERY_EXECUTOR = Executors.newFixedThreadPool(3, r -> {
+        Thread t = new Thread(r, "music-db-" + THREAD_COUNT.incrementAndGet());
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * プロセス共通の AppDatabase を返す（初回呼び出し時に生成）
+     *
+     * @param context コンテキスト
+     * @return AppDatabase インスタンス
+     */
+    public static AppDatabase getInstance(Context context) {
+        AppDatabase db = instance;
+        if (db == null) {
+            synchronized (AppDatabase.class) {
+                db = instance;
+                if (db == null) {
+                    db = Room.databaseBuilder(context.getApplicationContext(),
+                                    AppDatabase.class, DB_NAME)
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4)
+                            .addCallback(CREATE_FAVORITES_PLAYLIST)
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                            .setQueryExecutor(QUERY_EXECUTOR)
+                            .build();
+                    instance = db;
+                }
+            }
+        }
+        return db;
+    }
+
+    /**
+     * getInstance() と同じ初期データ（お気に入りプレイリスト）を持つメモリ上の DB を生成する
+     * UI スレッドからのクエリも許可する（テスト用）
+     *
+     * @param context コンテキスト
+     * @return 新しい AppDatabase インスタンス
+     */
+    @VisibleForTesting
+    public static AppDatabase createInMemory(Context context) {
+        return Room.inMemoryDatabaseBuilder(context.getApplicationContext(), AppDatabase.class)
+                .addCallback(CREATE_FAVORITES_PLAYLIST)
+                .allowMainThreadQueries()
+                .build();
+    }
+
+    /**
+     * getInstance() が返すインスタンスを差し替える（テスト用）
+     * それまでのインスタンスは閉じる。null なら次の getInstance() で作り直す
+     * このインスタンスを持つ LibraryRepository などは先に破棄しておくこと
+     *
+     * @param db 以後 getInstance() が返す DB（createInMemory() で作ったものなど）
+     */
+    @VisibleForTesting
+    public static void setInstanceForTesting(@Nullable AppDatabase db) {
+        AppDatabase old;
+        synchronized (AppDatabase.class) {
+            old = instance;
+            instance = db;
+        }
+        if (old != null && old != db) old.close();
+    }
+
+    /**
+     * クエリ実行スレッドで読み込み、結果を UI スレッドへ返す
+     * 読み込みに失敗しても onResult は必ず呼ぶ（fallback を渡す）
+     *
+     * @param query    DAO の読み込み処理
+     * @param fallback 読み込みに失敗した場合の結果
+     * @param onResult 結果の受け取り先（UI スレッドで呼ばれる）
+     */
+    public <T> void queryAsync(Callable<T> query, T fallback, Consumer<T> onResult) {
+        queryAsync(query, fallback, MAIN_HANDLER::post, onResult);
+    }
+
+    /**
+     * クエリ実行スレッドで読み込み、結果を指定のスレッドへ返す（再生スレッドなど）
+     *
+     * @param callbackExecutor onResult を実行する Executor
+     * @see #queryAsync(Callable, Object, Consumer)
+     */
+    public <T> void queryAsync(Callable<T> query, T fallback, Executor callbackExecutor,
+                               Consumer<T> onResult) {
+        getQueryExecutor().execute(() -> {
+            T result;
+            long startNs = System.nanoTime();
+            try {
+                result = query.call();
+                Metrics.since(Metric.DB_QUERY, startNs);
+            } catch (Exception e) {
+                Log.w(TAG, "読み込みに失敗", e);
+                result = fallback;
+            }
+            T r = result;
+            callbackExecutor.execute(() -> onResult.accept(r));
+        });
+    }
+
+    /**
+     * 書き込みを直列化された実行スレッドで行う（投入順に実行される）
+     *
+     * @param write DAO の書き込み処理
+     */
+    public void writeAsync(Runnable write) {
+        getTransactionExecutor().execute(write);
+    }
+
     public abstract FavoriteDao favoriteDao();
 
     public abstract SettingDao settingDao();
+
+    public abstract LibraryDao libraryDao();
+
+    public abstract PlaylistDao playlistDao();
+
+    public abstract LoudnessDao loudnessDao();
+
+    /**
+     * v1 → v2: 楽曲キャッシュと同期状態テーブルを追加
+     */
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `library_songs` ("
+                    + "`uri` TEXT NOT NULL, `volume` TEXT NOT NULL, `mediaId` INTEGER NOT NULL, "
+                    + "`title` TEXT, `artist` TEXT, `album` TEXT, `duration` INTEGER NOT NULL, "
+                    + "`dateAdded` INTEGER NOT NULL, `generation` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`uri`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_library_songs_volume` "
+                    + "ON `library_songs` (`volume`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_library_songs_dateAdded` "
+                    + "ON `library_songs` (`dateAdded`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `library_sync_state` ("
+                    + "`volume` TEXT NOT NULL, `version` TEXT, `generation` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`volume`))");
+        }
+    };
+
+    /**
+     * v2 → v3: プレイリストとその曲のテーブルを追加し、
+     * 既存のお気に入りをタイトル順でお気に入りプレイリストに移す
+     */
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `playlists` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT, "
+                    + "`createdAt` INTEGER NOT NULL)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `playlist_entries` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`playlistId` INTEGER NOT NULL, `sortKey` REAL NOT NULL, `songId` TEXT, "
+                    + "`title` TEXT, `artist` TEXT, `album` TEXT, `uri` TEXT, "
+                    + "`duration` INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_playlist_entries_playlistId_sortKey` "
+                    + "ON `playlist_entries` (`playlistId`, `sortKey`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_playlist_entries_playlistId_songId` "
+                    + "ON `playlist_entries` (`playlistId`, `songId`)");
+            insertFavoritesPlaylist(database);
+            database.execSQL("INSERT INTO `playlist_entries` "
+                    + "(`playlistId`, `sortKey`, `songId`, `title`, `artist`, `album`, `uri`, `duration`) "
+                    + "SELECT " + PlaylistStore.FAVORITES_ID + ", "
+                    + "ROW_NUMBER() OVER (ORDER BY `title`, `id`) * 1024.0, "
+                    + "`id`, `title`, `artist`, `album`, `uri`, `duration` FROM `favorite_songs`");
+        }
+    };
+
+    /**
+     * v3 → v4: ラウドネス解析結果のテーブルを追加
+     */
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `track_loudness` ("
+                    + "`uri` TEXT NOT NULL, `generation` INTEGER NOT NULL, `failed` INTEGER NOT NULL, "
+                    + "`loudness` REAL NOT NULL, `gainDb` REAL NOT NULL, `peak` REAL NOT NULL, "
+                    + "PRIMARY KEY(`uri`))");
+        }
+    };
+
+    /**
+     * 新規作成時もお気に入りプレイリストを用意する
+     */
+    private static final Callback CREATE_FAVORITES_PLAYLIST = new Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase database) {
+            insertFavoritesPlaylist(database);
+        }
+    };
+
+    private static void insertFavoritesPlaylist(SupportSQLiteDatabase database) {
+        database.execSQL("INSERT OR IGNORE INTO `playlists` (`id`, `name`, `createdAt`) VALUES (?, ?, ?)",
+                new Object[]{PlaylistStore.FAVORITES_ID, PlaylistStore.FAVORITES_NAME,
+                        System.currentTimeMillis()});
+    }
 }
@@ -17,6 +17,8 @@ import androidx.navigation.ui.AppBarConfiguration;
 import androidx.navigation.ui.NavigationUI;
 
 import jp.tukutano.musicapplication.databinding.ActivityMainBinding;
+import jp.tukutano.musicapplication.library.LibraryRepository;
+import jp.tukutano.musicapplication.util.FrameMonitor;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -24,6 +26,8 @@ public class MainActivity extends AppCompatActivity {
     private ActivityMainBinding binding;
     // パーミッション要求時のリクエストコード
     private static final int REQ_PERM = 1001;
+    // 描画フレームの計測（診断画面で表示）
+    private final FrameMonitor frameMonitor = new FrameMonitor();
 
     /**
      * ストレージおよび通知パーミッションをリクエストする
@@ -67,8 +71,8 @@ public class MainActivity extends AppCompatActivity {
         super.onRequestPermissionsResult(requestCode, perms, grantResults);
         if (requestCode == REQ_PERM && grantResults.length > 0
                 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-            // 権限が許可された場合の処理（例: 曲一覧のロード）
-            // loadSongs();
+            // 権限が許可された → 読み込み済みの（空の）ライブラリを MediaStore と同期し直す
+            LibraryRepository.getInstance(this).refresh();
         } else {
             // 権限拒否時はトーストで通知
             Toast.makeText(this, "権限が必要です", Toast.LENGTH_SHORT).show();
@@ -87,6 +91,7 @@ public class MainActivity extends AppCompatActivity {
         // ViewBinding の初期化
         binding = ActivityMainBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
+        frameMonitor.attach(getWindow());
 
         // BottomNavigationView の取得
         BottomNavigationView navView = findViewById(R.id.nav_view);
@@ -109,4 +114,10 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        frameMonitor.detach(getWindow());
+        super.onDestroy();
+    }
+
 }
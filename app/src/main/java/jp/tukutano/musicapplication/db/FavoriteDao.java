@@ -19,6 +19,9 @@ public interface FavoriteDao {
     @Query("SELECT * FROM favorite_songs ORDER BY title")
     List<FavoriteSong> getAllFavorites();
 
+    @Query("SELECT id FROM favorite_songs")
+    List<String> getAllIds();
+
     @Query("SELECT EXISTS(SELECT 1 FROM favorite_songs WHERE id = :id)")
     boolean isFavorite(String id);
-}
\ No newline at end of file
+}
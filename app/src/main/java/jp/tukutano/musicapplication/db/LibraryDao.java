@@ -0,0 +1,40 @@
+package jp.tukutano.musicapplication.db;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface LibraryDao {
+    @Query("SELECT * FROM library_songs ORDER BY dateAdded DESC, uri")
+    List<LibrarySong> getAll();
+
+    /**
+     * (dateAdded DESC, uri) 順で指定位置より後ろのページを取得する（キーセットページング）
+     */
+    @Query("SELECT * FROM library_songs"
+            + " WHERE dateAdded < :dateAdded OR (dateAdded = :dateAdded AND uri > :uri)"
+            + " ORDER BY dateAdded DESC, uri LIMIT :limit")
+    List<LibrarySong> getPageAfter(long dateAdded, String uri, int limit);
+
+    @Query("SELECT uri FROM library_songs WHERE volume = :volume")
+    List<String> getUris(String volume);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(List<LibrarySong> songs);
+
+    @Query("DELETE FROM library_songs WHERE uri IN (:uris)")
+    void deleteByUris(List<String> uris);
+
+    @Query("DELETE FROM library_songs WHERE volume = :volume")
+    void deleteVolume(String volume);
+
+    @Query("SELECT * FROM library_sync_state WHERE volume = :volume LIMIT 1")
+    SyncState getSyncState(String volume);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void putSyncState(SyncState state);
+}
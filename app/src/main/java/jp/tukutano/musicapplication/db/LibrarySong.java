@@ -0,0 +1,39 @@
+package jp.tukutano.musicapplication.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * MediaStore から取得した楽曲のローカルキャッシュ
+ * - 差分同期 (LibrarySync) で更新される
+ */
+@Entity(tableName = "library_songs",
+        indices = {@Index("volume"), @Index("dateAdded")})
+public class LibrarySong {
+    @PrimaryKey
+    @NonNull
+    public String uri;        // 再生用 URI（ボリュームをまたいで一意）
+
+    @NonNull
+    public String volume;     // 例："external_primary"
+    public long mediaId;      // MediaStore での _ID
+    public String title;
+    public String artist;
+    public String album;
+    public long duration;
+    public long dateAdded;    // 並び順 (DATE_ADDED DESC) 用
+    public long generation;   // GENERATION_MODIFIED
+
+    /**
+     * キャッシュ行を表示用の Song モデルに変換
+     *
+     * @return Song オブジェクト
+     */
+    public Song toSong() {
+        return new Song(String.valueOf(mediaId), title, artist, album, uri, duration);
+    }
+}
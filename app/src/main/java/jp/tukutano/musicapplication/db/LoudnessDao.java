@@ -0,0 +1,31 @@
+package jp.tukutano.musicapplication.db;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface LoudnessDao {
+    @Query("SELECT * FROM track_loudness WHERE uri = :uri LIMIT 1")
+    TrackLoudness get(String uri);
+
+    /**
+     * 未解析・更新された曲を uri 順に取得（キーセットページング）
+     */
+    @Query("SELECT s.* FROM library_songs s LEFT JOIN track_loudness l ON l.uri = s.uri"
+            + " WHERE (l.uri IS NULL OR l.generation != s.generation) AND s.uri > :afterUri"
+            + " ORDER BY s.uri LIMIT :limit")
+    List<LibrarySong> getPending(String afterUri, int limit);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(TrackLoudness result);
+
+    /**
+     * ライブラリから消えた曲の結果を削除
+     */
+    @Query("DELETE FROM track_loudness WHERE uri NOT IN (SELECT uri FROM library_songs)")
+    void deleteOrphans();
+}
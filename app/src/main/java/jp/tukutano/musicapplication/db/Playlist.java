@@ -0,0 +1,15 @@
+package jp.tukutano.musicapplication.db;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * ユーザーのプレイリスト（曲は PlaylistEntry に保持）
+ */
+@Entity(tableName = "playlists")
+public class Playlist {
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+    public String name;
+    public long createdAt;    // 作成日時（ミリ秒）
+}
@@ -0,0 +1,58 @@
+package jp.tukutano.musicapplication.db;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface PlaylistDao {
+    @Insert
+    long insertPlaylist(Playlist playlist);
+
+    @Query("SELECT * FROM playlists ORDER BY createdAt")
+    List<Playlist> getPlaylists();
+
+    @Query("DELETE FROM playlists WHERE id = :playlistId")
+    void deletePlaylist(long playlistId);
+
+    @Insert
+    void insertEntries(List<PlaylistEntry> entries);
+
+    @Query("SELECT * FROM playlist_entries WHERE playlistId = :playlistId ORDER BY sortKey")
+    List<PlaylistEntry> getEntries(long playlistId);
+
+    /**
+     * 再生キュー用に並び順の ID だけを取得（曲情報は getEntriesByIds で必要な分だけ読む）
+     */
+    @Query("SELECT id FROM playlist_entries WHERE playlistId = :playlistId ORDER BY sortKey")
+    List<Long> getEntryIds(long playlistId);
+
+    @Query("SELECT * FROM playlist_entries WHERE id IN (:entryIds)")
+    List<PlaylistEntry> getEntriesByIds(List<Long> entryIds);
+
+    @Query("SELECT MAX(sortKey) FROM playlist_entries WHERE playlistId = :playlistId")
+    Double getMaxSortKey(long playlistId);
+
+    /**
+     * 指定エントリを除いた並びで offset 番目から limit 件の sortKey を取得（移動先の前後を調べる）
+     */
+    @Query("SELECT sortKey FROM playlist_entries"
+            + " WHERE playlistId = :playlistId AND id != :excludeId"
+            + " ORDER BY sortKey LIMIT :limit OFFSET :offset")
+    List<Double> getSortKeys(long playlistId, long excludeId, int offset, int limit);
+
+    @Query("UPDATE playlist_entries SET sortKey = :sortKey WHERE id = :entryId")
+    void updateSortKey(long entryId, double sortKey);
+
+    @Query("SELECT EXISTS(SELECT 1 FROM playlist_entries"
+            + " WHERE playlistId = :playlistId AND songId = :songId)")
+    boolean contains(long playlistId, String songId);
+
+    @Query("DELETE FROM playlist_entries WHERE playlistId = :playlistId AND songId = :songId")
+    void deleteSong(long playlistId, String songId);
+
+    @Query("DELETE FROM playlist_entries WHERE playlistId = :playlistId")
+    void deleteEntries(long playlistId);
+}
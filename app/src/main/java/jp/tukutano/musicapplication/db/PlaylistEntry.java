@@ -0,0 +1,34 @@
+package jp.tukutano.musicapplication.db;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * プレイリスト内の 1 曲
+ * - 並び順は sortKey の昇順。並べ替えは前後の sortKey の中間値を入れるだけで済む
+ *   （行の書き換えは 1 件。詰まったら PlaylistStore が振り直す）
+ */
+@Entity(tableName = "playlist_entries",
+        indices = {@Index({"playlistId", "sortKey"}), @Index({"playlistId", "songId"})})
+public class PlaylistEntry {
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+    public long playlistId;
+    public double sortKey;
+    public String songId;     // Song.id と同じ値
+    public String title;
+    public String artist;
+    public String album;
+    public String uri;
+    public long duration;
+
+    /**
+     * 表示用の Song モデルに変換
+     */
+    public Song toSong() {
+        return new Song(songId, title, artist, album, uri, duration);
+    }
+}
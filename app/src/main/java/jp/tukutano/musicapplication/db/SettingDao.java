@@ -5,11 +5,19 @@ import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 
+import java.util.List;
+
 @Dao
 public interface SettingDao {
     @Query("SELECT value FROM settings WHERE keyid = :key LIMIT 1")
     Float getValue(String key);
 
+    @Query("SELECT * FROM settings")
+    List<Setting> getAll();
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insert(Setting setting);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<Setting> settings);
 }
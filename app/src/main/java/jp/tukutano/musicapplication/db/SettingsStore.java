@@ -0,0 +1,192 @@
+package jp.tukutano.musicapplication.db;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jp.tukutano.musicapplication.AppDatabase;
+
+/**
+ * settings テーブルのメモリキャッシュ兼書き込みバッファ
+ * - 起動時に全設定を一度だけ読み込み、以降の読み取りはメモリから返す
+ * - 書き込みはメモリに即時反映し、連続した変更はまとめて一定時間後に非同期で永続化する
+ * - 画面停止時などは flush() で即時に永続化する
+ */
+public class SettingsStore {
+    // 設定キー
+    public static final String KEY_VOLUME = "volume";
+    // 再生エンジン（true: MediaCodec + AudioTrack / false: MediaPlayer）
+    public static final String KEY_CODEC_ENGINE = "codec_engine";
+    // MediaCodec + AudioTrack 再生のバッファ構成
+    public static final String KEY_CODEC_SLOT_KB = "codec_slot_kb";
+    public static final String KEY_CODEC_SLOTS = "codec_slots";
+    public static final String KEY_CODEC_TRACK_BUFFER_MS = "codec_track_buffer_ms";
+    // 曲間のクロスフェード（長さ・カーブの番号）
+    public static final String KEY_CROSSFADE_MS = "crossfade_ms";
+    public static final String KEY_CROSSFADE_CURVE = "crossfade_curve";
+    // 出力に掛ける DSP（EQ プリセットの番号・コンプレッサー・リミッター）
+    public static final String KEY_EQ_PRESET = "eq_preset";
+    public static final String KEY_COMPRESSOR = "compressor";
+    public static final String KEY_LIMITER = "limiter";
+    // 書き込みをまとめる時間
+    private static final long FLUSH_DELAY_MS = 500;
+
+    private static volatile SettingsStore instance;
+
+    private final AppDatabase db;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Float> values = new ConcurrentHashMap<>();
+    // 未永続化のキー
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final Runnable flushTask = this::flush;
+    // 初回読み込み完了待ちの処理（UI スレッドのみで操作）
+    private final List<Runnable> pendingOnLoaded = new ArrayList<>();
+    private volatile boolean loaded;
+    // 初回読み込みの完了（UI スレッド以外から待つ用）
+    private final CountDownLatch loadedLatch = new CountDownLatch(1);
+
+    /**
+     * プロセス共通の SettingsStore を返す（初回呼び出し時に読み込みを開始）
+     *
+     * @param context コンテキスト
+     * @return SettingsStore インスタンス
+     */
+    public static SettingsStore getInstance(Context context) {
+        SettingsStore store = instance;
+        if (store == null) {
+            synchronized (SettingsStore.class) {
+                store = instance;
+                if (store == null) {
+                    store = new SettingsStore(AppDatabase.getInstance(context));
+                    instance = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * インスタンスを破棄する（テスト用。次の getInstance() で作り直す）
+     * 未永続化の値は書き込まずに捨てる
+     */
+    @VisibleForTesting
+    public static void resetForTesting() {
+        SettingsStore store;
+        synchronized (SettingsStore.class) {
+            store = instance;
+            instance = null;
+        }
+        if (store != null) store.mainHandler.removeCallbacks(store.flushTask);
+    }
+
+    private SettingsStore(AppDatabase db) {
+        this.db = db;
+        // 読めなかった場合も既定値のまま読み込み済みにする（whenLoaded の処理を止めない）
+        db.queryAsync(() -> db.settingDao().getAll(), Collections.emptyList(), this::onLoaded);
+    }
+
+    /**
+     * 初回読み込み結果をメモリに反映（読み込み前に書かれた値を優先）
+     */
+    private void onLoaded(List<Setting> rows) {
+        for (Setting row : rows) values.putIfAbsent(row.keyid, row.value);
+        loaded = true;
+        loadedLatch.countDown();
+        for (Runnable r : pendingOnLoaded) r.run();
+        pendingOnLoaded.clear();
+    }
+
+    /**
+     * 初回読み込み完了後に処理を実行する（読み込み済みなら即時）
+     * UI スレッドから呼ぶこと
+     *
+     * @param action 実行する処理（UI スレッドで呼ばれる）
+     */
+    public void whenLoaded(Runnable action) {
+        if (loaded) {
+            action.run();
+        } else {
+            pendingOnLoaded.add(action);
+        }
+    }
+
+    /**
+     * 初回読み込みの完了を待つ（再生スレッドなど、UI スレッド以外から呼ぶこと）
+     * 読み込み結果は UI スレッドで反映されるため、UI スレッドから呼ぶと必ずタイムアウトする
+     *
+     * @param timeoutMs 待つ時間の上限
+     * @return 読み込み済みなら true。タイムアウトした場合は false（値は既定値のまま）
+     */
+    public boolean awaitLoaded(long timeoutMs) {
+        try {
+            return loadedLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return loaded;
+        }
+    }
+
+    public float getFloat(String key, float defaultValue) {
+        Float v = values.get(key);
+        return v != null ? v : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Float v = values.get(key);
+        return v != null ? Math.round(v) : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Float v = values.get(key);
+        return v != null ? v != 0f : defaultValue;
+    }
+
+    /**
+     * 値をメモリに反映し、永続化を予約する
+     *
+     * @param key   設定キー
+     * @param value 値
+     */
+    public void putFloat(String key, float value) {
+        Float old = values.put(key, value);
+        if (old != null && old == value) return;
+        dirty.add(key);
+        mainHandler.removeCallbacks(flushTask);
+        mainHandler.postDelayed(flushTask, FLUSH_DELAY_MS);
+    }
+
+    public void putInt(String key, int value) {
+        putFloat(key, value);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        putFloat(key, value ? 1f : 0f);
+    }
+
+    /**
+     * 未永続化の値をまとめて非同期に書き込む
+     */
+    public void flush() {
+        mainHandler.removeCallbacks(flushTask);
+        if (dirty.isEmpty()) return;
+        List<Setting> batch = new ArrayList<>();
+        for (String key : dirty) {
+            dirty.remove(key);
+            Float v = values.get(key);
+            if (v != null) batch.add(new Setting(key, v));
+        }
+        if (batch.isEmpty()) return;
+        db.writeAsync(() -> db.settingDao().insertAll(batch));
+    }
+}
@@ -0,0 +1,29 @@
+package jp.tukutano.musicapplication.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * ボリュームごとの最終同期位置
+ */
+@Entity(tableName = "library_sync_state")
+public class SyncState {
+    @PrimaryKey
+    @NonNull
+    public String volume;     // 例："external_primary"
+    public String version;    // MediaStore.getVersion() の値（変化したら全件再スキャン）
+    public long generation;   // 最終同期時の MediaStore.getGeneration() の値
+
+    /**
+     * Room がインスタンスを生成できるように必須の空コンストラクタ
+     */
+    public SyncState() {
+    }
+
+    public SyncState(@NonNull String volume, String version, long generation) {
+        this.volume = volume;
+        this.version = version;
+        this.generation = generation;
+    }
+}
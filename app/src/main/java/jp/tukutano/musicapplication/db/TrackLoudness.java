@@ -0,0 +1,33 @@
+package jp.tukutano.musicapplication.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * 曲ごとのラウドネス解析結果
+ * - LoudnessScanner が書き込み、MusicService が再生時のゲインに使う
+ * - 曲のファイルが更新された（generation が変わった）ら解析し直す
+ */
+@Entity(tableName = "track_loudness")
+public class TrackLoudness {
+    @PrimaryKey
+    @NonNull
+    public String uri;        // library_songs.uri
+    public long generation;   // 解析時の library_songs.generation
+    public boolean failed;    // デコードできなかった（再試行しない）
+    public float loudness;    // 統合ラウドネス（LUFS）
+    public float gainDb;      // 基準ラウドネスに合わせるゲイン（ReplayGain）
+    public float peak;        // サンプルピーク（1.0 = フルスケール）
+
+    /**
+     * Room がインスタンスを生成できるように必須の空コンストラクタ
+     */
+    public TrackLoudness() {
+    }
+
+    public TrackLoudness(@NonNull String uri, long generation) {
+        this.uri = uri;
+        this.generation = generation;
+    }
+}
@@ -0,0 +1,90 @@
+package jp.tukutano.musicapplication.dsp;
+
+/**
+ * フィードフォワード型のコンプレッサー（全チャンネル連動）
+ * - フレームごとのピークから、ソフトニー付きの特性で目標の圧縮量（dB）を求める
+ * - 圧縮量はアタック・リリースの時定数でならし、メイクアップゲインと合わせて掛ける
+ * メイクアップで持ち上げた分は 0 dBFS を超えうるので、後段に Limiter を置くこと
+ */
+public final class Compressor implements DspStage {
+
+    // 20 / ln(10)、ln(10) / 20（dB と倍率の変換）
+    private static final float DB_PER_NEPER = 8.685889638f;
+    private static final float NEPER_PER_DB = 0.115129255f;
+    // これより小さいピークは無音として扱う
+    private static final float SILENCE_DB = -120f;
+
+    private final float thresholdDb;
+    private final float ratio;
+    private final float kneeDb;
+    private final float attackMs;
+    private final float releaseMs;
+    private final float makeupDb;
+
+    private int channels;
+    private float attackCoef;
+    private float releaseCoef;
+    // 現在の圧縮量（dB、0 以上）
+    private float reductionDb;
+
+    /**
+     * @param thresholdDb 圧縮を始めるレベル（dBFS）
+     * @param ratio       圧縮比（1 以上）
+     * @param kneeDb      ソフトニーの幅（0 でハードニー）
+     * @param attackMs    圧縮がかかる速さ
+     * @param releaseMs   圧縮が戻る速さ
+     * @param makeupDb    全体に足すゲイン
+     */
+    public Compressor(float thresholdDb, float ratio, float kneeDb,
+                      float attackMs, float releaseMs, float makeupDb) {
+        if (ratio < 1f || kneeDb < 0f || attackMs <= 0f || releaseMs <= 0f) {
+            throw new IllegalArgumentException();
+        }
+        this.thresholdDb = thresholdDb;
+        this.ratio = ratio;
+        this.kneeDb = kneeDb;
+        this.attackMs = attackMs;
+        this.releaseMs = releaseMs;
+        this.makeupDb = makeupDb;
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channels) {
+        this.channels = channels;
+        attackCoef = (float) Math.exp(-1000.0 / (attackMs * sampleRate));
+        releaseCoef = (float) Math.exp(-1000.0 / (releaseMs * sampleRate));
+        reductionDb = 0f;
+    }
+
+    @Override
+    public void process(float[] buf, int frames) {
+        int ch = channels;
+        float r = reductionDb;
+        for (int f = 0, at = 0; f < frames; f++, at += ch) {
+            float peak = 0f;
+            for (int c = 0; c < ch; c++) peak = Math.max(peak, Math.abs(buf[at + c]));
+            float levelDb = peak > 1e-6f ? (float) Math.log(peak) * DB_PER_NEPER : SILENCE_DB;
+            float target = reduction(levelDb);
+            float coef = target > r ? attackCoef : releaseCoef;
+            r = target + coef * (r - target);
+            float gain = (float) Math.exp((makeupDb - r) * NEPER_PER_DB);
+            for (int c = 0; c < ch; c++) buf[at + c] *= gain;
+        }
+        reductionDb = r;
+    }
+
+    /**
+     * @param levelDb 入力レベル（dBFS）
+     * @return 目標の圧縮量（dB、0 以上）
+     */
+    float reduction(float levelDb) {
+        float over = levelDb - thresholdDb;
+        float slope = 1f - 1f / ratio;
+        if (2f * over <= -kneeDb) return 0f;
+        if (2f * over < kneeDb) {
+            float x = over + kneeDb / 2f;
+            return slope * x * x / (2f * kneeDb);
+        }
+        return slope * over;
+    }
+}
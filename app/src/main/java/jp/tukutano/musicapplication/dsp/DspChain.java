@@ -0,0 +1,66 @@
+package jp.tukutano.musicapplication.dsp;
+
+/**
+ * DspStage を順に掛ける処理チェーン（1 本の出力につき 1 つ）
+ * - setStages() は任意のスレッドから呼べる。段の prepare() は呼び出し側のスレッドで済ませ、
+ *   出力スレッドは次の process() で差し替える
+ * - 差し替えるブロックでは旧チェーンと新チェーンの両方を通し、ブロック内で直線的に
+ *   クロスフェードする（段ごとの状態や遅延の違いで音が途切れたりクリックが出ないように）
+ * process() はオブジェクトを確保しない
+ */
+public final class DspChain {
+
+    private static final DspStage[] NONE = new DspStage[0];
+
+    private final int sampleRate;
+    private final int channels;
+    // 差し替え時に新チェーン側を通す作業領域
+    private final float[] fresh;
+    private volatile DspStage[] pending = NONE;
+    // 出力スレッドだけが触る
+    private DspStage[] active = NONE;
+
+    /**
+     * @param sampleRate サンプルレート（Hz）
+     * @param channels   チャンネル数
+     * @param maxSamples process() に一度に渡す最大サンプル数（フレーム数 × チャンネル数）
+     */
+    public DspChain(int sampleRate, int channels, int maxSamples) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.fresh = new float[maxSamples];
+    }
+
+    /**
+     * 段を差し替える（空なら素通し）。渡した段はこのチェーン専用になる
+     */
+    public void setStages(DspStage... stages) {
+        for (DspStage s : stages) s.prepare(sampleRate, channels);
+        pending = stages.length == 0 ? NONE : stages.clone();
+    }
+
+    /**
+     * @param buf    インターリーブされた PCM（その場で書き換える）
+     * @param frames 先頭から処理するフレーム数
+     */
+    public void process(float[] buf, int frames) {
+        DspStage[] next = pending;
+        if (next == active) {
+            run(active, buf, frames);
+            return;
+        }
+        int samples = frames * channels;
+        System.arraycopy(buf, 0, fresh, 0, samples);
+        run(active, buf, frames);
+        run(next, fresh, frames);
+        active = next;
+        for (int f = 0, at = 0; f < frames; f++) {
+            float t = (f + 1f) / frames;
+            for (int c = 0; c < channels; c++, at++) buf[at] += (fresh[at] - buf[at]) * t;
+        }
+    }
+
+    private static void run(DspStage[] stages, float[] buf, int frames) {
+        for (DspStage s : stages) s.process(buf, frames);
+    }
+}
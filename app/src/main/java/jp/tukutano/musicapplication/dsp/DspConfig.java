@@ -0,0 +1,57 @@
+package jp.tukutano.musicapplication.dsp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 再生時に掛ける DSP の設定（不変）。出力ごとに createStages() で段を作る
+ * 並びは EQ → コンプレッサー → リミッター。コンプレッサーで持ち上げた分が
+ * 音割れしないよう、コンプレッサーを使う時はリミッターも必ず入れる
+ */
+public final class DspConfig {
+
+    public static final DspConfig OFF = new DspConfig(EqPreset.FLAT, false, false);
+
+    public final EqPreset eq;
+    public final boolean compressor;
+    public final boolean limiter;
+
+    public DspConfig(EqPreset eq, boolean compressor, boolean limiter) {
+        this.eq = eq;
+        this.compressor = compressor;
+        this.limiter = limiter;
+    }
+
+    public boolean isOff() {
+        return eq == EqPreset.FLAT && !compressor && !limiter;
+    }
+
+    /**
+     * @return 新しい段の並び（素通しなら空）
+     */
+    public DspStage[] createStages() {
+        List<DspStage> stages = new ArrayList<>(3);
+        ParametricEq e = eq.create();
+        if (e != null) stages.add(e);
+        if (compressor) {
+            // 小さな音を持ち上げる（-30 dBFS 以上を 3:1 で圧縮し、+8 dB 戻す）
+            stages.add(new Compressor(-30f, 3f, 6f, 10f, 200f, 8f));
+        }
+        if (compressor || limiter) stages.add(new Limiter(-1f, 5f, 80f));
+        return stages.toArray(new DspStage[0]);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DspConfig)) return false;
+        DspConfig other = (DspConfig) o;
+        return eq == other.eq && compressor == other.compressor && limiter == other.limiter;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(eq, compressor, limiter);
+    }
+}
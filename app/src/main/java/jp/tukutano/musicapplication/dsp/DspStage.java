@@ -0,0 +1,23 @@
+package jp.tukutano.musicapplication.dsp;
+
+/**
+ * DspChain の 1 段（インターリーブされた float PCM をその場で書き換える）
+ * - 状態（フィルタの履歴・エンベロープなど）を持つため、1 つのチェーンでのみ使うこと
+ * - process() はオーディオ出力スレッドから呼ばれる。オブジェクトを確保しないこと
+ */
+public interface DspStage {
+
+    /**
+     * 形式が決まった時に一度だけ呼ばれる（係数の計算・作業領域の確保はここで行う）
+     *
+     * @param sampleRate サンプルレート（Hz）
+     * @param channels   チャンネル数
+     */
+    void prepare(int sampleRate, int channels);
+
+    /**
+     * @param buf    インターリーブされた PCM（-1.0〜1.0 が基準）
+     * @param frames 先頭から処理するフレーム数
+     */
+    void process(float[] buf, int frames);
+}
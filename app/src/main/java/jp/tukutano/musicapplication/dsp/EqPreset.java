@@ -0,0 +1,54 @@
+package jp.tukutano.musicapplication.dsp;
+
+import androidx.annotation.Nullable;
+
+/**
+ * イコライザのプリセット
+ */
+public enum EqPreset {
+    FLAT("フラット"),
+    // 風切り音に埋もれる低域を削ってヘッドルームを空け、聞き取りやすい中高域を持ち上げる
+    WIND("風切り音対策"),
+    VOCAL("ボーカル"),
+    BASS("低音強調");
+
+    public final String label;
+
+    EqPreset(String label) {
+        this.label = label;
+    }
+
+    /**
+     * 設定値から戻す（範囲外は FLAT）
+     */
+    public static EqPreset of(int ordinal) {
+        EqPreset[] all = values();
+        return ordinal >= 0 && ordinal < all.length ? all[ordinal] : FLAT;
+    }
+
+    /**
+     * @return プリセットの EQ 段。FLAT なら null（段を入れない）
+     */
+    @Nullable
+    public ParametricEq create() {
+        switch (this) {
+            case WIND:
+                return new ParametricEq(
+                        new ParametricEq.Band(ParametricEq.Type.HIGH_PASS, 120f, 0f, 0.707f),
+                        new ParametricEq.Band(ParametricEq.Type.PEAK, 1000f, 2f, 1.0f),
+                        new ParametricEq.Band(ParametricEq.Type.PEAK, 3000f, 5f, 1.0f),
+                        new ParametricEq.Band(ParametricEq.Type.HIGH_SHELF, 8000f, 2f, 0.707f));
+            case VOCAL:
+                return new ParametricEq(
+                        new ParametricEq.Band(ParametricEq.Type.PEAK, 250f, -2f, 1.0f),
+                        new ParametricEq.Band(ParametricEq.Type.PEAK, 2500f, 4f, 1.2f),
+                        new ParametricEq.Band(ParametricEq.Type.HIGH_SHELF, 10000f, 1f, 0.707f));
+            case BASS:
+                return new ParametricEq(
+                        new ParametricEq.Band(ParametricEq.Type.LOW_SHELF, 100f, 6f, 0.707f),
+                        new ParametricEq.Band(ParametricEq.Type.PEAK, 3000f, 1f, 1.0f));
+            default:
+                return null;
+        }
+    }
+}
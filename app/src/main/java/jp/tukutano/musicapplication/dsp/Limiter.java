@@ -0,0 +1,116 @@
+package jp.tukutano.musicapplication.dsp;
+
+import java.util.Arrays;
+
+/**
+ * 先読み型のピークリミッター（出力が ceiling を超えない）
+ * - フレームごとに ceiling に収める倍率を求め、リリースでならす（下げる方向は即時）
+ * - 先読み幅 W の区間最小（単調キュー）を取り、さらに W の移動平均で滑らかにする。
+ *   音は W - 1 フレーム遅らせて掛けるので、移動平均の全要素がそのフレームの倍率以下になる
+ * 作業領域は prepare() で確保し、process() では確保しない
+ */
+public final class Limiter implements DspStage {
+
+    private final float ceilingDb;
+    private final float lookaheadMs;
+    private final float releaseMs;
+
+    private int channels;
+    private float ceiling;
+    private float releaseStep;
+    private int window;
+    // 遅延線（window - 1 フレーム）
+    private float[] delay;
+    private int delayPos;
+    // 区間最小用の単調キュー（フレーム番号と倍率のリング）
+    private long[] queueFrame;
+    private float[] queueGain;
+    private int queueHead;
+    private int queueSize;
+    // 移動平均
+    private float[] avg;
+    private int avgPos;
+    private double avgSum;
+    private float released;
+    private long frame;
+
+    /**
+     * @param ceilingDb   出力の上限（dBFS）
+     * @param lookaheadMs 先読み幅（遅延もこの長さになる）
+     * @param releaseMs   倍率が戻る速さ
+     */
+    public Limiter(float ceilingDb, float lookaheadMs, float releaseMs) {
+        if (ceilingDb > 0f || lookaheadMs <= 0f || releaseMs <= 0f) throw new IllegalArgumentException();
+        this.ceilingDb = ceilingDb;
+        this.lookaheadMs = lookaheadMs;
+        this.releaseMs = releaseMs;
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channels) {
+        this.channels = channels;
+        ceiling = (float) Math.pow(10.0, ceilingDb / 20.0);
+        releaseStep = (float) (1.0 - Math.exp(-1000.0 / (releaseMs * sampleRate)));
+        window = Math.max(2, Math.round(lookaheadMs * sampleRate / 1000f) + 1);
+        delay = new float[(window - 1) * channels];
+        delayPos = 0;
+        queueFrame = new long[window];
+        queueGain = new float[window];
+        queueHead = 0;
+        queueSize = 0;
+        avg = new float[window];
+        Arrays.fill(avg, 1f);
+        avgPos = 0;
+        avgSum = window;
+        released = 1f;
+        frame = 0;
+    }
+
+    /**
+     * @return 遅延フレーム数
+     */
+    public int latencyFrames() {
+        return window - 1;
+    }
+
+    @Override
+    public void process(float[] buf, int frames) {
+        int ch = channels;
+        int w = window;
+        for (int f = 0, at = 0; f < frames; f++, at += ch, frame++) {
+            float peak = 0f;
+            for (int c = 0; c < ch; c++) peak = Math.max(peak, Math.abs(buf[at + c]));
+            float need = peak > ceiling ? ceiling / peak : 1f;
+            // 戻りはリリースでならし、下げる方向は即時
+            released = Math.min(need, released + (1f - released) * releaseStep);
+
+            // 区間最小：期限切れを先頭から、自分以上を末尾から捨てて追加
+            if (queueSize > 0 && queueFrame[queueHead] <= frame - w) {
+                queueHead = (queueHead + 1) % w;
+                queueSize--;
+            }
+            while (queueSize > 0 && queueGain[(queueHead + queueSize - 1) % w] >= released) queueSize--;
+            int tail = (queueHead + queueSize) % w;
+            queueFrame[tail] = frame;
+            queueGain[tail] = released;
+            queueSize++;
+            float held = queueGain[queueHead];
+
+            // 移動平均
+            avgSum += held - avg[avgPos];
+            avg[avgPos] = held;
+            avgPos = avgPos + 1 == w ? 0 : avgPos + 1;
+            float gain = (float) (avgSum / w);
+
+            // 遅延させた音に掛ける（誤差で超えないよう最後に丸める）
+            for (int c = 0; c < ch; c++) {
+                float in = buf[at + c];
+                float out = delay[delayPos + c] * gain;
+                delay[delayPos + c] = in;
+                buf[at + c] = Math.max(-ceiling, Math.min(ceiling, out));
+            }
+            delayPos += ch;
+            if (delayPos == delay.length) delayPos = 0;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package jp.tukutano.musicapplication.dsp;
+
+/**
+ * パラメトリックイコライザ（バンドごとの双 2 次フィルタを直列に掛ける）
+ * - 係数は RBJ Audio EQ Cookbook の式でサンプルレートから設計する
+ * - 転置直接形 II。状態はチャンネルごとに double で持つ（低域のフィルタでも精度が落ちない）
+ */
+public final class ParametricEq implements DspStage {
+
+    public enum Type {
+        PEAK,
+        LOW_SHELF,
+        HIGH_SHELF,
+        HIGH_PASS
+    }
+
+    /**
+     * 1 バンドの設定
+     */
+    public static final class Band {
+        public final Type type;
+        public final float freqHz;
+        public final float gainDb;   // HIGH_PASS では使わない
+        public final float q;
+
+        public Band(Type type, float freqHz, float gainDb, float q) {
+            if (freqHz <= 0 || q <= 0) throw new IllegalArgumentException();
+            this.type = type;
+            this.freqHz = freqHz;
+            this.gainDb = gainDb;
+            this.q = q;
+        }
+    }
+
+    private final Band[] bands;
+    private int channels;
+    // バンドごとの係数 b0, b1, b2, a1, a2（a0 = 1 に正規化済み）
+    private double[] coef;
+    // バンド・チャンネルごとの状態 z1, z2
+    private double[] state;
+
+    public ParametricEq(Band... bands) {
+        this.bands = bands.clone();
+    }
+
+    @Override
+    public void prepare(int sampleRate, int channels) {
+        this.channels = channels;
+        coef = new double[bands.length * 5];
+        state = new double[bands.length * channels * 2];
+        for (int i = 0; i < bands.length; i++) design(bands[i], sampleRate, coef, i * 5);
+    }
+
+    @Override
+    public void process(float[] buf, int frames) {
+        int ch = channels;
+        for (int b = 0; b < bands.length; b++) {
+            int k = b * 5;
+            double b0 = coef[k], b1 = coef[k + 1], b2 = coef[k + 2], a1 = coef[k + 3], a2 = coef[k + 4];
+            for (int c = 0; c < ch; c++) {
+                int s = (b * ch + c) * 2;
+                double z1 = state[s];
+                double z2 = state[s + 1];
+                for (int i = c, end = frames * ch; i < end; i += ch) {
+                    double x = buf[i];
+                    double y = b0 * x + z1;
+                    z1 = b1 * x - a1 * y + z2;
+                    z2 = b2 * x - a2 * y;
+                    buf[i] = (float) y;
+                }
+                state[s] = z1;
+                state[s + 1] = z2;
+            }
+        }
+    }
+
+    /**
+     * バンドの係数を out[at..at+4] に書く
+     */
+    static void design(Band band, int sampleRate, double[] out, int at) {
+        // ナイキスト周波数の手前に収める
+        double f = Math.min(band.freqHz, sampleRate * 0.45);
+        double w0 = 2 * Math.PI * f / sampleRate;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * band.q);
+        double a = Math.pow(10.0, band.gainDb / 40.0);
+        double sqrtA2Alpha = 2 * Math.sqrt(a) * alpha;
+        double b0, b1, b2, a0, a1, a2;
+        switch (band.type) {
+            case LOW_SHELF:
+                b0 = a * ((a + 1) - (a - 1) * cos + sqrtA2Alpha);
+                b1 = 2 * a * ((a - 1) - (a + 1) * cos);
+                b2 = a * ((a + 1) - (a - 1) * cos - sqrtA2Alpha);
+                a0 = (a + 1) + (a - 1) * cos + sqrtA2Alpha;
+                a1 = -2 * ((a - 1) + (a + 1) * cos);
+                a2 = (a + 1) + (a - 1) * cos - sqrtA2Alpha;
+                break;
+            case HIGH_SHELF:
+                b0 = a * ((a + 1) + (a - 1) * cos + sqrtA2Alpha);
+                b1 = -2 * a * ((a - 1) + (a + 1) * cos);
+                b2 = a * ((a + 1) + (a - 1) * cos - sqrtA2Alpha);
+                a0 = (a + 1) - (a - 1) * cos + sqrtA2Alpha;
+                a1 = 2 * ((a - 1) - (a + 1) * cos);
+                a2 = (a + 1) - (a - 1) * cos - sqrtA2Alpha;
+                break;
+            case HIGH_PASS:
+                b0 = (1 + cos) / 2;
+                b1 = -(1 + cos);
+                b2 = (1 + cos) / 2;
+                a0 = 1 + alpha;
+                a1 = -2 * cos;
+                a2 = 1 - alpha;
+                break;
+            default:
+                b0 = 1 + alpha * a;
+                b1 = -2 * cos;
+                b2 = 1 - alpha * a;
+                a0 = 1 + alpha / a;
+                a1 = -2 * cos;
+                a2 = 1 - alpha / a;
+                break;
+        }
+        out[at] = b0 / a0;
+        out[at + 1] = b1 / a0;
+        out[at + 2] = b2 / a0;
+        out[at + 3] = a1 / a0;
+        out[at + 4] = a2 / a0;
+    }
+}
@@ -0,0 +1,390 @@
+package jp.tukutano.musicapplication.library;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.Size;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * アルバムアートのサムネイルキャッシュ
+ * - キーはアルバム（ALBUM_ID と、アルバム内の曲の最新の DATE_MODIFIED）とサイズ
+ *   同じアルバムの曲は 1 枚を共有し、タグが書き換えられた曲があればキーが変わって読み直す
+ *   曲 → アルバムの対応は初回に MediaStore で調べ、メモリに覚える
+ * - メモリ: バイト数で上限を決めた LRU。一覧のスクロール中はここだけを同期的に見る
+ * - ディスク: cacheDir/artwork に縮小済み画像を保存し、次回起動以降はデコードを省く
+ * - 読み込みは少数のバックグラウンドスレッドで行い、新しい要求から処理する
+ *   （高速スクロール中は画面外へ流れた行より、今見えている行を先に出すため）
+ * - 画像のない曲も記録し、同じ曲で何度も読み込みを試みない
+ *   記録は MISSING_TTL_MS で期限切れにする（後からタグに画像が埋め込まれた曲も拾い直すため）
+ */
+public class ArtworkCache {
+    private static final String TAG = "ArtworkCache";
+
+    // デコードに使うスレッド数
+    private static final int THREADS = 2;
+    // メモリキャッシュの上限（ヒープの 1/8 と比べて小さい方）
+    private static final int MAX_MEMORY_BYTES = 32 * 1024 * 1024;
+    // ディスクキャッシュの上限と、超えた時に減らす先
+    private static final long MAX_DISK_BYTES = 64L * 1024 * 1024;
+    private static final long TRIM_DISK_BYTES = MAX_DISK_BYTES * 3 / 4;
+    private static final int WEBP_QUALITY = 85;
+    // 画像なしの記録の有効期間
+    private static final long MISSING_TTL_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static volatile ArtworkCache instance;
+
+    /**
+     * 読み込み結果の受け取り（UI スレッドで呼ばれる）
+     */
+    public interface Callback {
+        /**
+         * @param bitmap サムネイル。画像がない曲なら null
+         */
+        void onArtwork(@Nullable Bitmap bitmap);
+    }
+
+    /**
+     * 読み込み中の要求（行の再利用時などに cancel() する）
+     */
+    public static final class Request implements Runnable {
+        private final ArtworkCache cache;
+        private final Uri uri;
+        private final int sizePx;
+        private final Callback callback;
+        private final CancellationSignal signal = new CancellationSignal();
+        private volatile boolean cancelled;
+
+        private Request(ArtworkCache cache, Uri uri, int sizePx, Callback callback) {
+            this.cache = cache;
+            this.uri = uri;
+            this.sizePx = sizePx;
+            this.callback = callback;
+        }
+
+        /**
+         * 要求を取り消す。以降コールバックは呼ばれない（UI スレッドから呼ぶこと）
+         */
+        public void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            signal.cancel();
+            // まだ待ち行列にあれば取り除く
+            cache.executor.remove(this);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) return;
+            Bitmap bitmap;
+            try {
+                bitmap = cache.loadBlocking(uri, sizePx, signal);
+            } catch (OperationCanceledException e) {
+                return;
+            }
+            cache.mainHandler.post(() -> {
+                if (!cancelled) callback.onArtwork(bitmap);
+            });
+        }
+    }
+
+    private final ContentResolver resolver;
+    private final File diskDir;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Bitmap> memory;
+    // 曲 ID（再生用 URI の末尾）→ アートワークの取り出し元
+    private final LruCache<String, Art> arts = new LruCache<>(4096);
+    // 画像のない曲（キー → 記録した時刻）
+    private final LruCache<String, Long> missing = new LruCache<>(4096);
+    private final ThreadPoolExecutor executor;
+    // ディスクキャッシュの合計サイズ（初回の読み込み時に数える。-1 は未集計）
+    private final AtomicLong diskBytes = new AtomicLong(-1);
+
+    /**
+     * プロセス共通の ArtworkCache を返す
+     *
+     * @param context コンテキスト
+     * @return ArtworkCache インスタンス
+     */
+    public static ArtworkCache getInstance(Context context) {
+        ArtworkCache cache = instance;
+        if (cache == null) {
+            synchronized (ArtworkCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    cache = new ArtworkCache(context.getApplicationContext());
+                    instance = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * インスタンスを破棄する（テスト用。次の getInstance() で作り直す）
+     * 未着手の読み込みは捨てる（コールバックされない）
+     */
+    @VisibleForTesting
+    public static void resetForTesting() {
+        ArtworkCache cache;
+        synchronized (ArtworkCache.class) {
+            cache = instance;
+            instance = null;
+        }
+        if (cache != null) cache.executor.shutdownNow();
+    }
+
+    private ArtworkCache(Context context) {
+        resolver = context.getContentResolver();
+        diskDir = new File(context.getCacheDir(), "artwork");
+        int maxBytes = (int) Math.min(MAX_MEMORY_BYTES, Runtime.getRuntime().maxMemory() / 8);
+        memory = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LifoQueue(), r -> {
+                    Thread t = new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }, "artwork-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * サムネイルを読み込む。メモリにあれば（画像なしと分かっていれば）その場でコールバックする
+     *
+     * @param uri      曲の再生用 URI
+     * @param sizePx   表示サイズ（これ以下に縮小してデコードする）
+     * @param callback 結果の受け取り（UI スレッドで呼ばれる）
+     * @return 読み込み中の要求。その場で済んだ場合は null
+     */
+    @Nullable
+    public Request load(String uri, int sizePx, Callback callback) {
+        Uri u = Uri.parse(uri);
+        Art art = arts.get(songKeyOf(u));
+        if (art != null) {
+            String key = art.keyOf(sizePx);
+            Bitmap hit = memory.get(key);
+            if (hit != null || isMissing(key)) {
+                callback.onArtwork(hit);
+                return null;
+            }
+        }
+        Request request = new Request(this, u, sizePx, callback);
+        executor.execute(request);
+        return request;
+    }
+
+    /**
+     * アルバムを調べ、メモリ → ディスク → デコードの順に探す（バックグラウンドスレッドで実行）
+     */
+    @Nullable
+    private Bitmap loadBlocking(Uri uri, int sizePx, CancellationSignal signal) {
+        String songKey = songKeyOf(uri);
+        Art art = arts.get(songKey);
+        if (art == null) {
+            art = resolve(uri, signal);
+            arts.put(songKey, art);
+        }
+        String key = art.keyOf(sizePx);
+        Bitmap bitmap = memory.get(key);
+        if (bitmap != null || isMissing(key)) return bitmap;
+
+        File file = new File(diskDir, key + ".webp");
+        if (file.exists()) {
+            if (file.length() == 0) {
+                // 画像なしの記録（期限切れなら読み込み直す）
+                long recordedAt = file.lastModified();
+                if (System.currentTimeMillis() - recordedAt < MISSING_TTL_MS) {
+                    missing.put(key, recordedAt);
+                    return null;
+                }
+            } else {
+                bitmap = BitmapFactory.decodeFile(file.getPath());
+            }
+            if (bitmap != null) {
+                // 最近使ったものほど削除されにくくする
+                file.setLastModified(System.currentTimeMillis());
+                memory.put(key, bitmap);
+                return bitmap;
+            }
+        }
+
+        signal.throwIfCanceled();
+        try {
+            // 埋め込みのアートワークを表示サイズまで縮小してデコードする
+            bitmap = resolver.loadThumbnail(art.source, new Size(sizePx, sizePx), signal);
+        } catch (IOException e) {
+            bitmap = null;
+        }
+        if (bitmap != null) {
+            memory.put(key, bitmap);
+        } else {
+            missing.put(key, System.currentTimeMillis());
+        }
+        writeDisk(file, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * ディスクに保存する（画像なしは空ファイル）。上限を超えたら古いものから消す
+     */
+    private void writeDisk(File file, @Nullable Bitmap bitmap) {
+        if (!diskDir.isDirectory() && !diskDir.mkdirs()) return;
+        File tmp = new File(diskDir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            if (bitmap != null) bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSY, WEBP_QUALITY, out);
+        } catch (IOException e) {
+            Log.w(TAG, "アートワークの保存に失敗: " + file.getName(), e);
+            tmp.delete();
+            return;
+        }
+        long size = tmp.length();
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        if (diskBytes.get() < 0) diskBytes.compareAndSet(-1, sumDisk());
+        if (diskBytes.addAndGet(size) > MAX_DISK_BYTES) trimDisk();
+    }
+
+    /**
+     * 画像なしと記録済みで、まだ期限内か
+     */
+    private boolean isMissing(String key) {
+        Long recordedAt = missing.get(key);
+        if (recordedAt == null) return false;
+        if (System.currentTimeMillis() - recordedAt < MISSING_TTL_MS) return true;
+        missing.remove(key);
+        return false;
+    }
+
+    private long sumDisk() {
+        File[] files = diskDir.listFiles();
+        long sum = 0;
+        if (files != null) for (File f : files) sum += f.length();
+        return sum;
+    }
+
+    /**
+     * 最終使用が古い順に TRIM_DISK_BYTES まで削除する
+     */
+    private synchronized void trimDisk() {
+        File[] files = diskDir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) total += f.length();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (total <= TRIM_DISK_BYTES) break;
+            long len = f.length();
+            if (f.delete()) total -= len;
+        }
+        diskBytes.set(total);
+    }
+
+    /**
+     * 曲のアルバムと、アルバム内の曲の最新の DATE_MODIFIED を調べる
+     * アルバムが分からない曲は、曲自身の DATE_MODIFIED をキーにして曲から読む
+     */
+    private Art resolve(Uri song, CancellationSignal signal) {
+        long albumId = -1;
+        long modified = 0;
+        try (Cursor c = resolver.query(song, new String[]{
+                MediaStore.Audio.Media.ALBUM_ID, MediaStore.Audio.Media.DATE_MODIFIED}, null, signal)) {
+            if (c != null && c.moveToFirst()) {
+                if (!c.isNull(0)) albumId = c.getLong(0);
+                modified = c.getLong(1);
+            }
+        } catch (IllegalArgumentException | IllegalStateException | SecurityException e) {
+            Log.w(TAG, "アルバムを調べられない曲: " + song, e);
+        }
+        if (albumId < 0) return new Art("s" + songKeyOf(song) + "_" + modified, song);
+
+        String volume = MediaStore.getVolumeName(song);
+        Bundle args = new Bundle();
+        args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, MediaStore.Audio.Media.ALBUM_ID + " = ?");
+        args.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS,
+                new String[]{String.valueOf(albumId)});
+        args.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, MediaStore.Audio.Media.DATE_MODIFIED + " DESC");
+        args.putInt(ContentResolver.QUERY_ARG_LIMIT, 1);
+        try (Cursor c = resolver.query(MediaStore.Audio.Media.getContentUri(volume),
+                new String[]{MediaStore.Audio.Media.DATE_MODIFIED}, args, signal)) {
+            if (c != null && c.moveToFirst()) modified = Math.max(modified, c.getLong(0));
+        } catch (IllegalArgumentException | IllegalStateException | SecurityException e) {
+            Log.w(TAG, "アルバムの更新日時を調べられない: " + albumId, e);
+        }
+        return new Art("a" + albumId + "_" + modified,
+                ContentUris.withAppendedId(MediaStore.Audio.Albums.getContentUri(volume), albumId));
+    }
+
+    /**
+     * 曲 ID（URI の末尾）
+     */
+    private static String songKeyOf(Uri uri) {
+        String id = uri.getLastPathSegment();
+        return id != null ? id : Integer.toHexString(uri.hashCode());
+    }
+
+    /**
+     * 曲のアートワークの取り出し元（同じアルバムの曲は同じキー）
+     */
+    private static final class Art {
+        // サイズを除いたキー（a: アルバム、s: アルバム不明の曲。どちらも DATE_MODIFIED を含む）
+        final String key;
+        // loadThumbnail に渡す URI
+        final Uri source;
+
+        Art(String key, Uri source) {
+            this.key = key;
+            this.source = source;
+        }
+
+        String keyOf(int sizePx) {
+            return key + "_" + sizePx;
+        }
+    }
+
+    /**
+     * 後から積んだ要求を先に取り出す待ち行列
+     */
+    private static final class LifoQueue extends LinkedBlockingDeque<Runnable> {
+        @Override
+        public boolean offer(Runnable r) {
+            return offerFirst(r);
+        }
+    }
+}
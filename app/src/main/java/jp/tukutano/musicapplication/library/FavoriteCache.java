@@ -0,0 +1,186 @@
+package jp.tukutano.musicapplication.library;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import jp.tukutano.musicapplication.AppDatabase;
+import jp.tukutano.musicapplication.db.FavoriteSong;
+import jp.tukutano.musicapplication.model.Song;
+import jp.tukutano.musicapplication.util.LongHashSet;
+
+/**
+ * お気に入り曲 ID のメモリ上キャッシュ
+ * - 起動時に ID だけを一度読み込み、以降は Room の InvalidationTracker で
+ *   favorite_songs が変更されたときだけ読み直す
+ * - isFavorite() はディスク I/O なしの O(1) 判定（RecyclerView のバインド用）
+ * - 登録/解除はメモリ上に即時反映し、DB 書き込みはワーカーで行う
+ *   （お気に入りプレイリストへの追加/削除も同じトランザクションで行う）
+ */
+public class FavoriteCache {
+
+    /**
+     * お気に入り状態の変化通知（UI スレッドで呼ばれる）
+     */
+    public interface Listener {
+        /**
+         * @param changed 状態が変わった曲 ID
+         */
+        void onFavoritesChanged(LongHashSet changed);
+    }
+
+    private final AppDatabase db;
+    private final PlaylistStore playlists;
+    private final Executor ioExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // 読み取りは UI スレッド、差し替えはワーカーからも行うため丸ごと入れ替える
+    private volatile LongHashSet ids = new LongHashSet();
+
+    private final InvalidationTracker.Observer observer =
+            new InvalidationTracker.Observer("favorite_songs") {
+                @Override
+                public void onInvalidated(@NonNull Set<String> tables) {
+                    ioExecutor.execute(FavoriteCache.this::reload);
+                }
+            };
+
+    /**
+     * コンストラクタ
+     *
+     * @param db         データベース
+     * @param ioExecutor DB の読み書きを行うワーカー
+     */
+    public FavoriteCache(AppDatabase db, Executor ioExecutor) {
+        this.db = db;
+        this.playlists = new PlaylistStore(db);
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * 初回読み込みと変更監視を開始する
+     */
+    public void start() {
+        ioExecutor.execute(this::reload);
+        db.getInvalidationTracker().addObserver(observer);
+    }
+
+    /**
+     * 変更監視を終了する
+     */
+    public void stop() {
+        db.getInvalidationTracker().removeObserver(observer);
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param songId Song.getId() の値
+     * @return お気に入り登録済みなら true
+     */
+    public boolean isFavorite(String songId) {
+        long id = parseId(songId);
+        return id >= 0 && ids.contains(id);
+    }
+
+    /**
+     * お気に入りを登録/解除する（UI スレッドから呼ぶ）
+     *
+     * @param song     対象の曲
+     * @param favorite 登録するなら true、解除するなら false
+     */
+    public void setFavorite(Song song, boolean favorite) {
+        long id = parseId(song.getId());
+        if (id < 0) return;
+        LongHashSet next = ids.copy();
+        boolean changed = favorite ? next.add(id) : next.remove(id);
+        if (!changed) return;
+        ids = next;
+        LongHashSet diff = new LongHashSet(1);
+        diff.add(id);
+        notifyChanged(diff);
+
+        FavoriteSong f = toFavoriteSong(song);
+        ioExecutor.execute(() -> db.runInTransaction(() -> {
+            if (favorite) {
+                db.favoriteDao().insert(f);
+                playlists.appendIfAbsent(PlaylistStore.FAVORITES_ID, song);
+            } else {
+                db.favoriteDao().delete(f);
+                playlists.remove(PlaylistStore.FAVORITES_ID, f.id);
+            }
+        }));
+    }
+
+    /**
+     * DB から ID 一覧を読み直し、変化した ID を通知する（ワーカースレッド）
+     */
+    private void reload() {
+        List<String> rows = db.favoriteDao().getAllIds();
+        LongHashSet next = new LongHashSet(rows.size());
+        for (String row : rows) {
+            long id = parseId(row);
+            if (id >= 0) next.add(id);
+        }
+        LongHashSet prev = ids;
+        ids = next;
+
+        // 追加・削除された ID（対称差）
+        LongHashSet diff = new LongHashSet();
+        next.forEach(id -> {
+            if (!prev.contains(id)) diff.add(id);
+        });
+        prev.forEach(id -> {
+            if (!next.contains(id)) diff.add(id);
+        });
+        if (diff.size() > 0) mainHandler.post(() -> notifyChanged(diff));
+    }
+
+    private void notifyChanged(LongHashSet changed) {
+        for (Listener l : listeners) l.onFavoritesChanged(changed);
+    }
+
+    /**
+     * Song.getId()（MediaStore の _ID 文字列）を数値に変換
+     *
+     * @return 数値でなければ -1
+     */
+    public static long parseId(String songId) {
+        try {
+            return Long.parseLong(songId);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Song モデルから FavoriteSong Entity に変換
+     *
+     * @param s Song オブジェクト
+     * @return FavoriteSong オブジェクト
+     */
+    private static FavoriteSong toFavoriteSong(Song s) {
+        FavoriteSong f = new FavoriteSong();
+        f.id = s.getId();
+        f.title = s.getTitle();
+        f.artist = s.getArtist();
+        f.album = s.getAlbum();
+        f.uri = s.getUri();
+        f.duration = s.getDuration();
+        return f;
+    }
+}
@@ -0,0 +1,58 @@
+package jp.tukutano.musicapplication.library;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * 前回同期以降の楽曲ライブラリの差分
+ * - 追加・更新・削除された曲を保持し、表示中のリストへ差分適用する
+ */
+public class LibraryDelta {
+    /**
+     * 新たに追加された曲（DATE_ADDED の新しい順）
+     */
+    public final List<Song> inserted = new ArrayList<>();
+    /**
+     * タグ等が更新された曲
+     */
+    public final List<Song> updated = new ArrayList<>();
+    /**
+     * 削除された曲の URI
+     */
+    public final Set<String> removedUris = new HashSet<>();
+
+    /**
+     * @return 差分が無ければ true
+     */
+    public boolean isEmpty() {
+        return inserted.isEmpty() && updated.isEmpty() && removedUris.isEmpty();
+    }
+
+    /**
+     * 差分を楽曲リストに適用した新しいリストを返す
+     * - 削除分を除き、更新分は同じ位置で差し替え、追加分は先頭に並べる
+     *
+     * @param current 適用前の楽曲リスト（変更しない）
+     * @return 適用後の楽曲リスト
+     */
+    public List<Song> applyTo(List<Song> current) {
+        if (isEmpty()) return current;
+        Map<String, Song> replaced = new HashMap<>();
+        for (Song s : updated) replaced.put(s.getUri(), s);
+
+        List<Song> result = new ArrayList<>(current.size() + inserted.size());
+        result.addAll(inserted);
+        for (Song s : current) {
+            if (removedUris.contains(s.getUri())) continue;
+            Song u = replaced.get(s.getUri());
+            result.add(u != null ? u : s);
+        }
+        return result;
+    }
+}
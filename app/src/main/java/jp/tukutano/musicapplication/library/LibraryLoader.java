@@ -0,0 +1,138 @@
+package jp.tukutano.musicapplication.library;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import jp.tukutano.musicapplication.AppDatabase;
+import jp.tukutano.musicapplication.db.LibraryDao;
+import jp.tukutano.musicapplication.db.LibrarySong;
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * 楽曲ライブラリをページ単位でストリーミング読み込みするローダー
+ * - キャッシュ (library_songs) をキーセットページングで読み、1 ページずつ UI へ渡す
+ * - キャッシュが空なら MediaStore の全件スキャンを読み込み途中のページから UI へ渡す
+ * - 最後に差分同期を行い、判明した差分を通知する
+ * コールバックはすべて UI スレッドで呼ばれる
+ */
+public class LibraryLoader {
+
+    /**
+     * 読み込み結果の受け取り先
+     */
+    public interface Callback {
+        /**
+         * @param page 現在のリスト末尾に追加する曲
+         */
+        void onPage(List<Song> page);
+
+        /**
+         * @param delta 差分同期で判明した変更
+         */
+        void onDelta(LibraryDelta delta);
+
+        /**
+         * 読み込み・同期の完了
+         */
+        void onComplete();
+    }
+
+    private final Context appContext;
+    private final AppDatabase db;
+    private final Executor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // cancel() 後に届いたページは捨てる
+    private volatile boolean cancelled;
+
+    /**
+     * コンストラクタ
+     *
+     * @param context  コンテキスト
+     * @param db       データベース
+     * @param executor 読み込みを行うワーカー
+     */
+    public LibraryLoader(Context context, AppDatabase db, Executor executor) {
+        this.appContext = context.getApplicationContext();
+        this.db = db;
+        this.executor = executor;
+    }
+
+    /**
+     * 読み込みを開始する
+     *
+     * @param callback 結果の受け取り先
+     */
+    public void load(Callback callback) {
+        run(callback, true);
+    }
+
+    /**
+     * キャッシュは読まずに MediaStore との差分同期だけを行う（読み込み済みの一覧を最新にする時）
+     *
+     * @param callback 結果の受け取り先
+     */
+    public void sync(Callback callback) {
+        run(callback, false);
+    }
+
+    private void run(Callback callback, boolean readCache) {
+        cancelled = false;
+        executor.execute(() -> {
+            if (readCache) streamCache(callback);
+            if (cancelled) return;
+            LibraryDelta delta = LibrarySync.sync(appContext, db, page -> post(callback, page));
+            // 同期で増えた・更新された曲の音量解析を始める
+            LoudnessScanner.getInstance(appContext).start();
+            if (!delta.isEmpty()) {
+                mainHandler.post(() -> {
+                    if (!cancelled) callback.onDelta(delta);
+                });
+            }
+            mainHandler.post(() -> {
+                if (!cancelled) callback.onComplete();
+            });
+        });
+    }
+
+    /**
+     * 読み込みを中止し、未配送のコールバックを破棄する
+     */
+    public void cancel() {
+        cancelled = true;
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * キャッシュを先頭から 1 ページずつ読み込んで UI へ渡す
+     */
+    private void streamCache(Callback callback) {
+        LibraryDao dao = db.libraryDao();
+        long dateAdded = Long.MAX_VALUE;
+        String uri = "";
+        int limit = LibrarySync.FIRST_PAGE_SIZE;
+        while (!cancelled) {
+            List<LibrarySong> rows = dao.getPageAfter(dateAdded, uri, limit);
+            if (rows.isEmpty()) return;
+            List<Song> page = new ArrayList<>(rows.size());
+            for (LibrarySong row : rows) page.add(row.toSong());
+            post(callback, page);
+
+            LibrarySong last = rows.get(rows.size() - 1);
+            dateAdded = last.dateAdded;
+            uri = last.uri;
+            if (rows.size() < limit) return;
+            limit = LibrarySync.PAGE_SIZE;
+        }
+    }
+
+    private void post(Callback callback, List<Song> page) {
+        mainHandler.post(() -> {
+            if (!cancelled) callback.onPage(page);
+        });
+    }
+}
@@ -0,0 +1,251 @@
+package jp.tukutano.musicapplication.library;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.room.InvalidationTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jp.tukutano.musicapplication.AppDatabase;
+import jp.tukutano.musicapplication.db.PlaylistEntry;
+import jp.tukutano.musicapplication.model.Song;
+import jp.tukutano.musicapplication.util.Metric;
+import jp.tukutano.musicapplication.util.Metrics;
+import jp.tukutano.musicapplication.util.TraceEvent;
+import jp.tukutano.musicapplication.util.Tracer;
+
+/**
+ * 楽曲ライブラリとお気に入りをプロセス内で共有するリポジトリ（プロセスで 1 つ）
+ * - ライブラリの読み込み（キャッシュ → 差分同期）はプロセスで一度だけ行い、結果を LiveData で配る
+ *   画面の切り替え・回転で Fragment が作り直されても読み込み直さない
+ * - 以降の同期は MediaStore の変更通知と refresh() の時だけ行う
+ * - お気に入り一覧は playlist_entries が変更された時だけ読み直す
+ * LiveData の更新は UI スレッドで行う
+ */
+public class LibraryRepository {
+
+    // MediaStore の変更通知をまとめる時間（スキャン中は通知が続けて届く）
+    private static final long MEDIA_CHANGE_DEBOUNCE_MS = 2000;
+
+    private static volatile LibraryRepository instance;
+
+    /**
+     * プロセス共通のインスタンスを取得する
+     *
+     * @param context コンテキスト
+     * @return LibraryRepository
+     */
+    public static LibraryRepository getInstance(Context context) {
+        LibraryRepository repo = instance;
+        if (repo == null) {
+            synchronized (LibraryRepository.class) {
+                repo = instance;
+                if (repo == null) {
+                    repo = new LibraryRepository(context.getApplicationContext());
+                    instance = repo;
+                }
+            }
+        }
+        return repo;
+    }
+
+    /**
+     * インスタンスを破棄する（テスト用。次の getInstance() で作り直す）
+     * 読み込みを止め、登録した Observer を外す
+     */
+    @VisibleForTesting
+    public static void resetForTesting() {
+        LibraryRepository repo;
+        synchronized (LibraryRepository.class) {
+            repo = instance;
+            instance = null;
+        }
+        if (repo != null) repo.close();
+    }
+
+    private final Context appContext;
+    private final AppDatabase db;
+    private final FavoriteCache favoriteCache;
+    // ライブラリの読み込み・検索インデックス構築用ワーカー
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final LibraryLoader loader;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final MutableLiveData<LibrarySnapshot> library = new MutableLiveData<>(LibrarySnapshot.EMPTY);
+    private final MutableLiveData<List<Song>> favorites = new MutableLiveData<>();
+    private final Runnable refreshTask = this::refresh;
+
+    // 以下は UI スレッドからのみ触る
+    private LibrarySnapshot current = LibrarySnapshot.EMPTY;
+    private boolean started;
+    private boolean running;
+    // 読み込み中に同期を要求された
+    private boolean syncPending;
+    private int indexRequestedVersion = -1;
+    // 実行中の読み込み・同期の開始時刻（System.nanoTime）
+    private long runStartNs;
+
+    private final InvalidationTracker.Observer playlistObserver =
+            new InvalidationTracker.Observer("playlist_entries") {
+                @Override
+                public void onInvalidated(@NonNull Set<String> tables) {
+                    reloadFavorites();
+                }
+            };
+
+    private final ContentObserver mediaObserver = new ContentObserver(mainHandler) {
+        @Override
+        public void onChange(boolean selfChange, @Nullable Uri uri) {
+            mainHandler.removeCallbacks(refreshTask);
+            mainHandler.postDelayed(refreshTask, MEDIA_CHANGE_DEBOUNCE_MS);
+        }
+    };
+
+    private LibraryRepository(Context appContext) {
+        this.appContext = appContext;
+        db = AppDatabase.getInstance(appContext);
+        loader = new LibraryLoader(appContext, db, executor);
+        // お気に入り ID もプロセスで 1 つ（画面ごとに読み込み直さない）
+        favoriteCache = new FavoriteCache(db, db.getTransactionExecutor());
+        favoriteCache.start();
+        db.getInvalidationTracker().addObserver(playlistObserver);
+        reloadFavorites();
+        appContext.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, mediaObserver);
+    }
+
+    private void close() {
+        loader.cancel();
+        executor.shutdownNow();
+        mainHandler.removeCallbacks(refreshTask);
+        appContext.getContentResolver().unregisterContentObserver(mediaObserver);
+        db.getInvalidationTracker().removeObserver(playlistObserver);
+        favoriteCache.stop();
+    }
+
+    /**
+     * 最初の呼び出しでだけライブラリの読み込みを始める（UI スレッドから呼ぶ。何度呼んでもよい）
+     */
+    public void load() {
+        if (started) return;
+        started = true;
+        running = true;
+        runStartNs = System.nanoTime();
+        Tracer.record(TraceEvent.LIBRARY_LOAD_BEGIN);
+        loader.load(callback);
+    }
+
+    /**
+     * MediaStore との差分同期を行う（権限を得た時・MediaStore の変更時。UI スレッドから呼ぶ）
+     * 読み込み中なら終わってからもう一度同期する
+     */
+    public void refresh() {
+        if (!started) {
+            load();
+            return;
+        }
+        if (running) {
+            syncPending = true;
+            return;
+        }
+        running = true;
+        runStartNs = System.nanoTime();
+        Tracer.record(TraceEvent.LIBRARY_SYNC_BEGIN);
+        loader.sync(callback);
+    }
+
+    /**
+     * @return 楽曲ライブラリ（読み込み中はページが届くたびに更新される）
+     */
+    public LiveData<LibrarySnapshot> getLibrary() {
+        return library;
+    }
+
+    /**
+     * @return お気に入りプレイリストの曲（並びは Service の再生順と同じ。読み込み前は null）
+     */
+    public LiveData<List<Song>> getFavorites() {
+        return favorites;
+    }
+
+    /**
+     * @return プロセス共通のお気に入り ID キャッシュ（開始済み。停止しないこと）
+     */
+    public FavoriteCache getFavoriteCache() {
+        return favoriteCache;
+    }
+
+    private final LibraryLoader.Callback callback = new LibraryLoader.Callback() {
+        @Override
+        public void onPage(List<Song> page) {
+            publish(current.append(page));
+        }
+
+        @Override
+        public void onDelta(LibraryDelta delta) {
+            publish(current.replace(delta.applyTo(current.songs)));
+        }
+
+        @Override
+        public void onComplete() {
+            publish(current.completed());
+            Tracer.record(TraceEvent.LIBRARY_LOAD_END, current.songs.size());
+            Metrics.since(Metric.LIBRARY_SCAN, runStartNs);
+            buildIndex();
+            running = false;
+            if (syncPending) {
+                syncPending = false;
+                refresh();
+            }
+        }
+    };
+
+    private void publish(LibrarySnapshot next) {
+        if (next == current) return;
+        current = next;
+        library.setValue(next);
+    }
+
+    /**
+     * 現在の楽曲で検索インデックスをワーカーで作り、同じ版のままなら付与する
+     */
+    private void buildIndex() {
+        if (indexRequestedVersion == current.version) return;
+        indexRequestedVersion = current.version;
+        LibrarySnapshot snapshot = current;
+        executor.execute(() -> {
+            SongSearchIndex index = new SongSearchIndex(snapshot.songs);
+            mainHandler.post(() -> {
+                // 構築中に楽曲が変わっていたら捨てる（次の完了時に作り直される）
+                if (current.version != snapshot.version) return;
+                publish(current.withIndex(index));
+            });
+        });
+    }
+
+    /**
+     * お気に入りプレイリストを DB スレッドで読み込み、モデルに変換して配る
+     */
+    private void reloadFavorites() {
+        db.queryAsync(() -> {
+            List<PlaylistEntry> entries = db.playlistDao().getEntries(PlaylistStore.FAVORITES_ID);
+            List<Song> songs = new ArrayList<>(entries.size());
+            for (PlaylistEntry e : entries) songs.add(e.toSong());
+            return songs;
+        }, Collections.emptyList(), favorites::setValue);
+    }
+}
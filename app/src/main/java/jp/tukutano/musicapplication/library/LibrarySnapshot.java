@@ -0,0 +1,172 @@
+package jp.tukutano.musicapplication.library;
+
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.TreeSet;
+
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * ある時点の楽曲ライブラリ（不変）
+ * - 変更のたびに新しいスナップショットを作るので、ワーカーへそのまま渡してよい
+ * - version は songs が変わった時だけ進む（検索インデックスの付与・完了では変わらない）
+ * - ページの追加は前の版と配列を共有して追加分だけを書き込む（全件を複製しない）
+ * append / replace / completed は 1 つのスレッド（UI スレッド）から呼ぶこと
+ */
+public final class LibrarySnapshot {
+
+    public static final LibrarySnapshot EMPTY = new LibrarySnapshot(
+            0, SongArray.copyOf(Collections.emptyList()), Collections.emptyList(), false, -1,
+            null, false);
+
+    /** songs の版 */
+    public final int version;
+    /** 全楽曲（変更不可） */
+    public final List<Song> songs;
+    /** アーティスト名（重複なし・昇順・変更不可。初回の読み込み中は完了まで更新しない） */
+    public final List<String> artists;
+    // artists に songs の一部が入っていない（completed() で作り直す）
+    private final boolean artistsPending;
+    /** 直前の版の末尾にページを足しただけなら追加分の開始位置、それ以外は -1 */
+    public final int appendedFrom;
+    /** songs に対応する検索インデックス（構築前は null） */
+    @Nullable
+    public final SongSearchIndex index;
+    /** 読み込み・同期が一度終わったか */
+    public final boolean complete;
+
+    private final SongArray songArray;
+
+    private LibrarySnapshot(int version, SongArray songs, List<String> artists,
+                            boolean artistsPending, int appendedFrom,
+                            @Nullable SongSearchIndex index, boolean complete) {
+        this.version = version;
+        this.songs = songs;
+        this.songArray = songs;
+        this.artists = artists;
+        this.artistsPending = artistsPending;
+        this.appendedFrom = appendedFrom;
+        this.index = index;
+        this.complete = complete;
+    }
+
+    /**
+     * ページを追加する（追加分の件数に比例する手間で済む）
+     * 初回の読み込み中はアーティスト一覧を更新せず、completed() でまとめて作る
+     *
+     * @param page 末尾に追加する曲
+     * @return ページを追加したスナップショット
+     */
+    public LibrarySnapshot append(List<Song> page) {
+        if (page.isEmpty()) return this;
+        boolean pending = artistsPending || !complete;
+        List<String> nextArtists = artists;
+        if (!pending) {
+            // 完了後の追加（新しいボリュームの全件スキャン）は追加分だけを反映する
+            TreeSet<String> names = new TreeSet<>(artists);
+            boolean added = false;
+            for (Song s : page) added |= names.add(s.getArtist());
+            if (added) {
+                nextArtists = Collections.unmodifiableList(Arrays.asList(names.toArray(new String[0])));
+            }
+        }
+        return new LibrarySnapshot(version + 1, songArray.append(page), nextArtists, pending,
+                songs.size(), null, complete);
+    }
+
+    /**
+     * @param replaced 差分を適用した後の全楽曲
+     * @return 楽曲を丸ごと差し替えたスナップショット
+     */
+    public LibrarySnapshot replace(List<Song> replaced) {
+        if (replaced == songs) return this;
+        return new LibrarySnapshot(version + 1, SongArray.copyOf(replaced), artistsOf(replaced),
+                false, -1, null, complete);
+    }
+
+    /**
+     * @param built songs から作った検索インデックス
+     * @return インデックスを付けたスナップショット
+     */
+    public LibrarySnapshot withIndex(SongSearchIndex built) {
+        return new LibrarySnapshot(version, songArray, artists, artistsPending, appendedFrom,
+                built, complete);
+    }
+
+    /**
+     * @return 読み込み完了の印を付け、アーティスト一覧を全曲から作ったスナップショット
+     */
+    public LibrarySnapshot completed() {
+        if (complete && !artistsPending) return this;
+        return new LibrarySnapshot(version, songArray, artistsPending ? artistsOf(songs) : artists,
+                false, appendedFrom, index, true);
+    }
+
+    /**
+     * @return 重複を除いて昇順に並べたアーティスト名（変更不可）
+     */
+    private static List<String> artistsOf(List<Song> songs) {
+        HashSet<String> names = new HashSet<>();
+        for (Song s : songs) names.add(s.getArtist());
+        String[] sorted = names.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+
+    /**
+     * 末尾への追加で共有する配列の先頭 size 件を見る変更不可のリスト
+     * - 追加は配列の空きに書き込んで新しいビューを返す。空きが足りなければ倍の配列へ移す
+     * - 既存のビューが見る範囲は書き換えないので、どのビューもワーカーへそのまま渡してよい
+     */
+    private static final class SongArray extends AbstractList<Song> implements RandomAccess {
+        private final Song[] array;
+        private final int size;
+        // array に書き込み済みの件数（array を共有するビューで 1 つ）
+        private final int[] filled;
+
+        private SongArray(Song[] array, int size, int[] filled) {
+            this.array = array;
+            this.size = size;
+            this.filled = filled;
+        }
+
+        static SongArray copyOf(List<Song> songs) {
+            Song[] array = songs.toArray(new Song[0]);
+            return new SongArray(array, array.length, new int[]{array.length});
+        }
+
+        SongArray append(List<Song> page) {
+            int n = size + page.size();
+            Song[] dst = array;
+            int[] dstFilled = filled;
+            if (filled[0] != size || n > array.length) {
+                // 空きが足りない・この後ろに別の版が書き込み済みなら新しい配列へ移す
+                dst = new Song[Math.max(n, array.length * 2)];
+                System.arraycopy(array, 0, dst, 0, size);
+                dstFilled = new int[1];
+            }
+            for (int i = 0; i < page.size(); i++) dst[size + i] = page.get(i);
+            dstFilled[0] = n;
+            return new SongArray(dst, n, dstFilled);
+        }
+
+        @Override
+        public Song get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+            }
+            return array[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
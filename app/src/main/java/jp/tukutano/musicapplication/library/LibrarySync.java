@@ -0,0 +1,210 @@
+package jp.tukutano.musicapplication.library;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.MediaStore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import jp.tukutano.musicapplication.AppDatabase;
+import jp.tukutano.musicapplication.db.LibraryDao;
+import jp.tukutano.musicapplication.db.LibrarySong;
+import jp.tukutano.musicapplication.db.SyncState;
+import jp.tukutano.musicapplication.model.Song;
+import jp.tukutano.musicapplication.util.MusicUtils;
+
+/**
+ * MediaStore と楽曲キャッシュ (library_songs) の差分同期エンジン
+ * - MediaStore の generation 番号で前回同期以降に追加・更新された行だけを取得
+ * - 削除は _ID のみの軽量クエリとキャッシュを突き合わせて検出
+ * - MediaStore のバージョンが変わった（DB 再作成など）ボリュームは全件再スキャン
+ * ワーカースレッドから呼び出すこと
+ */
+public class LibrarySync {
+
+    // キャッシュ行の作成に使うカラム
+    private static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.ALBUM,
+            MediaStore.Audio.Media.DURATION,
+            MediaStore.Audio.Media.DATE_ADDED,
+            MediaStore.Audio.Media.GENERATION_MODIFIED
+    };
+    private static final String[] ID_PROJECTION = {MediaStore.Audio.Media._ID};
+    // SQLite のバインド変数上限を超えないよう削除はまとめて分割
+    private static final int DELETE_CHUNK = 500;
+    // 全件スキャン時に 1 回で書き込み・通知する行数（先頭ページは 1 画面分だけ先に出す）
+    static final int FIRST_PAGE_SIZE = 50;
+    static final int PAGE_SIZE = 500;
+
+    /**
+     * 全件スキャン中に読み込んだ曲をページ単位で受け取るコールバック
+     */
+    public interface PageSink {
+        /**
+         * @param page 読み込み順（DATE_ADDED の新しい順）に並んだ曲
+         */
+        void onPage(List<Song> page);
+    }
+
+    private LibrarySync() {
+    }
+
+    /**
+     * 全ボリュームを前回同期位置から差分同期する
+     *
+     * @param context コンテキスト
+     * @param db      データベース
+     * @param sink    キャッシュが空のボリュームを全件スキャンする際、読み込んだ曲を
+     *                差分ではなくページ単位で受け取る先（null なら差分に含める）
+     * @return キャッシュに適用した差分
+     */
+    public static LibraryDelta sync(Context context, AppDatabase db, PageSink sink) {
+        LibraryDelta delta = new LibraryDelta();
+        for (String vol : MusicUtils.audioVolumes()) {
+            try {
+                syncVolume(context, db, vol, delta, sink);
+            } catch (Exception e) {
+                // ボリューム未マウント等。次回同期で再試行する
+                e.printStackTrace();
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * 1 ボリューム分の同期
+     */
+    private static void syncVolume(Context context, AppDatabase db, String vol,
+                                   LibraryDelta delta, PageSink sink) {
+        LibraryDao dao = db.libraryDao();
+        Uri collection = MusicUtils.audioCollection(vol);
+        String version = MediaStore.getVersion(context, vol);
+        long generation = MediaStore.getGeneration(context, vol);
+        SyncState state = dao.getSyncState(vol);
+        Set<String> cachedUris = new HashSet<>(dao.getUris(vol));
+
+        if (state == null || !version.equals(state.version)) {
+            // 初回 or MediaStore 再作成: 全件取り直し（差分としては全削除＋全追加）
+            dao.deleteVolume(vol);
+            boolean stream = sink != null && cachedUris.isEmpty();
+            scan(context, collection, vol, null, null, rows -> {
+                dao.upsert(rows);
+                List<Song> page = new ArrayList<>(rows.size());
+                for (LibrarySong row : rows) page.add(row.toSong());
+                if (stream) {
+                    sink.onPage(page);
+                } else {
+                    delta.inserted.addAll(page);
+                }
+            });
+            // 全行を書き終えてから同期位置を記録（途中で中断されたら次回も全件スキャン）
+            dao.putSyncState(new SyncState(vol, version, generation));
+            delta.removedUris.addAll(cachedUris);
+            return;
+        }
+
+        // 前回以降に追加・更新された行だけを取得
+        List<LibrarySong> changed = new ArrayList<>();
+        if (generation != state.generation) {
+            scan(context, collection, vol,
+                    MediaStore.Audio.Media.GENERATION_MODIFIED + " > ?",
+                    new String[]{String.valueOf(state.generation)},
+                    changed::addAll);
+        }
+
+        // 削除された行: 現在の _ID 一覧に無いキャッシュ行
+        Set<String> removed = new HashSet<>(cachedUris);
+        try (Cursor cursor = context.getContentResolver()
+                .query(collection, ID_PROJECTION, null, null)) {
+            if (cursor == null) return;
+            int idCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+            while (cursor.moveToNext()) {
+                removed.remove(ContentUris.withAppendedId(collection, cursor.getLong(idCol)).toString());
+            }
+        }
+
+        db.runInTransaction(() -> {
+            if (!changed.isEmpty()) dao.upsert(changed);
+            List<String> uris = new ArrayList<>(removed);
+            for (int i = 0; i < uris.size(); i += DELETE_CHUNK) {
+                dao.deleteByUris(uris.subList(i, Math.min(uris.size(), i + DELETE_CHUNK)));
+            }
+            dao.putSyncState(new SyncState(vol, version, generation));
+        });
+
+        for (LibrarySong row : changed) {
+            if (cachedUris.contains(row.uri)) {
+                delta.updated.add(row.toSong());
+            } else {
+                delta.inserted.add(row.toSong());
+            }
+        }
+        delta.removedUris.addAll(removed);
+    }
+
+    /**
+     * MediaStore を検索し、キャッシュ行に変換してページ単位で consumer へ渡す
+     * - カーソルは CursorWindow 単位で読み進めるため、全行をメモリに溜めない
+     */
+    private static void scan(Context context, Uri collection, String vol,
+                             String selection, String[] selectionArgs,
+                             Consumer<List<LibrarySong>> consumer) {
+        Bundle args = new Bundle();
+        if (selection != null) {
+            args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            args.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+        }
+        args.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER,
+                MediaStore.Audio.Media.DATE_ADDED + " DESC");
+
+        try (Cursor cursor = context.getContentResolver().query(collection, PROJECTION, args, null)) {
+            if (cursor == null) return;
+            int idCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+            int titleCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
+            int artistCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
+            int albumCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
+            int durationCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
+            int addedCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_ADDED);
+            int genCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.GENERATION_MODIFIED);
+
+            int limit = FIRST_PAGE_SIZE;
+            List<LibrarySong> rows = new ArrayList<>(limit);
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(idCol);
+                String title = cursor.getString(titleCol);
+                String artist = cursor.getString(artistCol);
+                String album = cursor.getString(albumCol);
+
+                LibrarySong row = new LibrarySong();
+                row.uri = ContentUris.withAppendedId(collection, id).toString();
+                row.volume = vol;
+                row.mediaId = id;
+                row.title = title != null ? title : "Unknown";
+                row.artist = artist != null ? artist : "Unknown";
+                row.album = album != null ? album : "Unknown";
+                row.duration = cursor.getLong(durationCol);
+                row.dateAdded = cursor.getLong(addedCol);
+                row.generation = cursor.getLong(genCol);
+                rows.add(row);
+
+                if (rows.size() == limit) {
+                    consumer.accept(rows);
+                    limit = PAGE_SIZE;
+                    rows = new ArrayList<>(limit);
+                }
+            }
+            if (!rows.isEmpty()) consumer.accept(rows);
+        }
+    }
+}
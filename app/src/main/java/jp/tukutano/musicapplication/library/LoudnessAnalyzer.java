@@ -0,0 +1,116 @@
+package jp.tukutano.musicapplication.library;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 1 曲を MediaExtractor / MediaCodec でデコードし、LoudnessMeter に流す
+ * 呼び出したスレッドでデコードし終わるまで戻らない
+ */
+final class LoudnessAnalyzer {
+
+    // デコーダのバッファ待ちの上限
+    private static final long DEQUEUE_TIMEOUT_US = 10_000;
+
+    private LoudnessAnalyzer() {
+    }
+
+    /**
+     * @return 解析結果
+     * @throws IOException 音声トラックがない・デコードできない
+     */
+    static LoudnessMeter analyze(Context context, Uri uri) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, uri, null);
+            MediaFormat format = selectAudioTrack(extractor);
+            if (format == null) throw new IOException("音声トラックがない: " + uri);
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            return decode(extractor, codec, format);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            // MediaCodec.CodecException を含む
+            throw new IOException("デコードに失敗: " + uri, e);
+        } finally {
+            if (codec != null) codec.release();
+            extractor.release();
+        }
+    }
+
+    private static MediaFormat selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat f = extractor.getTrackFormat(i);
+            String mime = f.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(i);
+                return f;
+            }
+        }
+        return null;
+    }
+
+    private static LoudnessMeter decode(MediaExtractor extractor, MediaCodec codec,
+                                        MediaFormat inputFormat) {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        // 出力形式が通知されるまでは入力の形式で測る
+        int sampleRate = inputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        int channels = inputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        boolean floatPcm = false;
+        LoudnessMeter meter = null;
+        boolean inputDone = false;
+
+        while (true) {
+            if (!inputDone) {
+                int in = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                if (in >= 0) {
+                    ByteBuffer buf = codec.getInputBuffer(in);
+                    int size = extractor.readSampleData(buf, 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(in, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(in, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            int out = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+            if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                MediaFormat f = codec.getOutputFormat();
+                sampleRate = f.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                channels = f.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                floatPcm = f.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                        && f.getInteger(MediaFormat.KEY_PCM_ENCODING) == AudioFormat.ENCODING_PCM_FLOAT;
+                // 形式が変わったら測り直す（通常は最初の出力前に一度だけ）
+                meter = null;
+            } else if (out >= 0) {
+                if (info.size > 0) {
+                    if (meter == null) meter = new LoudnessMeter(sampleRate, channels);
+                    ByteBuffer buf = codec.getOutputBuffer(out);
+                    buf.limit(info.offset + info.size);
+                    buf.position(info.offset);
+                    ByteBuffer pcm = buf.slice().order(ByteOrder.nativeOrder());
+                    if (floatPcm) {
+                        meter.addPcmFloat(pcm.asFloatBuffer());
+                    } else {
+                        meter.addPcm16(pcm.asShortBuffer());
+                    }
+                }
+                codec.releaseOutputBuffer(out, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) break;
+            }
+        }
+        return meter != null ? meter : new LoudnessMeter(sampleRate, channels);
+    }
+}
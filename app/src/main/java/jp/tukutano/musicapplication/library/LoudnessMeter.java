@@ -0,0 +1,194 @@
+package jp.tukutano.musicapplication.library;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * ITU-R BS.1770 の統合ラウドネス（LUFS）とサンプルピークを求める
+ * - K 特性（高域シェルフ＋高域通過）の 2 段の双 2 次フィルタをサンプルレートから設計する
+ * - 100ms ごとの平均二乗を記録し、400ms（75% 重なり）のブロックで
+ *   絶対ゲート（-70 LUFS）と相対ゲート（-10 LU）をかけて平均する
+ * - 入力はインターリーブされた PCM。チャンネルの重みはすべて 1（モノラル・ステレオ想定）
+ * サンプルごとの処理ではオブジェクトを確保しない。スレッドセーフではない
+ */
+public class LoudnessMeter {
+
+    // ReplayGain 2.0 の基準ラウドネス
+    public static final double REFERENCE_LUFS = -18.0;
+    // 付けるゲインの範囲（無音に近い曲で極端な値にしない）
+    static final float MIN_GAIN_DB = -24f;
+    static final float MAX_GAIN_DB = 12f;
+
+    private static final double ABSOLUTE_GATE_LUFS = -70.0;
+    private static final double RELATIVE_GATE_LU = -10.0;
+    private static final int SUBBLOCKS_PER_BLOCK = 4;
+
+    private final int channels;
+    private final int hopFrames;
+
+    // K 特性フィルタの係数（2 段とも a0 = 1 に正規化済み）
+    private final double b0, b1, b2, a1, a2;
+    private final double c0, c1, c2, d1, d2;
+    // チャンネルごとのフィルタ状態（段ごとに 2 つ）
+    private final double[] z1, z2, y1, y2;
+
+    // 現在の 100ms 区間の二乗和と、そのフレーム数
+    private double hopSum;
+    private int hopCount;
+    private int channel;
+    // 100ms 区間ごとの平均二乗（チャンネル合計）
+    private double[] hops = new double[1024];
+    private int hopTotal;
+    private float peak;
+
+    /**
+     * @param sampleRate サンプルレート（Hz）
+     * @param channels   チャンネル数
+     */
+    public LoudnessMeter(int sampleRate, int channels) {
+        if (sampleRate <= 0 || channels <= 0) throw new IllegalArgumentException();
+        this.channels = channels;
+        this.hopFrames = Math.max(1, sampleRate / 10);
+
+        // 1 段目: 高域シェルフ（頭部の影響）
+        double f0 = 1681.974450955533;
+        double g = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10.0, g / 20.0);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1.0 + k / q + k * k;
+        b0 = (vh + vb * k / q + k * k) / a0;
+        b1 = 2.0 * (k * k - vh) / a0;
+        b2 = (vh - vb * k / q + k * k) / a0;
+        a1 = 2.0 * (k * k - 1.0) / a0;
+        a2 = (1.0 - k / q + k * k) / a0;
+
+        // 2 段目: 高域通過（RLB 特性）
+        f0 = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * f0 / sampleRate);
+        a0 = 1.0 + k / q + k * k;
+        c0 = 1.0;
+        c1 = -2.0;
+        c2 = 1.0;
+        d1 = 2.0 * (k * k - 1.0) / a0;
+        d2 = (1.0 - k / q + k * k) / a0;
+
+        z1 = new double[channels];
+        z2 = new double[channels];
+        y1 = new double[channels];
+        y2 = new double[channels];
+    }
+
+    /**
+     * 16bit PCM を追加する（position から limit まで読む）
+     */
+    public void addPcm16(ShortBuffer pcm) {
+        while (pcm.hasRemaining()) add(pcm.get() / 32768.0);
+    }
+
+    /**
+     * 浮動小数点 PCM（-1.0〜1.0）を追加する（position から limit まで読む）
+     */
+    public void addPcmFloat(FloatBuffer pcm) {
+        while (pcm.hasRemaining()) add(pcm.get());
+    }
+
+    /**
+     * 浮動小数点 PCM をインターリーブされた配列から追加する
+     */
+    public void addPcmFloat(float[] pcm, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) add(pcm[i]);
+    }
+
+    private void add(double x) {
+        float abs = (float) Math.abs(x);
+        if (abs > peak) peak = abs;
+
+        // 転置直接形 II で 2 段のフィルタをかける
+        int c = channel;
+        double s1 = b0 * x + z1[c];
+        z1[c] = b1 * x - a1 * s1 + z2[c];
+        z2[c] = b2 * x - a2 * s1;
+        double s2 = c0 * s1 + y1[c];
+        y1[c] = c1 * s1 - d1 * s2 + y2[c];
+        y2[c] = c2 * s1 - d2 * s2;
+        hopSum += s2 * s2;
+
+        if (++channel == channels) {
+            channel = 0;
+            if (++hopCount == hopFrames) {
+                if (hopTotal == hops.length) hops = Arrays.copyOf(hops, hops.length * 2);
+                hops[hopTotal++] = hopSum / hopFrames;
+                hopSum = 0;
+                hopCount = 0;
+            }
+        }
+    }
+
+    /**
+     * @return 統合ラウドネス（LUFS）。ゲートを通るブロックがなければ負の無限大
+     */
+    public double integratedLoudness() {
+        int blocks = hopTotal - SUBBLOCKS_PER_BLOCK + 1;
+        if (blocks <= 0) return Double.NEGATIVE_INFINITY;
+        double absGate = power(ABSOLUTE_GATE_LUFS);
+        double sum = 0;
+        int n = 0;
+        for (int i = 0; i < blocks; i++) {
+            double p = block(i);
+            if (p > absGate) {
+                sum += p;
+                n++;
+            }
+        }
+        if (n == 0) return Double.NEGATIVE_INFINITY;
+        double relGate = power(loudness(sum / n) + RELATIVE_GATE_LU);
+        double gate = Math.max(absGate, relGate);
+        sum = 0;
+        n = 0;
+        for (int i = 0; i < blocks; i++) {
+            double p = block(i);
+            if (p > gate) {
+                sum += p;
+                n++;
+            }
+        }
+        return n == 0 ? Double.NEGATIVE_INFINITY : loudness(sum / n);
+    }
+
+    /**
+     * @return サンプルピーク（0.0〜）
+     */
+    public float peak() {
+        return peak;
+    }
+
+    /**
+     * 基準ラウドネスに合わせるためのゲイン
+     *
+     * @param lufs 統合ラウドネス
+     * @return ゲイン（dB）。無音なら 0
+     */
+    public static float replayGainDb(double lufs) {
+        if (Double.isInfinite(lufs) || Double.isNaN(lufs)) return 0f;
+        double gain = REFERENCE_LUFS - lufs;
+        return (float) Math.max(MIN_GAIN_DB, Math.min(MAX_GAIN_DB, gain));
+    }
+
+    private double block(int i) {
+        double p = 0;
+        for (int j = 0; j < SUBBLOCKS_PER_BLOCK; j++) p += hops[i + j];
+        return p / SUBBLOCKS_PER_BLOCK;
+    }
+
+    private static double loudness(double power) {
+        return -0.691 + 10.0 * Math.log10(power);
+    }
+
+    private static double power(double lufs) {
+        return Math.pow(10.0, (lufs + 0.691) / 10.0);
+    }
+}
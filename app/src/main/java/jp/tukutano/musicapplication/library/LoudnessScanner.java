@@ -0,0 +1,171 @@
+package jp.tukutano.musicapplication.library;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.tukutano.musicapplication.AppDatabase;
+import jp.tukutano.musicapplication.db.LibrarySong;
+import jp.tukutano.musicapplication.db.LoudnessDao;
+import jp.tukutano.musicapplication.db.TrackLoudness;
+
+/**
+ * ライブラリ全曲のラウドネスをバックグラウンドで解析する
+ * - 未解析・更新された曲を DB から少しずつ取り出し、コア数に合わせた数のスレッドで並列にデコードする
+ * - 結果は 1 曲ごとに track_loudness へ書くので、途中でプロセスが終了しても
+ *   次回は解析済みの曲を飛ばして続きから再開できる
+ * - デコードできなかった曲も記録し、ファイルが更新されるまで再試行しない
+ */
+public class LoudnessScanner {
+    private static final String TAG = "LoudnessScanner";
+
+    // 1 回に DB から取り出す曲数
+    private static final int BATCH = 64;
+    // 解析スレッド数（UI・再生用に 1 コアは残す）
+    private static final int THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static volatile LoudnessScanner instance;
+
+    private final Context appContext;
+    private final AppDatabase db;
+    private final LoudnessDao dao;
+    // 取り出し・投入を行うスレッド（走査は常に 1 本）
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "loudness-scan"));
+    private final ThreadPoolExecutor workers;
+    // 投入済みで未完了の曲数の上限（取り出しすぎてメモリを使わないように）
+    private final Semaphore inFlight = new Semaphore(THREADS * 2);
+    // 走査の予約済みか（走査中に start() されたら、終わった後にもう一度走査する）
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * プロセス共通の LoudnessScanner を返す
+     *
+     * @param context コンテキスト
+     * @return LoudnessScanner インスタンス
+     */
+    public static LoudnessScanner getInstance(Context context) {
+        LoudnessScanner scanner = instance;
+        if (scanner == null) {
+            synchronized (LoudnessScanner.class) {
+                scanner = instance;
+                if (scanner == null) {
+                    scanner = new LoudnessScanner(context.getApplicationContext());
+                    instance = scanner;
+                }
+            }
+        }
+        return scanner;
+    }
+
+    /**
+     * インスタンスを破棄する（テスト用。次の getInstance() で作り直す）
+     * 解析中の曲は最後まで処理し、未着手の曲は捨てる
+     */
+    @VisibleForTesting
+    public static void resetForTesting() {
+        LoudnessScanner scanner;
+        synchronized (LoudnessScanner.class) {
+            scanner = instance;
+            instance = null;
+        }
+        if (scanner == null) return;
+        scanner.coordinator.shutdownNow();
+        // 捨てた曲の分の枠を返し、走査中の coordinator の待ちを解く
+        scanner.inFlight.release(scanner.workers.shutdownNow().size());
+    }
+
+    private LoudnessScanner(Context context) {
+        appContext = context;
+        db = AppDatabase.getInstance(context);
+        dao = db.loudnessDao();
+        AtomicInteger count = new AtomicInteger();
+        workers = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, "loudness-" + count.incrementAndGet()));
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 未解析の曲の解析を始める（ライブラリ同期の後に呼ぶ。何度呼んでもよい）
+     */
+    public void start() {
+        if (scheduled.compareAndSet(false, true)) coordinator.execute(this::scan);
+    }
+
+    /**
+     * 未解析の曲をすべて解析し終えるまで投入を続ける（coordinator スレッド）
+     */
+    private void scan() {
+        scheduled.set(false);
+        long startNs = System.nanoTime();
+        int submitted = 0;
+        dao.deleteOrphans();
+        String after = "";
+        while (true) {
+            List<LibrarySong> batch = dao.getPending(after, BATCH);
+            if (batch.isEmpty()) break;
+            for (LibrarySong song : batch) {
+                inFlight.acquireUninterruptibly();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            analyze(song);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // resetForTesting() で止められた
+                    inFlight.release();
+                    return;
+                }
+            }
+            submitted += batch.size();
+            after = batch.get(batch.size() - 1).uri;
+        }
+        // 投入した曲がすべて終わるまで待つ
+        inFlight.acquireUninterruptibly(THREADS * 2);
+        inFlight.release(THREADS * 2);
+        if (submitted > 0) {
+            Log.d(TAG, submitted + " 曲を解析: "
+                    + (System.nanoTime() - startNs) / 1_000_000 + "ms");
+        }
+    }
+
+    /**
+     * 1 曲を解析して結果を書き込む（解析スレッド）
+     */
+    private void analyze(LibrarySong song) {
+        TrackLoudness result = new TrackLoudness(song.uri, song.generation);
+        try {
+            LoudnessMeter meter = LoudnessAnalyzer.analyze(appContext, Uri.parse(song.uri));
+            double lufs = meter.integratedLoudness();
+            result.loudness = (float) lufs;
+            result.gainDb = LoudnessMeter.replayGainDb(lufs);
+            result.peak = meter.peak();
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "解析できない曲: " + song.uri, e);
+            result.failed = true;
+        }
+        db.writeAsync(() -> dao.upsert(result));
+    }
+}
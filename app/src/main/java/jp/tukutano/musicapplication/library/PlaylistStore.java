@@ -0,0 +1,162 @@
+package jp.tukutano.musicapplication.library;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.tukutano.musicapplication.AppDatabase;
+import jp.tukutano.musicapplication.db.Playlist;
+import jp.tukutano.musicapplication.db.PlaylistDao;
+import jp.tukutano.musicapplication.db.PlaylistEntry;
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * プレイリストの作成・追加・並べ替え・削除
+ * - 並び順は PlaylistEntry.sortKey（実数）で持ち、移動は前後のキーの中間値を
+ *   1 行書き込むだけで済ませる。中間値が取れなくなった時だけ全体を振り直す
+ * - すべて DB スレッド（ワーカー）から呼ぶこと
+ */
+public class PlaylistStore {
+
+    // お気に入り用のプレイリスト（DB 作成・移行時に作られる）
+    public static final long FAVORITES_ID = 1;
+    public static final String FAVORITES_NAME = "お気に入り";
+    // 末尾追加・振り直し時のキーの間隔
+    static final double STEP = 1024;
+
+    private final AppDatabase db;
+    private final PlaylistDao dao;
+
+    public PlaylistStore(AppDatabase db) {
+        this.db = db;
+        this.dao = db.playlistDao();
+    }
+
+    /**
+     * 空のプレイリストを作成
+     *
+     * @return 作成したプレイリストの ID
+     */
+    public long create(String name) {
+        Playlist p = new Playlist();
+        p.name = name;
+        p.createdAt = System.currentTimeMillis();
+        return dao.insertPlaylist(p);
+    }
+
+    /**
+     * プレイリストと曲をまとめて削除
+     */
+    public void delete(long playlistId) {
+        db.runInTransaction(() -> {
+            dao.deleteEntries(playlistId);
+            dao.deletePlaylist(playlistId);
+        });
+    }
+
+    /**
+     * 曲を末尾に追加
+     */
+    public void append(long playlistId, List<Song> songs) {
+        db.runInTransaction(() -> {
+            Double max = dao.getMaxSortKey(playlistId);
+            double key = max != null ? max : 0;
+            List<PlaylistEntry> entries = new ArrayList<>(songs.size());
+            for (Song s : songs) {
+                key += STEP;
+                entries.add(toEntry(playlistId, key, s));
+            }
+            dao.insertEntries(entries);
+        });
+    }
+
+    /**
+     * 未登録の曲なら末尾に追加（お気に入り登録用）
+     */
+    public void appendIfAbsent(long playlistId, Song song) {
+        db.runInTransaction(() -> {
+            if (dao.contains(playlistId, song.getId())) return;
+            List<Song> one = new ArrayList<>(1);
+            one.add(song);
+            append(playlistId, one);
+        });
+    }
+
+    public void remove(long playlistId, String songId) {
+        dao.deleteSong(playlistId, songId);
+    }
+
+    /**
+     * エントリを指定位置へ移動する（他の行は書き換えない）
+     *
+     * @param entryId    移動するエントリ
+     * @param toPosition 移動後の位置（0 始まり）
+     */
+    public void move(long playlistId, long entryId, int toPosition) {
+        db.runInTransaction(() -> {
+            double key = keyForPosition(playlistId, entryId, toPosition);
+            if (Double.isNaN(key)) {
+                // 中間値が取れないほど詰まっている → 振り直してから再計算
+                renumber(playlistId);
+                key = keyForPosition(playlistId, entryId, toPosition);
+            }
+            dao.updateSortKey(entryId, key);
+        });
+    }
+
+    /**
+     * entryId を除いた並びで toPosition に入るキー
+     */
+    private double keyForPosition(long playlistId, long entryId, int toPosition) {
+        if (toPosition <= 0) {
+            List<Double> keys = dao.getSortKeys(playlistId, entryId, 0, 1);
+            return between(null, keys.isEmpty() ? null : keys.get(0));
+        }
+        List<Double> keys = dao.getSortKeys(playlistId, entryId, toPosition - 1, 2);
+        if (keys.isEmpty()) {
+            // 範囲外 → 末尾
+            Double max = dao.getMaxSortKey(playlistId);
+            return between(max, null);
+        }
+        return between(keys.get(0), keys.size() > 1 ? keys.get(1) : null);
+    }
+
+    /**
+     * 現在の並びのまま STEP 間隔でキーを振り直す
+     */
+    private void renumber(long playlistId) {
+        List<Long> ids = dao.getEntryIds(playlistId);
+        for (int i = 0; i < ids.size(); i++) {
+            dao.updateSortKey(ids.get(i), (i + 1) * STEP);
+        }
+    }
+
+    /**
+     * lo と hi の間に入るキー
+     *
+     * @param lo 直前のキー（先頭なら null）
+     * @param hi 直後のキー（末尾なら null）
+     * @return 間に入る値。精度が足りず取れなければ NaN
+     */
+    static double between(@Nullable Double lo, @Nullable Double hi) {
+        if (lo == null && hi == null) return STEP;
+        if (lo == null) return hi - STEP;
+        if (hi == null) return lo + STEP;
+        double mid = lo + (hi - lo) / 2;
+        return mid > lo && mid < hi ? mid : Double.NaN;
+    }
+
+    static PlaylistEntry toEntry(long playlistId, double sortKey, Song s) {
+        PlaylistEntry e = new PlaylistEntry();
+        e.playlistId = playlistId;
+        e.sortKey = sortKey;
+        e.songId = s.getId();
+        e.title = s.getTitle();
+        e.artist = s.getArtist();
+        e.album = s.getAlbum();
+        e.uri = s.getUri();
+        e.duration = s.getDuration();
+        return e;
+    }
+}
@@ -0,0 +1,301 @@
+package jp.tukutano.musicapplication.library;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import androidx.annotation.Nullable;
+
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * 曲名・アーティスト名の部分一致検索用 N-gram 転置インデックス
+ * - 正規化（NFKC + 小文字化）済みの文字列から文字 bigram / trigram のポスティングリストを事前構築
+ * - 2 文字のクエリは bigram、3 文字以上は trigram のポスティングを積集合して候補を絞り、
+ *   最後に正規化済み文字列で部分一致を確認する（trigram はハッシュ化しているため）
+ * - 直前のクエリを含む長いクエリ（入力を続けた場合）は前回結果だけを絞り込む
+ *   前回の状態は呼び出し側が Narrowing として持つ（インデックス自体は状態を持たない）
+ * 検索結果は構築時リストでの位置（昇順）。構築後は不変なので複数スレッドから同時に検索してよい
+ */
+public class SongSearchIndex {
+
+    // 正規化済みの曲名・アーティスト名（構築時リストの位置で引く）
+    private final String[] titles;
+    private final String[] artists;
+    private final GramTable bigrams;
+    private final GramTable trigrams;
+
+    /**
+     * 直前のクエリと結果（入力を続けた場合の絞り込み用）
+     * 検索のたびに更新される。1 つの Narrowing は 1 スレッドから使うこと
+     */
+    public static final class Narrowing {
+        // 結果を出したインデックス（別のインデックスの結果では絞り込まない）
+        private SongSearchIndex index;
+        private String query;
+        private int[] result;
+        private int count;
+    }
+
+    /**
+     * 楽曲リストからインデックスを構築する（ワーカースレッドで呼ぶこと）
+     *
+     * @param songs 検索対象の楽曲リスト
+     */
+    public SongSearchIndex(List<Song> songs) {
+        int n = songs.size();
+        titles = new String[n];
+        artists = new String[n];
+        for (int i = 0; i < n; i++) {
+            Song s = songs.get(i);
+            titles[i] = normalize(s.getTitle());
+            artists[i] = normalize(s.getArtist());
+        }
+        bigrams = new GramTable(titles, artists, 2);
+        trigrams = new GramTable(titles, artists, 3);
+    }
+
+    /**
+     * @return インデックス対象の曲数
+     */
+    public int size() {
+        return titles.length;
+    }
+
+    /**
+     * 検索用に文字列を正規化する（全角英数→半角、小文字化、前後の空白除去）
+     *
+     * @param s 元の文字列（null 可）
+     * @return 正規化済み文字列
+     */
+    public static String normalize(String s) {
+        if (s == null) return "";
+        return Normalizer.normalize(s, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT).trim();
+    }
+
+    /**
+     * 曲名またはアーティスト名にクエリを含む曲を検索する（前回結果を使わない）
+     *
+     * @param query 検索キーワード（未正規化で可）
+     * @return 一致した曲の構築時リストでの位置（昇順）
+     */
+    public int[] search(String query) {
+        return search(query, null);
+    }
+
+    /**
+     * 曲名またはアーティスト名にクエリを含む曲を検索する
+     *
+     * @param query 検索キーワード（未正規化で可）
+     * @param state 直前の検索（null なら使わない）。このクエリの結果で更新される
+     * @return 一致した曲の構築時リストでの位置（昇順）
+     */
+    public int[] search(String query, @Nullable Narrowing state) {
+        String q = normalize(query);
+        int n = titles.length;
+        if (q.isEmpty()) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) all[i] = i;
+            remember(state, q, all, n);
+            return all;
+        }
+
+        // 前回のクエリを含む（入力を続けた）なら一致集合は前回結果の部分集合
+        boolean narrowing = state != null && state.index == this
+                && !state.query.isEmpty() && q.contains(state.query);
+        int[] result;
+        int count;
+        if (q.length() == 1) {
+            if (narrowing) {
+                result = new int[state.count];
+                count = verify(q, state.result, state.count, result);
+            } else {
+                // 1 文字はポスティングを持たないので正規化済み文字列を走査
+                result = new int[n];
+                count = 0;
+                char c = q.charAt(0);
+                for (int i = 0; i < n; i++) {
+                    if (titles[i].indexOf(c) >= 0 || artists[i].indexOf(c) >= 0) result[count++] = i;
+                }
+            }
+        } else {
+            // ポスティングの積集合と前回結果のうち、少ない方だけを検証する
+            int[] candidates = candidates(q);
+            if (narrowing && state.count < candidates.length) {
+                result = new int[state.count];
+                count = verify(q, state.result, state.count, result);
+            } else {
+                result = new int[candidates.length];
+                count = verify(q, candidates, candidates.length, result);
+            }
+        }
+        remember(state, q, result, count);
+        return Arrays.copyOf(result, count);
+    }
+
+    private void remember(@Nullable Narrowing state, String q, int[] result, int count) {
+        if (state == null) return;
+        state.index = this;
+        state.query = q;
+        state.result = result;
+        state.count = count;
+    }
+
+    /**
+     * クエリの全 gram のポスティングを積集合する
+     *
+     * @return 候補の位置（昇順）
+     */
+    private int[] candidates(String q) {
+        GramTable table = q.length() == 2 ? bigrams : trigrams;
+        int gramLen = table.gramLength;
+        int grams = q.length() - gramLen + 1;
+
+        // 最も短いポスティングから始めて積集合をとる
+        int[] slots = new int[grams];
+        for (int g = 0; g < grams; g++) {
+            int slot = table.find(GramTable.key(q, g, gramLen));
+            if (slot < 0) return new int[0];
+            slots[g] = slot;
+        }
+        int shortest = 0;
+        for (int g = 1; g < grams; g++) {
+            if (table.length(slots[g]) < table.length(slots[shortest])) shortest = g;
+        }
+        int start = table.offsets[slots[shortest]];
+        int count = table.length(slots[shortest]);
+        // 検索ごとの作業領域（インデックスに持たせると同時に検索できない）
+        int[] work = Arrays.copyOfRange(table.docs, start, start + count);
+
+        for (int g = 0; g < grams && count > 0; g++) {
+            if (g == shortest) continue;
+            count = intersect(work, count, table.docs,
+                    table.offsets[slots[g]], table.offsets[slots[g] + 1]);
+        }
+        return count == work.length ? work : Arrays.copyOf(work, count);
+    }
+
+    /**
+     * 昇順配列 a[0, count) と b[from, to) の積集合を a の先頭に書き戻す
+     *
+     * @return 積集合の要素数
+     */
+    private static int intersect(int[] a, int count, int[] b, int from, int to) {
+        int out = 0;
+        int j = from;
+        for (int i = 0; i < count && j < to; i++) {
+            int v = a[i];
+            while (j < to && b[j] < v) j++;
+            if (j < to && b[j] == v) a[out++] = v;
+        }
+        return out;
+    }
+
+    /**
+     * 候補のうち実際に部分一致する曲だけを out に書き込む
+     *
+     * @return 一致数
+     */
+    private int verify(String q, int[] candidates, int count, int[] out) {
+        int matched = 0;
+        for (int i = 0; i < count; i++) {
+            int d = candidates[i];
+            if (titles[d].contains(q) || artists[d].contains(q)) out[matched++] = d;
+        }
+        return matched;
+    }
+
+    /**
+     * gram → 曲位置のポスティングリスト（CSR 形式）
+     * keys[k] の gram を含む曲は docs[offsets[k], offsets[k + 1]) に昇順で並ぶ
+     */
+    static final class GramTable {
+        final int gramLength;
+        final int[] keys;
+        final int[] offsets;
+        final int[] docs;
+
+        GramTable(String[] titles, String[] artists, int gramLength) {
+            this.gramLength = gramLength;
+            int n = titles.length;
+
+            // 1 パス目: 曲ごとの重複なし gram を前方インデックスとして平坦に並べる
+            int[] docStart = new int[n + 1];
+            int[] flat = new int[Math.max(16, n * 16)];
+            int size = 0;
+            for (int d = 0; d < n; d++) {
+                docStart[d] = size;
+                flat = ensure(flat, size + titles[d].length() + artists[d].length());
+                size = appendGrams(titles[d], flat, size);
+                size = appendGrams(artists[d], flat, size);
+                // 曲内の重複を除く
+                Arrays.sort(flat, docStart[d], size);
+                int w = docStart[d];
+                for (int r = docStart[d]; r < size; r++) {
+                    if (r == docStart[d] || flat[r] != flat[r - 1]) flat[w++] = flat[r];
+                }
+                size = w;
+            }
+            docStart[n] = size;
+
+            // 一意な gram と出現数
+            int[] sorted = Arrays.copyOf(flat, size);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) sorted[unique++] = sorted[i];
+            }
+            keys = Arrays.copyOf(sorted, unique);
+
+            // gram キーをスロット番号に置き換えつつ出現数を数える
+            offsets = new int[unique + 1];
+            for (int i = 0; i < size; i++) {
+                flat[i] = Arrays.binarySearch(keys, flat[i]);
+                offsets[flat[i] + 1]++;
+            }
+            for (int k = 0; k < unique; k++) offsets[k + 1] += offsets[k];
+
+            // 2 パス目: 曲順に書き込むのでポスティングは昇順になる
+            docs = new int[size];
+            int[] cursor = Arrays.copyOf(offsets, unique);
+            for (int d = 0; d < n; d++) {
+                for (int i = docStart[d]; i < docStart[d + 1]; i++) {
+                    docs[cursor[flat[i]]++] = d;
+                }
+            }
+        }
+
+        private int appendGrams(String s, int[] flat, int size) {
+            for (int i = 0; i + gramLength <= s.length(); i++) {
+                flat[size++] = key(s, i, gramLength);
+            }
+            return size;
+        }
+
+        private static int[] ensure(int[] a, int capacity) {
+            return capacity <= a.length ? a : Arrays.copyOf(a, Math.max(capacity, a.length * 2));
+        }
+
+        /**
+         * s[from, from + len) の gram キー
+         * bigram は 2 文字をそのまま詰め、trigram は 32bit にハッシュする（衝突は検証で除外）
+         */
+        static int key(String s, int from, int len) {
+            if (len == 2) return (s.charAt(from) << 16) | s.charAt(from + 1);
+            int h = s.charAt(from);
+            h = h * 0x9E3779B1 + s.charAt(from + 1);
+            h = h * 0x9E3779B1 + s.charAt(from + 2);
+            return h ^ (h >>> 15);
+        }
+
+        int find(int key) {
+            int k = Arrays.binarySearch(keys, key);
+            return k >= 0 ? k : -1;
+        }
+
+        int length(int slot) {
+            return offsets[slot + 1] - offsets[slot];
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package jp.tukutano.musicapplication.service;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import jp.tukutano.musicapplication.dsp.DspConfig;
+
+/**
+ * MediaCodec でデコードし AudioTrack へ書き出す TrackPlayer
+ * - デコードスレッドが PCM を PcmRing（使い回しのダイレクト ByteBuffer）へ詰め、
+ *   PcmOutput の出力スレッドが取り出して音量を掛け、AudioTrack へ書く
+ * - 連結した次曲は同じ AudioTrack に続けて書くので、曲間はサンプル単位で途切れない
+ *   （サンプルレート・チャンネル数が違う場合だけ AudioTrack を作り直す）
+ * - 音量は出力時にサンプルへ掛け、変化は短いランプで繋ぐ
+ * - DSP（EQ・コンプレッサー・リミッター）は出力スレッドで音量の後に掛ける
+ * - クロスフェードは出力スレッドが前曲の残りを次曲にサンプル単位で混ぜる（同じ形式の時）。
+ *   前曲のリングとデコードスレッドは後奏（tailRing）として出力に引き渡し、reset() 後も鳴り終わるまで残る
+ * 操作は生成したスレッドから行うこと。リスナーもそのスレッドで呼ばれる
+ */
+final class CodecTrackPlayer implements TrackPlayer {
+    private static final String TAG = "CodecTrackPlayer";
+
+    // デコーダのバッファ待ちの上限
+    private static final long DEQUEUE_TIMEOUT_US = 10_000;
+
+    /**
+     * バッファ構成
+     */
+    static final class Config {
+        final int slotBytes;      // リングの 1 スロットのバイト数
+        final int slotCount;      // リングのスロット数（デコードの先読み量）
+        final int trackBufferMs;  // AudioTrack 側のバッファ（端末の最小値より小さくはならない）
+
+        Config(int slotBytes, int slotCount, int trackBufferMs) {
+            this.slotBytes = slotBytes;
+            this.slotCount = slotCount;
+            this.trackBufferMs = trackBufferMs;
+        }
+    }
+
+    static final Config DEFAULT_CONFIG = new Config(16 * 1024, 12, 200);
+
+    private static final int IDLE = 0;
+    private static final int INITIALIZED = 1;
+    private static final int PREPARING = 2;
+    private static final int PREPARED = 3;
+    private static final int STARTED = 4;
+    private static final int PAUSED = 5;
+    private static final int COMPLETED = 6;
+    private static final int ERROR = 7;
+
+    private final Config config;
+    private final Handler callbacks = new Handler(Looper.myLooper());
+    private Listener listener;
+    private volatile float volume = 1f;
+    private volatile Crossfade crossfade = Crossfade.NONE;
+    private volatile DspConfig dsp = DspConfig.OFF;
+
+    // --- 以下は this で保護（デコード・出力スレッドからも触る） ---
+    private int state = IDLE;
+    // reset() のたびに進め、古いデコードスレッドからの通知を捨てる
+    private int session;
+    private Context context;
+    private Uri uri;
+    private PcmRing ring;
+    private long seekRequestUs = -1;
+    private long startPositionUs;   // 出力を始める（シーク後の）曲内位置
+    private PcmOutput output;       // この曲の PCM を流している出力
+    private CodecTrackPlayer next;
+    // 出力へ後奏として引き渡したリング（reset() では閉じない）
+    private PcmRing tailRing;
+    // デコーダの出力形式
+    private int sampleRate;
+    private int channels;
+    private boolean floatPcm;
+    private long durationUs = -1;
+
+    CodecTrackPlayer(Config config) {
+        this.config = config;
+    }
+
+    @Override
+    public Engine engine() {
+        return Engine.CODEC;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized void setDataSource(Context context, Uri uri) {
+        if (state != IDLE) throw new IllegalStateException("state=" + state);
+        this.context = context.getApplicationContext();
+        this.uri = uri;
+        state = INITIALIZED;
+    }
+
+    @Override
+    public synchronized void prepareAsync() {
+        if (state != INITIALIZED) throw new IllegalStateException("state=" + state);
+        state = PREPARING;
+        PcmRing r = new PcmRing(config.slotCount, config.slotBytes);
+        ring = r;
+        int s = session;
+        new Thread(() -> decodeLoop(s, r), "codec-decode").start();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (state == STARTED) return;
+        if (state != PREPARED && state != PAUSED) throw new IllegalStateException("state=" + state);
+        if (output == null) {
+            try {
+                output = new PcmOutput(this, sampleRate, channels, startPositionUs,
+                        config.trackBufferMs, config.slotBytes);
+            } catch (RuntimeException e) {
+                // AudioTrack を作れない形式・リソース不足
+                Log.w(TAG, "AudioTrack を作成できない", e);
+                postError(session);
+                return;
+            }
+        }
+        output.play();
+        state = STARTED;
+    }
+
+    @Override
+    public synchronized void pause() {
+        if (state != STARTED) return;
+        output.pause();
+        state = PAUSED;
+    }
+
+    @Override
+    public synchronized boolean isPlaying() {
+        return state == STARTED;
+    }
+
+    @Override
+    public synchronized void seekTo(long positionMs) {
+        if (state != PREPARED && state != STARTED && state != PAUSED) return;
+        long us = Math.max(0, positionMs) * 1000;
+        seekRequestUs = us;
+        ring.clear();
+        if (output != null) {
+            output.flush(us);
+        } else {
+            startPositionUs = us;
+        }
+        notifyAll();
+    }
+
+    @Override
+    public synchronized long getCurrentPosition() {
+        return (output != null ? output.positionUs() : startPositionUs) / 1000;
+    }
+
+    @Override
+    public synchronized long getDuration() {
+        return durationUs < 0 ? -1 : durationUs / 1000;
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+    }
+
+    @Override
+    public void setDsp(DspConfig dsp) {
+        this.dsp = dsp;
+        PcmOutput out;
+        synchronized (this) {
+            out = output;
+        }
+        if (out != null) out.setDsp(dsp);
+    }
+
+    @Override
+    public void setCrossfade(Crossfade crossfade) {
+        this.crossfade = crossfade;
+    }
+
+    @Override
+    public synchronized void setNextPlayer(@Nullable TrackPlayer next) {
+        if (next != null && !(next instanceof CodecTrackPlayer)) {
+            throw new IllegalStateException("エンジンが異なるプレイヤーは連結できない");
+        }
+        this.next = (CodecTrackPlayer) next;
+    }
+
+    @Override
+    public synchronized void reset() {
+        session++;
+        if (ring != null) ring.close();
+        ring = null;
+        if (output != null) output.release();
+        output = null;
+        next = null;
+        seekRequestUs = -1;
+        startPositionUs = 0;
+        durationUs = -1;
+        state = IDLE;
+        notifyAll();
+    }
+
+    @Override
+    public void release() {
+        reset();
+    }
+
+    // ---------------------------------------------------------------
+    // PcmOutput（出力スレッド）から呼ばれる
+    // ---------------------------------------------------------------
+
+    float volume() {
+        return volume;
+    }
+
+    synchronized boolean isFloatPcm() {
+        return floatPcm;
+    }
+
+    Crossfade crossfade() {
+        return crossfade;
+    }
+
+    DspConfig dsp() {
+        return dsp;
+    }
+
+    /**
+     * @return 曲の長さ（マイクロ秒）。不明なら -1
+     */
+    synchronized long durationUs() {
+        return durationUs;
+    }
+
+    synchronized CodecTrackPlayer nextPlayer() {
+        return next;
+    }
+
+    /**
+     * @return out がこの曲を流しているならリング。違えば null
+     */
+    @Nullable
+    synchronized PcmRing ringFor(PcmOutput out) {
+        return output == out ? ring : null;
+    }
+
+    /**
+     * 前の曲の出力を引き継いで続けて再生する
+     *
+     * @return 引き継いだら曲内の開始位置。準備ができていない・形式が違うなら -1
+     */
+    synchronized long takeOver(PcmOutput out, int rate, int ch) {
+        if (state != PREPARED || output != null || sampleRate != rate || channels != ch) return -1;
+        output = out;
+        state = STARTED;
+        int s = session;
+        callbacks.post(() -> {
+            if (isSession(s)) listener.onStartedAsNext(this);
+        });
+        return startPositionUs;
+    }
+
+    /**
+     * 出力を次曲に引き継いだ、または書き込んだ分を鳴らし終えた
+     *
+     * @param startNext 連結した次曲を（別の出力で）開始するか
+     */
+    synchronized void onOutputFinished(PcmOutput out, boolean startNext) {
+        if (output != out) return;
+        output = null;
+        state = COMPLETED;
+        int s = session;
+        CodecTrackPlayer n = startNext ? next : null;
+        callbacks.post(() -> {
+            if (!isSession(s)) return;
+            if (n != null) n.startAsNext();
+            listener.onCompletion(this);
+        });
+    }
+
+    /**
+     * クロスフェードの開始。残りの PCM（リングとデコードスレッド）を後奏として出力に引き渡し、
+     * この曲は終わったものとして onCompletion を通知する
+     *
+     * @return 後奏のリング。out がこの曲を流していなければ null
+     */
+    @Nullable
+    synchronized PcmRing handOffTail(PcmOutput out) {
+        if (output != out) return null;
+        output = null;
+        tailRing = ring;
+        ring = null;
+        state = COMPLETED;
+        int s = session;
+        callbacks.post(() -> {
+            if (isSession(s)) listener.onCompletion(this);
+        });
+        notifyAll();
+        return tailRing;
+    }
+
+    /**
+     * 後奏を鳴らし終えた・打ち切った（デコードスレッドを止める）
+     */
+    synchronized void onTailFinished(PcmRing r) {
+        r.close();
+        if (tailRing == r) tailRing = null;
+        notifyAll();
+    }
+
+    /**
+     * 出力への書き込みに失敗した
+     */
+    synchronized void onOutputError(PcmOutput out) {
+        if (output == out) postError(session);
+    }
+
+    private void startAsNext() {
+        synchronized (this) {
+            if (state != PREPARED) return;
+            start();
+            if (state != STARTED) return;
+        }
+        listener.onStartedAsNext(this);
+    }
+
+    private synchronized boolean isSession(int s) {
+        return session == s;
+    }
+
+    // ---------------------------------------------------------------
+    // デコードスレッド
+    // ---------------------------------------------------------------
+
+    private void decodeLoop(int s, PcmRing r) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            Context ctx;
+            Uri u;
+            synchronized (this) {
+                if (session != s) return;
+                ctx = context;
+                u = uri;
+            }
+            extractor.setDataSource(ctx, u, null);
+            MediaFormat format = selectAudioTrack(extractor);
+            if (format == null) throw new IOException("音声トラックがない: " + u);
+            int rate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int ch = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            boolean fl = false;
+            long duration = format.containsKey(MediaFormat.KEY_DURATION)
+                    ? format.getLong(MediaFormat.KEY_DURATION) : -1;
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean outputDone = false;
+            boolean announced = false;
+            long discardUntilUs = -1;
+            // このループで出力を詰めるリングの世代（seekTo() の clear() より前のデータを捨てるため）
+            int ringGeneration;
+            while (true) {
+                long seekUs;
+                synchronized (this) {
+                    // 最後まで詰めたらシークか reset まで待つ
+                    while (outputDone && session == s && seekRequestUs < 0 && tailRing != r) wait();
+                    // 後奏として引き渡したリングは reset() 後も最後まで詰める
+                    boolean tail = tailRing == r;
+                    if (tail ? outputDone : session != s) return;
+                    seekUs = tail ? -1 : seekRequestUs;
+                    if (!tail) seekRequestUs = -1;
+                    // seekTo() はロック中に clear() とシーク要求を行うので、ここで読んだ世代は
+                    // 未処理のシークがあればその後の世代、なければ次のシークまで有効な世代になる
+                    ringGeneration = r.generation();
+                }
+                if (seekUs >= 0) {
+                    extractor.seekTo(seekUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                    codec.flush();
+                    inputDone = false;
+                    outputDone = false;
+                    // キーフレームから目的の位置までのサンプルは捨てる
+                    discardUntilUs = seekUs;
+                }
+
+                if (!inputDone) {
+                    int in = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                    if (in >= 0) {
+                        ByteBuffer buf = codec.getInputBuffer(in);
+                        int size = extractor.readSampleData(buf, 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(in, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(in, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int out = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+                if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat f = codec.getOutputFormat();
+                    rate = f.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    ch = f.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                    fl = f.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                            && f.getInteger(MediaFormat.KEY_PCM_ENCODING) == AudioFormat.ENCODING_PCM_FLOAT;
+                } else if (out >= 0) {
+                    if (!announced) {
+                        // 最初の出力で形式が確定する → 準備完了
+                        if (ch < 1 || ch > 2) throw new IOException("未対応のチャンネル数: " + ch);
+                        announced = true;
+                        onDecoderReady(s, rate, ch, fl, duration);
+                    }
+                    ByteBuffer buf = codec.getOutputBuffer(out);
+                    boolean open = info.size == 0
+                            || copyToRing(r, ringGeneration, buf, info, rate, ch * (fl ? 4 : 2),
+                            discardUntilUs);
+                    codec.releaseOutputBuffer(out, false);
+                    if (!open) return;
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        PcmRing.Slot slot = r.acquire(ringGeneration);
+                        if (slot == null) return;
+                        slot.eos = true;
+                        // シークされていたら終わりにしない（シーク先からデコードし直す）
+                        outputDone = r.commit(slot);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "デコードに失敗", e);
+            postError(s);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (codec != null) codec.release();
+            extractor.release();
+        }
+    }
+
+    @Nullable
+    private static MediaFormat selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat f = extractor.getTrackFormat(i);
+            String mime = f.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(i);
+                return f;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * デコーダの出力バッファをフレーム境界でスロットに分けて詰める（確保なし）
+     * 詰めている途中でシークされたら（世代が変わったら）残りは捨てる
+     *
+     * @param generation 出力をデコードした時点のリングの世代
+     * @return リングが閉じられたら false
+     */
+    private static boolean copyToRing(PcmRing r, int generation, ByteBuffer buf, MediaCodec.BufferInfo info,
+                                      int rate, int frameBytes, long discardUntilUs) {
+        int start = info.offset;
+        int end = info.offset + info.size;
+        if (discardUntilUs > info.presentationTimeUs) {
+            long skip = (discardUntilUs - info.presentationTimeUs) * rate / 1_000_000;
+            start += (int) Math.min(info.size / frameBytes, skip) * frameBytes;
+        }
+        int perSlot = r.slotBytes() - r.slotBytes() % frameBytes;
+        while (start < end) {
+            PcmRing.Slot slot = r.acquire(generation);
+            if (slot == null) return false;
+            int n = Math.min(perSlot, end - start);
+            buf.limit(start + n);
+            buf.position(start);
+            slot.data.put(buf);
+            slot.timeUs = info.presentationTimeUs
+                    + (long) (start - info.offset) / frameBytes * 1_000_000 / rate;
+            // 古い位置のデータ（閉じられた場合は次の acquire() で分かる）
+            if (!r.commit(slot)) return true;
+            start += n;
+        }
+        return true;
+    }
+
+    private void onDecoderReady(int s, int rate, int ch, boolean fl, long duration) {
+        synchronized (this) {
+            if (session != s) return;
+            sampleRate = rate;
+            channels = ch;
+            floatPcm = fl;
+            durationUs = duration;
+        }
+        callbacks.post(() -> {
+            synchronized (this) {
+                if (session != s || state != PREPARING) return;
+                state = PREPARED;
+            }
+            listener.onPrepared(this);
+        });
+    }
+
+    private void postError(int s) {
+        callbacks.post(() -> {
+            synchronized (this) {
+                if (session != s) return;
+                state = ERROR;
+            }
+            listener.onError(this, MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO);
+        });
+    }
+}
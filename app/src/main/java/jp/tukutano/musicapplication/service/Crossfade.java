@@ -0,0 +1,90 @@
+package jp.tukutano.musicapplication.service;
+
+/**
+ * 曲間のクロスフェード設定（重ねる長さとフェードカーブ）
+ * - 前曲の終わり durationMs を次曲の頭と重ね、前曲を fadeOut、次曲を fadeIn の音量で鳴らす
+ * - 0 ms ならクロスフェードしない（従来どおり途切れなく連結するだけ）
+ */
+public final class Crossfade {
+
+    // 重ねる長さの上限
+    public static final long MAX_MS = 12_000;
+
+    public static final Crossfade NONE = new Crossfade(0, Curve.EQUAL_POWER);
+
+    /**
+     * フェードカーブ（fadeIn(x) と fadeOut(x) = fadeIn(1 - x) の組）
+     */
+    public enum Curve {
+        // sin/cos：二乗和が一定で、無相関な曲同士で音量の谷ができない
+        EQUAL_POWER("等パワー"),
+        // 直線：和が一定
+        LINEAR("直線"),
+        // smoothstep：和が一定で、両端がなだらか
+        S_CURVE("S 字");
+
+        public final String label;
+
+        Curve(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @param x フェードの進み具合 0.0〜1.0
+         * @return 入ってくる曲の音量 0.0〜1.0
+         */
+        public float fadeIn(float x) {
+            if (x <= 0f) return 0f;
+            if (x >= 1f) return 1f;
+            switch (this) {
+                case EQUAL_POWER:
+                    return (float) Math.sin(x * Math.PI / 2);
+                case S_CURVE:
+                    return x * x * (3f - 2f * x);
+                default:
+                    return x;
+            }
+        }
+
+        /**
+         * @param x フェードの進み具合 0.0〜1.0
+         * @return 出ていく曲の音量 1.0〜0.0
+         */
+        public float fadeOut(float x) {
+            return fadeIn(1f - x);
+        }
+    }
+
+    public final long durationMs;
+    public final Curve curve;
+
+    /**
+     * @param durationMs 重ねる長さ（0〜MAX_MS に丸める）
+     */
+    public Crossfade(long durationMs, Curve curve) {
+        this.durationMs = Math.max(0, Math.min(MAX_MS, durationMs));
+        this.curve = curve;
+    }
+
+    /**
+     * 設定値から作る（範囲外のカーブ番号は既定のカーブにする）
+     */
+    public static Crossfade of(long durationMs, int curveOrdinal) {
+        Curve[] curves = Curve.values();
+        Curve c = curveOrdinal >= 0 && curveOrdinal < curves.length ? curves[curveOrdinal] : Curve.EQUAL_POWER;
+        return new Crossfade(durationMs, c);
+    }
+
+    /**
+     * 実際に重ねる長さ
+     * 短い曲がほぼフェードだけにならないよう、どちらの曲も半分までしか重ねない
+     *
+     * @param currentMs 前曲の長さ（不明なら 0 以下）
+     * @param nextMs    次曲の長さ（不明なら 0 以下）
+     * @return 重ねる長さ（ミリ秒）。クロスフェードしないなら 0
+     */
+    public long overlapMs(long currentMs, long nextMs) {
+        if (durationMs == 0 || currentMs <= 0 || nextMs <= 0) return 0;
+        return Math.min(durationMs, Math.min(currentMs, nextMs) / 2);
+    }
+}
@@ -0,0 +1,48 @@
+package jp.tukutano.musicapplication.service;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 画面から直接渡された URI・タイトルのリストを再生するキュー（1 曲再生など）
+ */
+class ListQueueSource implements QueueSource {
+
+    static final ListQueueSource EMPTY =
+            new ListQueueSource(Collections.emptyList(), Collections.emptyList());
+
+    private final List<String> uris;
+    private final List<String> titles;
+
+    ListQueueSource(List<String> uris, List<String> titles) {
+        this.uris = uris;
+        this.titles = titles;
+    }
+
+    @Override
+    public int size() {
+        return uris.size();
+    }
+
+    @Override
+    public void fetch(int index, Callback callback) {
+        callback.onTrack(uris.get(index), titleAt(index));
+    }
+
+    private String titleAt(int index) {
+        return index < titles.size() ? titles.get(index) : null;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(PlaybackSnapshot.SOURCE_LIST);
+        out.writeInt(uris.size());
+        for (int i = 0; i < uris.size(); i++) {
+            out.writeUTF(uris.get(i));
+            String title = titleAt(i);
+            out.writeUTF(title != null ? title : "");
+        }
+    }
+}
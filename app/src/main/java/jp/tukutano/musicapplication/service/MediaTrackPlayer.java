@@ -0,0 +1,247 @@
+package jp.tukutano.musicapplication.service;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.media.VolumeShaper;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+import jp.tukutano.musicapplication.dsp.DspConfig;
+
+/**
+ * MediaPlayer による TrackPlayer（従来の再生経路。CodecTrackPlayer で再生できない時の代替も兼ねる）
+ * - クロスフェードしない時は setNextMediaPlayer で途切れなく連結する
+ * - クロスフェードする時は終わりの手前に一度だけタイマーを掛けて次曲を始め、
+ *   音量の変化は両方のプレイヤーに付けた VolumeShaper（オーディオフレームワーク側）に任せる
+ */
+final class MediaTrackPlayer implements TrackPlayer {
+
+    // VolumeShaper に渡すカーブの点数
+    private static final int SHAPE_POINTS = 17;
+
+    private final Handler handler = new Handler(Looper.myLooper());
+    private final Runnable fadeTask = this::beginCrossfade;
+    // クロスフェードの開始で次曲へ引き渡した後は null
+    private MediaPlayer player = new MediaPlayer();
+    private Listener listener;
+    private Crossfade crossfade = Crossfade.NONE;
+    // クロスフェードで繋ぐ次曲（setNextMediaPlayer で連結した場合は null）
+    private MediaTrackPlayer fadeNext;
+    // 次曲として始まった時のフェードイン
+    private VolumeShaper fadeIn;
+    // 引き取った前曲（フェードアウト中）
+    private MediaPlayer tail;
+
+    MediaTrackPlayer() {
+        player.setOnPreparedListener(mp -> listener.onPrepared(this));
+        player.setOnCompletionListener(mp -> onPlayerCompletion());
+        player.setOnErrorListener((mp, what, extra) -> {
+            listener.onError(this, what, extra);
+            // 処理済み（onCompletion を呼ばせない）
+            return true;
+        });
+        player.setOnInfoListener((mp, what, extra) -> {
+            if (what == MediaPlayer.MEDIA_INFO_STARTED_AS_NEXT) listener.onStartedAsNext(this);
+            return false;
+        });
+    }
+
+    @Override
+    public Engine engine() {
+        return Engine.MEDIA_PLAYER;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setDataSource(Context context, Uri uri) throws IOException {
+        player.setDataSource(context, uri);
+    }
+
+    @Override
+    public void prepareAsync() {
+        player.setLooping(false);
+        player.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        player.start();
+        if (tail != null) tail.start();
+        scheduleCrossfade();
+    }
+
+    @Override
+    public void pause() {
+        handler.removeCallbacks(fadeTask);
+        player.pause();
+        if (tail != null) tail.pause();
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return player.isPlaying();
+    }
+
+    @Override
+    public void seekTo(long positionMs) {
+        endFadeIn();
+        player.seekTo((int) positionMs);
+        scheduleCrossfade();
+    }
+
+    @Override
+    public long getCurrentPosition() {
+        return player.getCurrentPosition();
+    }
+
+    @Override
+    public long getDuration() {
+        return player.getDuration();
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        player.setVolume(volume, volume);
+    }
+
+    @Override
+    public void setDsp(DspConfig dsp) {
+        // MediaPlayer の出力は加工しない
+    }
+
+    @Override
+    public void setCrossfade(Crossfade crossfade) {
+        this.crossfade = crossfade;
+    }
+
+    @Override
+    public void setNextPlayer(@Nullable TrackPlayer next) {
+        if (next != null && !(next instanceof MediaTrackPlayer)) {
+            throw new IllegalStateException("エンジンが異なるプレイヤーは連結できない");
+        }
+        MediaTrackPlayer n = (MediaTrackPlayer) next;
+        boolean fade = n != null && crossfade.overlapMs(getDuration(), n.getDuration()) > 0;
+        fadeNext = fade ? n : null;
+        player.setNextMediaPlayer(n != null && !fade ? n.player : null);
+        scheduleCrossfade();
+    }
+
+    @Override
+    public void reset() {
+        handler.removeCallbacks(fadeTask);
+        fadeNext = null;
+        endFadeIn();
+        if (player != null) player.reset();
+    }
+
+    @Override
+    public void release() {
+        handler.removeCallbacks(fadeTask);
+        fadeNext = null;
+        endFadeIn();
+        if (player != null) player.release();
+    }
+
+    /**
+     * 再生中ならフェードを始める時刻にタイマーを掛け直す
+     */
+    private void scheduleCrossfade() {
+        handler.removeCallbacks(fadeTask);
+        if (fadeNext == null || !player.isPlaying()) return;
+        long overlap = crossfade.overlapMs(getDuration(), fadeNext.getDuration());
+        long delay = getDuration() - getCurrentPosition() - overlap;
+        handler.postDelayed(fadeTask, Math.max(0, delay));
+    }
+
+    /**
+     * 次曲をフェードインで始め、この曲のプレイヤーはフェードアウトする後奏として次曲に渡す
+     */
+    private void beginCrossfade() {
+        MediaTrackPlayer n = fadeNext;
+        if (n == null || !player.isPlaying()) return;
+        long overlap = Math.min(crossfade.overlapMs(getDuration(), n.getDuration()),
+                getDuration() - getCurrentPosition());
+        if (overlap <= 0) return;  // 残りがなければ終了時に切り替える
+        fadeNext = null;
+        MediaPlayer outgoing = player;
+        player = null;
+        n.startWithTail(outgoing, overlap, crossfade.curve);
+        listener.onCompletion(this);
+    }
+
+    /**
+     * 前曲の後奏を引き取り、フェードインで再生を始める
+     */
+    private void startWithTail(MediaPlayer outgoing, long overlapMs, Crossfade.Curve curve) {
+        releaseTail();
+        tail = outgoing;
+        tail.setOnCompletionListener(mp -> releaseTail());
+        tail.setOnErrorListener((mp, what, extra) -> {
+            releaseTail();
+            return true;
+        });
+        tail.setOnInfoListener(null);
+        tail.createVolumeShaper(shape(overlapMs, curve, false)).apply(VolumeShaper.Operation.PLAY);
+        fadeIn = player.createVolumeShaper(shape(overlapMs, curve, true));
+        fadeIn.apply(VolumeShaper.Operation.PLAY);
+        start();
+        listener.onStartedAsNext(this);
+    }
+
+    /**
+     * フェードイン・後奏を打ち切る（シーク・停止時）
+     */
+    private void endFadeIn() {
+        if (fadeIn != null) {
+            fadeIn.close();
+            fadeIn = null;
+        }
+        releaseTail();
+    }
+
+    private void releaseTail() {
+        if (tail != null) {
+            tail.release();
+            tail = null;
+        }
+    }
+
+    private void onPlayerCompletion() {
+        handler.removeCallbacks(fadeTask);
+        MediaTrackPlayer n = fadeNext;
+        if (n != null) {
+            // フェードを始める前に終わった → そのまま次曲を始める
+            fadeNext = null;
+            n.start();
+            listener.onStartedAsNext(n);
+        }
+        listener.onCompletion(this);
+    }
+
+    /**
+     * クロスフェードのカーブを VolumeShaper の設定にする（点の間は直線補間）
+     */
+    private static VolumeShaper.Configuration shape(long durationMs, Crossfade.Curve curve, boolean in) {
+        float[] times = new float[SHAPE_POINTS];
+        float[] volumes = new float[SHAPE_POINTS];
+        for (int i = 0; i < SHAPE_POINTS; i++) {
+            float x = (float) i / (SHAPE_POINTS - 1);
+            times[i] = x;
+            volumes[i] = in ? curve.fadeIn(x) : curve.fadeOut(x);
+        }
+        return new VolumeShaper.Configuration.Builder()
+                .setDuration(durationMs)
+                .setCurve(times, volumes)
+                .setInterpolatorType(VolumeShaper.Configuration.INTERPOLATOR_TYPE_LINEAR)
+                .build();
+    }
+}
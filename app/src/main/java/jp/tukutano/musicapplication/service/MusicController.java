@@ -0,0 +1,127 @@
+package jp.tukutano.musicapplication.service;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 画面から MusicService を操作するためのクライアント
+ * - onStart で bind()、onStop で unbind() を呼ぶ（バインドするのは呼び出し元だけ）
+ * - 接続完了前の操作は保留し、接続時にまとめて実行する
+ * - バインドしていない間（unbind() 後など）の操作は破棄する
+ * - 購読リスナーは接続中のみサービスへ登録される
+ * UI スレッドからのみ呼ぶこと
+ */
+public class MusicController implements ServiceConnection {
+
+    private final Context context;
+    @Nullable
+    private final MusicService.PlaybackListener listener;
+    // 接続完了待ちの操作
+    private final List<Consumer<MusicService>> pending = new ArrayList<>();
+
+    @Nullable
+    private MusicService service;
+    private boolean bound;
+
+    /**
+     * @param context  呼び出し元（Application Context に変換して保持）
+     * @param listener 再生状態の購読者（不要なら null）
+     */
+    public MusicController(Context context, @Nullable MusicService.PlaybackListener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    /**
+     * サービスへバインドする（未起動なら生成される）
+     */
+    public void bind() {
+        if (bound) return;
+        bound = context.bindService(new Intent(context, MusicService.class),
+                this, Context.BIND_AUTO_CREATE);
+    }
+
+    /**
+     * バインドを解除する（保留中の操作は破棄）
+     */
+    public void unbind() {
+        if (!bound) return;
+        if (service != null && listener != null) service.removePlaybackListener(listener);
+        context.unbindService(this);
+        service = null;
+        bound = false;
+        pending.clear();
+    }
+
+    /**
+     * プレイリストを渡して再生開始
+     */
+    public void playQueue(List<String> uris, List<String> titles, int startIndex, float volume) {
+        List<String> u = new ArrayList<>(uris);
+        List<String> t = new ArrayList<>(titles);
+        run(s -> {
+            s.setVolume(volume);
+            s.playQueue(u, t, startIndex);
+        });
+    }
+
+    /**
+     * 保存済みプレイリストを ID で渡して再生開始
+     */
+    public void playPlaylist(long playlistId, int startIndex, float volume) {
+        run(s -> {
+            s.setVolume(volume);
+            s.playPlaylist(playlistId, startIndex);
+        });
+    }
+
+    public void stop() {
+        run(MusicService::stop);
+    }
+
+    public void setVolume(float volume) {
+        run(s -> s.setVolume(volume));
+    }
+
+    /**
+     * 設定画面で変えた DSP の構成を再生中の曲へ反映する
+     */
+    public void reloadDsp() {
+        run(MusicService::reloadDsp);
+    }
+
+    /**
+     * 接続済みなら即時、接続待ちなら接続時に実行する（バインドしていなければ破棄）
+     * ここではバインドしない（onStop 後のコールバックから呼ばれても解除されないバインドを残さないため）
+     */
+    private void run(Consumer<MusicService> command) {
+        if (service != null) {
+            command.accept(service);
+        } else if (bound) {
+            pending.add(command);
+        }
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder binder) {
+        service = ((MusicService.LocalBinder) binder).getService();
+        if (listener != null) service.addPlaybackListener(listener);
+        for (Consumer<MusicService> c : pending) c.accept(service);
+        pending.clear();
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        // 同一プロセスのため通常は発生しない
+        service = null;
+    }
+}
@@ -9,250 +9,1245 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
+import android.media.MediaMetadata;
+import android.media.session.MediaSession;
+import android.media.session.PlaybackState;
 import android.net.Uri;
-import android.os.Build;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.core.content.ContextCompat;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import jp.tukutano.musicapplication.AppDatabase;
 import jp.tukutano.musicapplication.R;
+import jp.tukutano.musicapplication.db.SettingsStore;
+import jp.tukutano.musicapplication.db.TrackLoudness;
+import jp.tukutano.musicapplication.dsp.DspConfig;
+import jp.tukutano.musicapplication.dsp.EqPreset;
+import jp.tukutano.musicapplication.library.ArtworkCache;
+import jp.tukutano.musicapplication.util.Metric;
+import jp.tukutano.musicapplication.util.Metrics;
+import jp.tukutano.musicapplication.util.TraceEvent;
+import jp.tukutano.musicapplication.util.Tracer;
 
 /**
  * Foreground Service で音楽をバックグラウンド再生するサービスクラス
- * - プレイリストのループ再生
- * - 通知領域へのコントロールボタン表示
- * - 音量調整、現在再生中タイトルのブロードキャスト通知
+ * - プレイリストの再生（シャッフル・リピート・割り込み再生、次曲を先に準備して途切れなく繋ぐ）
+ * - 曲間のクロスフェード（長さ・カーブは設定。フェード自体は各エンジンの音声経路で行う）
+ * - EQ・コンプレッサー・リミッター（デコーダ再生の出力で掛ける。設定変更は reloadDsp() で反映）
+ * - MediaSession と MediaStyle 通知（ロック画面・ハードウェアのメディアボタンに対応）
+ * - 音量調整（解析済みの曲はラウドネスで補正）、現在再生中タイトルの通知
+ * - 再生状態を定期的に保存し、プロセス終了後の再起動（START_STICKY）で続きから再開
+ * 画面からの操作はバインドした LocalBinder 経由の直接呼び出しで行い、
+ * Intent は通知ボタンからの操作にのみ使う
  */
 public class MusicService extends Service {
-    // フラグメントへ送るアクション／エクストラ定義
-    public static final String ACTION_UPDATE_NOW_PLAYING =
-            "jp.tukutano.musicapplication.ACTION_UPDATE_NOW_PLAYING";  // 現在再生中タイトル更新
-    public static final String EXTRA_NOW_PLAYING = "EXTRA_NOW_PLAYING";  // タイトル文字列
-    public static final String EXTRA_NOW_LOOP_POS = "EXTRA_NOW_LOOP_POS"; // プレイリスト内インデックス
-
-    // 音量操作アクション
-    public static final String ACTION_VOLUME_UP = "ACTION_VOLUME_UP";
-    public static final String ACTION_VOLUME_DOWN = "ACTION_VOLUME_DOWN";
-    // タイトル更新リクエスト
-    public static final String ACTION_TITLE = "ACTION_TITLE";
-    public static final String EXTRA_VOLUME = "EXTRA_VOLUME";
-    // プレイリスト再生
-    public static final String ACTION_PLAYLIST_PLAY = "ACTION_PLAYLIST_PLAY";
+    private static final String TAG = "MusicService";
+    // 通知ボタンからの操作
     public static final String ACTION_PLAY = "ACTION_PLAY";
+    public static final String ACTION_PAUSE = "ACTION_PAUSE";
     public static final String ACTION_STOP = "ACTION_STOP";
-    public static final String EXTRA_PLAYLIST = "EXTRA_PLAYLIST";
-    public static final String EXTRA_PLAYLIST_TITLE = "EXTRA_PLAYLIST_TITLE";
-    public static final String EXTRA_START_INDEX = "EXTRA_START_INDEX";
-
-    // MediaPlayer とプレイリスト関連
-    private MediaPlayer mediaPlayer;
-    private List<String> playlist = new ArrayList<>();           // 音源URIリスト
-    private List<String> playTitlelist = new ArrayList<>();      // タイトルリスト
+    public static final String ACTION_NEXT = "ACTION_NEXT";
+    public static final String ACTION_PREVIOUS = "ACTION_PREVIOUS";
+
+    private static final int NOTIFICATION_ID = 1;
+    private static final String CHANNEL_ID = "music_playback_channel";
+    // 通知の更新間隔の下限（状態が変わった時だけ、かつこの間隔より頻繁には出さない）
+    private static final long NOTIFY_MIN_INTERVAL_MS = 500;
+    private static final long SESSION_ACTIONS = PlaybackState.ACTION_PLAY
+            | PlaybackState.ACTION_PAUSE | PlaybackState.ACTION_PLAY_PAUSE
+            | PlaybackState.ACTION_STOP | PlaybackState.ACTION_SKIP_TO_NEXT
+            | PlaybackState.ACTION_SKIP_TO_PREVIOUS;
+
+    /**
+     * 再生状態の購読者（UI スレッドで呼ばれる）
+     */
+    public interface PlaybackListener {
+        /**
+         * @param title 再生中（最後に再生した）曲のタイトル
+         * @param index プレイリスト内インデックス
+         */
+        void onNowPlayingChanged(String title, int index);
+    }
+
+    /**
+     * 同一プロセス内のクライアントへサービス本体を渡す Binder
+     */
+    public class LocalBinder extends Binder {
+        public MusicService getService() {
+            return MusicService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final List<PlaybackListener> listeners = new CopyOnWriteArrayList<>();
+
+    // 準備がこれ以上かかる曲は読めないものとして飛ばす
+    private static final long PREPARE_TIMEOUT_MS = 10_000;
+    // 再生中に再生位置を保存する間隔（曲の切り替え・停止などの操作時は別途保存）
+    private static final long CHECKPOINT_INTERVAL_MS = 15_000;
+    // 起動時に設定の読み込みを待つ時間の上限（超えたら既定値で始める）
+    private static final long SETTINGS_WAIT_MS = 2_000;
+
+    // 再生制御専用スレッド（プレイヤーの生成・操作・コールバックはすべてここ）
+    private HandlerThread playbackThread;
+    private Handler playbackHandler;
+    private Executor playbackExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 再生状態のファイル書き込み用（再生スレッドでディスク I/O を待たない）
+    private final ExecutorService snapshotExecutor =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "music-snapshot"));
+
+    // --- 以下は再生スレッドだけが触る ---
+    // プレイヤーとプレイリスト関連
+    private TrackPlayer mediaPlayer;                             // 再生中のプレイヤー
+    private TrackPlayer nextPlayer;                              // 次曲用プレイヤー（準備完了後に連結）
+    private int nextIndex = -1;                                  // nextPlayer の曲インデックス
+    private boolean nextReady;                                   // nextPlayer を連結済みか
+    private QueueSource queue = ListQueueSource.EMPTY;           // 再生キュー（URI・タイトルの取り出し元）
     private int currentIndex = 0;                                // 再生中曲のインデックス
-    private float currentVolume = 1.0f;                          // 音量 (0.0〜1.0)
+    private String currentUri;                                   // 再生中の曲の URI・タイトル（QueueSource から受け取ったもの）
+    private String currentTitle;
+    private String nextUri;                                      // nextPlayer の曲の URI・タイトル
+    private String nextTitle;
+    private int nextToken;                                       // 古い次曲の曲情報を無視するための番号
+    private final PlaybackQueue order = new PlaybackQueue(new Random()); // 再生順
+    private int prepareToken;                                    // 古い準備完了・タイムアウトを無視するための番号
+    private final Object prepareTimeout = new Object();          // 準備タイムアウトの取り消し用
+    private int failedInRow;                                     // 連続して再生できなかった曲数
+    // 曲間の無音計測（前曲の終了と次曲の開始、先に届いた方の時刻）
+    private long transitionCompletedNs;
+    private long transitionStartedNs;
+    // 再生中の曲の prepareAsync() を呼んだ時刻（System.nanoTime）
+    private long prepareStartNs;
+    // 再生状態の保存先と、保存したキューの番号
+    private PlaybackSnapshot snapshot;
+    private int queueId;
+    private final Object checkpointTimer = new Object();         // 定期保存の取り消し用
+    private boolean prepared;                                    // mediaPlayer から再生位置を読めるか
+    private long pendingSeekMs;                                  // 次に準備した曲をこの位置から再生する
+    private boolean resumeOnRestart;                             // 復元した状態が再生中だったか
+    private float currentGain = 1f;                              // 再生中の曲の音量補正（倍率）
+    private float nextGain = 1f;                                 // 次曲の音量補正（倍率）
+    private SettingsStore settings;                              // エンジン選択・バッファ構成
+
+    // --- 他スレッドから読む状態 ---
+    private volatile float currentVolume = 1.0f;                 // 音量 (0.0〜1.0)
+    private volatile String nowPlayingTitle;                     // 再生中（最後に再生した）曲のタイトル
+    private volatile int nowPlayingIndex;
+    private volatile boolean playing;
+    private volatile long lastTransitionGapUs = -1;
+    private volatile boolean shuffle;
+    private volatile PlaybackQueue.RepeatMode repeatMode = PlaybackQueue.RepeatMode.ALL;
+
+    // --- UI スレッドだけが触る ---
+    // startForegroundService 済み（バインド解除後も再生を続ける）か
+    private boolean started;
+    // MediaSession と、使い回す通知ビルダー・アクション
+    private MediaSession session;
+    private NotificationManager notificationManager;
+    private Notification.Builder notificationBuilder;
+    private Notification.Action prevAction, playAction, pauseAction, nextAction, stopAction;
+    // 最後に反映した状態（表示用・通知済み・購読者へ通知済み）
+    private String shownTitle = "";
+    private boolean shownPlaying;
+    private long shownDuration = -1;
+    private String notifiedTitle;
+    private boolean notifiedPlaying;
+    private long lastNotifyAt;
+    private boolean notifyScheduled;
+    private String listenedTitle;
+    private int listenedIndex = -1;
+    // 再生中の曲のアートワーク
+    private ArtworkCache artwork;
+    private int artworkPx;
+    private String artUri;
+    @Nullable
+    private Bitmap art;
+    @Nullable
+    private ArtworkCache.Request artRequest;
+
+    /**
+     * ロック画面・ハードウェアのメディアボタンからの操作（UI スレッドで呼ばれる）
+     */
+    private final MediaSession.Callback sessionCallback = new MediaSession.Callback() {
+        @Override
+        public void onPlay() {
+            play();
+        }
+
+        @Override
+        public void onPause() {
+            pause();
+        }
+
+        @Override
+        public void onStop() {
+            stop();
+        }
+
+        @Override
+        public void onSkipToNext() {
+            skipToNext();
+        }
+
+        @Override
+        public void onSkipToPrevious() {
+            skipToPrevious();
+        }
+    };
 
 
     // --- 追加：Noisy（イヤホン抜き）検知用レシーバー ---
     private BroadcastReceiver noisyReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            // イヤホンが抜かれたら再生を一時停止 or 完全停止
-            if (mediaPlayer != null && mediaPlayer.isPlaying()) {
-                mediaPlayer.pause();              // 一時停止
-                // stopForeground(STOP_FOREGROUND_REMOVE);  // 通知を消すなら
-                // または完全停止したい場合は stopSelf();
-            }
+            // イヤホンが抜かれたら再生を一時停止
+            pause();
         }
     };
 
     /**
      * Service 作成時に呼ばれる
-     * - MediaPlayer 初期化
-     * - 曲終了時に次曲再生をセット
+     * - 再生スレッドを起動し、そこでプレイヤーを初期化
+     *   （コールバックは生成したスレッドの Looper に届く）
      */
     @Override
     public void onCreate() {
         super.onCreate();
-        mediaPlayer = new MediaPlayer();
-        // 曲が終わったら playNext() を呼ぶ
-        mediaPlayer.setOnCompletionListener(mp -> playNext());
-        // 初期音量を設定
-        mediaPlayer.setVolume(currentVolume, currentVolume);
+        setUpSessionAndNotification();
+        settings = SettingsStore.getInstance(this);
+        playbackThread = new HandlerThread("music-playback", Process.THREAD_PRIORITY_AUDIO);
+        playbackThread.start();
+        playbackHandler = new Handler(playbackThread.getLooper());
+        playbackExecutor = playbackHandler::post;
+        playbackHandler.post(() -> {
+            // エンジン・クロスフェード・DSP は設定で決まるため、読み込みを待ってから始める
+            // （スティッキー再起動・メディアボタンからの起動でも利用者の設定で再生する）
+            if (!settings.awaitLoaded(SETTINGS_WAIT_MS)) Log.w(TAG, "設定を読み込めないため既定値で開始");
+            mediaPlayer = createPlayer(preferredEngine());
+            // 前回の再生状態を読み込む（再生はしない）
+            restoreSnapshot();
+        });
         // --- イヤホン抜きイベントを登録 ---
         IntentFilter filter = new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY);
         registerReceiver(noisyReceiver, filter);
     }
 
     /**
-     * startService や startForegroundService の呼び出し
+     * 通知ボタンからの startService 呼び出し
      * @return 再起動時の動作指示
      */
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        // Intent が null なら何もしないで継続
-        if (intent == null || intent.getAction() == null) {
+        if (intent == null) {
+            // START_STICKY による再起動 → 保存時に再生中だったなら続きから再開
+            started = true;
+            playbackHandler.post(this::resumeAfterRestart);
             return START_STICKY;
         }
-        String action = intent.getAction();
-
-        switch (action) {
-            case ACTION_PLAYLIST_PLAY:
-                // プレイリスト再生開始
-                playlist = intent.getStringArrayListExtra(EXTRA_PLAYLIST);
-                playTitlelist = intent.getStringArrayListExtra(EXTRA_PLAYLIST_TITLE);
-                currentIndex = intent.getIntExtra(EXTRA_START_INDEX, 0);
-                if (playlist != null && !playlist.isEmpty()) {
-                    playInService(playlist.get(currentIndex));
-                }
-                break;
+        // アクションなし（ensureStarted からの起動）なら何もしないで継続
+        if (intent.getAction() == null) {
+            return START_STICKY;
+        }
+        started = true;
+        switch (intent.getAction()) {
             case ACTION_PLAY:
-                if (playlist != null && !playlist.isEmpty()) {
-                    playInService(playlist.get(currentIndex));
-                }
+                play();
+                break;
+            case ACTION_PAUSE:
+                pause();
                 break;
             case ACTION_STOP:
-                // フォアグラウンド通知を消してサービス停止
-                stopForeground(STOP_FOREGROUND_REMOVE);
-                stopSelf();
+                stop();
                 break;
-            case ACTION_VOLUME_UP:
-            case ACTION_VOLUME_DOWN:
-                // 音量調整
-                float vol = intent.getFloatExtra(EXTRA_VOLUME, currentVolume);
-                if (ACTION_VOLUME_UP.equals(action)) {
-                    currentVolume = Math.min(1.0f, vol + 0.001f);
-                } else {
-                    currentVolume = Math.max(0.0f, vol - 0.001f);
-                }
-                mediaPlayer.setVolume(currentVolume, currentVolume);
-                // 通知を再構築して更新
-                startForeground(1, buildNotification());
+            case ACTION_NEXT:
+                skipToNext();
                 break;
-
-            case ACTION_TITLE:
-                // フラグメントへ現在のタイトルとインデックスをブロードキャスト
-                if (!playTitlelist.isEmpty()) {
-                    String title = playTitlelist.get(currentIndex);
-                    Intent update = new Intent(ACTION_UPDATE_NOW_PLAYING);
-                    update.putExtra(EXTRA_NOW_PLAYING, title);
-                    update.putExtra(EXTRA_NOW_LOOP_POS, currentIndex);
-                    LocalBroadcastManager.getInstance(this)
-                            .sendBroadcast(update);
-                }
+            case ACTION_PREVIOUS:
+                skipToPrevious();
                 break;
         }
         return START_STICKY;
     }
 
+    // ---------------------------------------------------------------
+    // LocalBinder 経由で呼ばれる操作（UI スレッドから呼ぶこと）
+    // 実際の処理は再生スレッドへ投げ、ここではメディア I/O を待たない
+    // ---------------------------------------------------------------
+
     /**
-     * 実際の再生処理
-     * @param uriString 再生する音源の URI 文字列
+     * プレイリストを差し替えて指定位置から再生する
+     *
+     * @param uris       音源 URI のリスト
+     * @param titles     タイトルのリスト（uris と同じ並び）
+     * @param startIndex 再生開始位置
      */
-    private void playInService(String uriString) {
-        try {
+    public void playQueue(List<String> uris, List<String> titles, int startIndex) {
+        if (uris.isEmpty()) return;
+        List<String> u = new ArrayList<>(uris);
+        List<String> t = new ArrayList<>(titles);
+        int index = Math.max(0, Math.min(startIndex, u.size() - 1));
+        ensureStarted(t.get(index));
+        playbackHandler.post(() -> startQueue(new ListQueueSource(u, t), index));
+    }
+
+    /**
+     * 保存済みプレイリストを指定位置から再生する
+     * 並び・曲情報は DB のスレッドで必要な分だけ読み、再生スレッドで受け取る
+     *
+     * @param playlistId プレイリスト ID（PlaylistStore 参照）
+     * @param startIndex 再生開始位置
+     */
+    public void playPlaylist(long playlistId, int startIndex) {
+        ensureStarted(nowPlayingTitle != null ? nowPlayingTitle : "");
+        PlaylistQueueSource.open(AppDatabase.getInstance(this), playbackExecutor, playlistId, source -> {
+            if (source.size() == 0) {
+                mainHandler.post(this::stop);
+                return;
+            }
+            startQueue(source, startIndex);
+        });
+    }
+
+    /**
+     * 次の曲へ進む（リピート 1 曲でも進む）
+     */
+    public void skipToNext() {
+        playbackHandler.post(() -> {
+            failedInRow = 0;
+            playIndex(order.skipToNext());
+        });
+    }
+
+    /**
+     * 前の曲へ戻る
+     */
+    public void skipToPrevious() {
+        playbackHandler.post(() -> {
+            failedInRow = 0;
+            playIndex(order.previous());
+        });
+    }
+
+    /**
+     * 現在のキューの曲を再生中の曲の直後に割り込ませる
+     *
+     * @param index キュー上のインデックス
+     */
+    public void insertNext(int index) {
+        playbackHandler.post(() -> {
+            order.playNext(index);
+            relinkNext();
+            checkpoint();
+        });
+    }
+
+    public void setShuffle(boolean on) {
+        shuffle = on;
+        playbackHandler.post(() -> {
+            order.setShuffle(on);
+            relinkNext();
+            checkpoint();
+        });
+    }
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    public void setRepeatMode(PlaybackQueue.RepeatMode mode) {
+        repeatMode = mode;
+        playbackHandler.post(() -> {
+            order.setRepeatMode(mode);
+            relinkNext();
+            checkpoint();
+        });
+    }
+
+    public PlaybackQueue.RepeatMode getRepeatMode() {
+        return repeatMode;
+    }
+
+    /**
+     * 一時停止中なら再開し、止まっていれば現在の曲を（停止位置から）再生する
+     */
+    public void play() {
+        String title = nowPlayingTitle;
+        if (title == null) return;
+        ensureStarted(title);
+        playbackHandler.post(() -> {
+            if (prepared && !mediaPlayer.isPlaying()) {
+                mediaPlayer.start();
+                playing = true;
+                scheduleCheckpoint();
+                postState();
+                return;
+            }
+            if (playing) return;
+            failedInRow = 0;
+            playCurrent();
+        });
+    }
+
+    /**
+     * 一時停止（通知・フォアグラウンドは維持する）
+     */
+    public void pause() {
+        playbackHandler.post(() -> {
+            if (!prepared || !mediaPlayer.isPlaying()) return;
+            mediaPlayer.pause();
+            playing = false;
+            playbackHandler.removeCallbacksAndMessages(checkpointTimer);
+            checkpoint();
+            postState();
+        });
+    }
+
+    /**
+     * 再生を停止し、フォアグラウンド通知を消してサービスを終了する
+     */
+    public void stop() {
+        playing = false;
+        playbackHandler.post(this::haltPlayers);
+        // バインド中のクライアントがいる間はサービス自体は残る
+        started = false;
+        session.setPlaybackState(new PlaybackState.Builder()
+                .setActions(SESSION_ACTIONS)
+                .setState(PlaybackState.STATE_STOPPED, 0, 0f)
+                .build());
+        session.setActive(false);
+        notifiedTitle = null;
+        stopForeground(STOP_FOREGROUND_REMOVE);
+        stopSelf();
+    }
+
+    /**
+     * アプリ内音量を設定する
+     *
+     * @param volume 0.0〜1.0
+     */
+    public void setVolume(float volume) {
+        currentVolume = Math.max(0.0f, Math.min(1.0f, volume));
+        playbackHandler.post(() -> {
+            if (mediaPlayer != null) applyVolume(mediaPlayer, currentGain);
+            if (nextPlayer != null) applyVolume(nextPlayer, nextGain);
+        });
+    }
+
+    /**
+     * 設定から DSP の構成を読み直し、再生中・準備中のプレイヤーへ反映する
+     */
+    public void reloadDsp() {
+        playbackHandler.post(() -> {
+            DspConfig dsp = dspConfig();
+            if (mediaPlayer != null) mediaPlayer.setDsp(dsp);
+            if (nextPlayer != null) nextPlayer.setDsp(dsp);
+        });
+    }
+
+    public float getVolume() {
+        return currentVolume;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * @return 再生中（最後に再生した）曲のタイトル。プレイリストが空なら null
+     */
+    @Nullable
+    public String getNowPlayingTitle() {
+        return nowPlayingTitle;
+    }
+
+    public int getCurrentIndex() {
+        return nowPlayingIndex;
+    }
+
+    /**
+     * @return 直近の曲切り替えで前曲の終了から次曲の開始までにかかった時間（マイクロ秒）。
+     *         まだ曲が切り替わっていなければ -1
+     */
+    public long getLastTransitionGapUs() {
+        return lastTransitionGapUs;
+    }
+
+    /**
+     * 再生状態の購読を開始する（現在の状態を直ちに一度通知する）
+     */
+    public void addPlaybackListener(PlaybackListener listener) {
+        listeners.add(listener);
+        String title = nowPlayingTitle;
+        if (title != null) listener.onNowPlayingChanged(title, nowPlayingIndex);
+    }
+
+    public void removePlaybackListener(PlaybackListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * バインドだけで生成された状態なら自身を started にしてフォアグラウンド化する
+     * （画面を閉じてバインドが解除されても再生を続けるため）
+     */
+    private void ensureStarted(String title) {
+        if (started) return;
+        started = true;
+        ContextCompat.startForegroundService(this, new Intent(this, MusicService.class));
+        session.setActive(true);
+        shownTitle = title;
+        startForeground(NOTIFICATION_ID, buildNotification());
+    }
+
+    // ---------------------------------------------------------------
+    // 以下は再生スレッドで実行される
+    // ---------------------------------------------------------------
+
+    /**
+     * キューを差し替えて startIndex の曲から再生する
+     */
+    private void startQueue(QueueSource source, int startIndex) {
+        transitionCompletedNs = 0;
+        transitionStartedNs = 0;
+        failedInRow = 0;
+        queue = source;
+        order.reset(source.size(), startIndex);
+        currentIndex = order.current();
+        currentUri = null;
+        currentTitle = null;
+        pendingSeekMs = 0;
+        // キューの中身は変わった時だけ保存
+        int id = ++queueId;
+        PlaybackSnapshot s = snapshot;
+        if (s != null) snapshotExecutor.execute(() -> s.writeQueue(id, source));
+        playCurrent();
+    }
+
+    /**
+     * currentIndex の曲を非同期に準備して再生する
+     * 準備完了は onCurrentPrepared、失敗・タイムアウトは skipFailed で処理
+     */
+    private void playCurrent() {
+        playCurrent(preferredEngine());
+    }
+
+    /**
+     * @param engine この曲に使うエンジン（設定が変わっていれば次の曲から切り替わる）
+     */
+    private void playCurrent(TrackPlayer.Engine engine) {
+        releaseNextPlayer();
+        if (mediaPlayer.engine() != engine) {
+            mediaPlayer.release();
+            mediaPlayer = createPlayer(engine);
+        } else {
             mediaPlayer.reset();
+        }
+        playing = false;
+        prepared = false;
+        int token = ++prepareToken;
+        // 曲情報は DB から届く場合がある（届くまでに別の曲へ移っていれば捨てる）
+        queue.fetch(currentIndex, (uri, title) -> {
+            if (token == prepareToken) prepareCurrent(token, uri, title);
+        });
+    }
+
+    /**
+     * 曲情報の届いた再生中の曲を準備する
+     */
+    private void prepareCurrent(int token, @Nullable String uriString, @Nullable String title) {
+        currentUri = uriString;
+        currentTitle = title;
+        try {
+            if (uriString == null) throw new IOException("プレイリストから削除済み");
             mediaPlayer.setDataSource(this, Uri.parse(uriString));
-            mediaPlayer.prepare();
-            mediaPlayer.setLooping(false);
-            mediaPlayer.start();
-            // フォアグラウンド通知を表示
-            startForeground(1, buildNotification());
-
-            // タイトル更新をブロードキャスト
-            String title = playTitlelist.get(currentIndex);
-            Intent update = new Intent(ACTION_UPDATE_NOW_PLAYING);
-            update.putExtra(EXTRA_NOW_PLAYING, title);
-            update.putExtra(EXTRA_NOW_LOOP_POS, currentIndex);
-            LocalBroadcastManager.getInstance(this)
-                    .sendBroadcast(update);
-        } catch (IOException e) {
-            e.printStackTrace();
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "再生できない曲: " + uriString, e);
+            skipFailed(token);
+            return;
+        }
+        // 補正は DB から届いた時に反映する（準備中・再生開始後でも音量は変えられる）
+        currentGain = 1f;
+        applyVolume(mediaPlayer, currentGain);
+        loadGain(mediaPlayer, uriString);
+        Tracer.record(TraceEvent.TRACK_PREPARE, currentIndex);
+        prepareStartNs = System.nanoTime();
+        mediaPlayer.prepareAsync();
+        playbackHandler.postDelayed(() -> {
+            if (token != prepareToken) return;
+            Log.w(TAG, "準備タイムアウト: " + uriString);
+            skipFailed(token);
+        }, prepareTimeout, PREPARE_TIMEOUT_MS);
+    }
+
+    /**
+     * 再生中の曲の準備完了
+     */
+    private void onCurrentPrepared(int token) {
+        if (token != prepareToken) return;
+        playbackHandler.removeCallbacksAndMessages(prepareTimeout);
+        Tracer.record(TraceEvent.TRACK_PREPARED, currentIndex);
+        Metrics.since(Metric.PREPARE, prepareStartNs);
+        prepared = true;
+        if (pendingSeekMs > 0) {
+            // 保存・停止した位置から再開
+            mediaPlayer.seekTo(pendingSeekMs);
+            pendingSeekMs = 0;
+        }
+        mediaPlayer.start();
+        playing = true;
+        failedInRow = 0;
+        scheduleCheckpoint();
+        // 前曲の終了から呼ばれた場合（次曲の準備に失敗した時）の無音時間
+        if (transitionCompletedNs != 0) markTransition(false);
+        onTrackChanged();
+        prepareNext();
+    }
+
+    /**
+     * 準備に失敗した曲を飛ばして次の曲へ進む。全曲失敗したら停止する
+     */
+    private void skipFailed(int token) {
+        if (token != prepareToken) return;
+        playbackHandler.removeCallbacksAndMessages(prepareTimeout);
+        prepareToken++;
+        mediaPlayer.reset();
+        if (++failedInRow >= queue.size()) {
+            Log.w(TAG, "再生できる曲がないため停止");
+            mainHandler.post(this::stop);
+            return;
         }
+        playIndex(order.skipToNext());
+    }
+
+    /**
+     * 曲が切り替わった時の通知更新（通知・購読者への通知は UI スレッドで行う）
+     */
+    private void onTrackChanged() {
+        nowPlayingTitle = currentTitle != null ? currentTitle : "";
+        nowPlayingIndex = currentIndex;
+        checkpoint();
+        postState();
     }
 
     /**
-     * 次の曲を再生 (ループ再生)
+     * 再生状態を MediaSession・通知・購読者へ反映する（反映は UI スレッドで行う）
+     */
+    private void postState() {
+        String title = nowPlayingTitle != null ? nowPlayingTitle : "";
+        int index = nowPlayingIndex;
+        boolean isPlaying = playing;
+        long position = prepared ? mediaPlayer.getCurrentPosition() : pendingSeekMs;
+        long duration = prepared ? mediaPlayer.getDuration() : -1;
+        String uri = currentUri;
+        mainHandler.post(() -> applyState(title, index, uri, isPlaying, position, duration));
+    }
+
+    /**
+     * 準備完了・終了・エラー・次曲開始のリスナーを付けたプレイヤーを生成
+     */
+    private TrackPlayer createPlayer(TrackPlayer.Engine engine) {
+        TrackPlayer mp = engine == TrackPlayer.Engine.CODEC
+                ? new CodecTrackPlayer(codecConfig())
+                : new MediaTrackPlayer();
+        mp.setListener(playerListener);
+        mp.setVolume(currentVolume);
+        mp.setDsp(dspConfig());
+        return mp;
+    }
+
+    /**
+     * 設定で選ばれたエンジン（設定がなければ MediaPlayer）
+     */
+    private TrackPlayer.Engine preferredEngine() {
+        return settings.getBoolean(SettingsStore.KEY_CODEC_ENGINE, false)
+                ? TrackPlayer.Engine.CODEC : TrackPlayer.Engine.MEDIA_PLAYER;
+    }
+
+    /**
+     * デコーダ再生のバッファ構成（設定がなければ既定値）
+     */
+    private CodecTrackPlayer.Config codecConfig() {
+        CodecTrackPlayer.Config d = CodecTrackPlayer.DEFAULT_CONFIG;
+        return new CodecTrackPlayer.Config(
+                settings.getInt(SettingsStore.KEY_CODEC_SLOT_KB, d.slotBytes / 1024) * 1024,
+                settings.getInt(SettingsStore.KEY_CODEC_SLOTS, d.slotCount),
+                settings.getInt(SettingsStore.KEY_CODEC_TRACK_BUFFER_MS, d.trackBufferMs));
+    }
+
+    /**
+     * 設定されたクロスフェード（0 秒ならしない）
+     */
+    private Crossfade crossfade() {
+        return Crossfade.of(settings.getInt(SettingsStore.KEY_CROSSFADE_MS, 0),
+                settings.getInt(SettingsStore.KEY_CROSSFADE_CURVE, Crossfade.Curve.EQUAL_POWER.ordinal()));
+    }
+
+    /**
+     * 設定された DSP の構成
+     */
+    private DspConfig dspConfig() {
+        return new DspConfig(EqPreset.of(settings.getInt(SettingsStore.KEY_EQ_PRESET, 0)),
+                settings.getBoolean(SettingsStore.KEY_COMPRESSOR, false),
+                settings.getBoolean(SettingsStore.KEY_LIMITER, false));
+    }
+
+    private final TrackPlayer.Listener playerListener = new TrackPlayer.Listener() {
+        @Override
+        public void onPrepared(TrackPlayer player) {
+            if (player == mediaPlayer) {
+                if (!prepared) onCurrentPrepared(prepareToken);
+            } else if (player == nextPlayer) {
+                onNextPrepared(player);
+            }
+        }
+
+        @Override
+        public void onCompletion(TrackPlayer player) {
+            onPlayerCompletion(player);
+        }
+
+        @Override
+        public void onStartedAsNext(TrackPlayer player) {
+            markTransition(false);
+        }
+
+        @Override
+        public void onError(TrackPlayer player, int what, int extra) {
+            onPlayerError(player, what, extra);
+        }
+    };
+
+    /**
+     * 解析済みのラウドネスから曲ごとの音量補正を求める
+     * プレイヤーの音量は 1.0 を超えて増幅できないため、大きい曲を下げる方向にだけ効く
+     * （ピークが 1.0 を超えない範囲に抑える）
+     *
+     * @return 倍率（未解析・解析失敗なら 1.0）
+     */
+    private static float gainOf(@Nullable TrackLoudness l) {
+        if (l == null || l.failed) return 1f;
+        float gain = (float) Math.pow(10.0, l.gainDb / 20.0);
+        if (l.peak > 0) gain = Math.min(gain, 1f / l.peak);
+        return Math.min(1f, gain);
+    }
+
+    /**
+     * 曲の音量補正を DB のスレッドで読み込み、再生スレッドで反映する
+     * （再生スレッドで DB を待たない。スキャナーの書き込みやライブラリ同期と競合するため）
+     * 届いた時にそのプレイヤーがもう別の曲を扱っていれば捨てる
+     */
+    private void loadGain(TrackPlayer player, String uri) {
+        AppDatabase db = AppDatabase.getInstance(this);
+        db.getQueryExecutor().execute(() -> {
+            float gain = gainOf(db.loudnessDao().get(uri));
+            playbackHandler.post(() -> {
+                if (player == nextPlayer) {
+                    nextGain = gain;
+                } else if (player == mediaPlayer && uri.equals(currentUri)) {
+                    currentGain = gain;
+                } else {
+                    return;
+                }
+                applyVolume(player, gain);
+            });
+        });
+    }
+
+    private void applyVolume(TrackPlayer mp, float gain) {
+        mp.setVolume(currentVolume * gain);
+    }
+
+    /**
+     * 次の曲を別プレイヤーで非同期に準備し、完了したら再生中のプレイヤーに連結する
+     * 間に合わなかった・失敗した場合は従来どおり終了時に playNext() で切り替える
+     */
+    private void prepareNext() {
+        int index = order.peekNext();
+        if (index < 0) return;
+        int token = ++nextToken;
+        queue.fetch(index, (uri, title) -> {
+            if (token == nextToken) prepareNext(index, uri, title);
+        });
+    }
+
+    /**
+     * 曲情報の届いた次の曲を準備する
+     */
+    private void prepareNext(int index, @Nullable String uriString, @Nullable String title) {
+        if (uriString == null) return;
+        // 連結できるよう再生中の曲と同じエンジンで準備する
+        TrackPlayer mp = createPlayer(mediaPlayer.engine());
+        try {
+            mp.setDataSource(this, Uri.parse(uriString));
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "次曲の準備に失敗: " + uriString, e);
+            mp.release();
+            return;
+        }
+        nextGain = 1f;
+        applyVolume(mp, nextGain);
+        nextPlayer = mp;
+        loadGain(mp, uriString);
+        nextIndex = index;
+        nextUri = uriString;
+        nextTitle = title;
+        nextReady = false;
+        mp.prepareAsync();
+        playbackHandler.postDelayed(() -> {
+            if (mp != nextPlayer || nextReady) return;
+            Log.w(TAG, "次曲の準備タイムアウト: " + uriString);
+            releaseNextPlayer();
+        }, mp, PREPARE_TIMEOUT_MS);
+    }
+
+    /**
+     * 次曲の準備完了 → 再生中のプレイヤーに連結する
+     */
+    private void onNextPrepared(TrackPlayer next) {
+        playbackHandler.removeCallbacksAndMessages(next);
+        try {
+            // 連結する時点の設定でクロスフェードする
+            mediaPlayer.setCrossfade(crossfade());
+            mediaPlayer.setNextPlayer(next);
+            nextReady = true;
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "次曲の連結に失敗", e);
+            releaseNextPlayer();
+        }
+    }
+
+    /**
+     * 準備中・準備済みの次曲プレイヤーを破棄
+     */
+    private void releaseNextPlayer() {
+        // 曲情報の読み込み中なら、届いても準備しない
+        nextToken++;
+        if (nextPlayer != null) {
+            playbackHandler.removeCallbacksAndMessages(nextPlayer);
+            if (nextReady) {
+                try {
+                    mediaPlayer.setNextPlayer(null);
+                } catch (IllegalStateException ignored) {
+                    // 再生中のプレイヤーが既に reset 済み
+                }
+            }
+            nextPlayer.release();
+            nextPlayer = null;
+            nextIndex = -1;
+            nextReady = false;
+        }
+    }
+
+    /**
+     * 曲の再生終了
+     * - 次曲が連結済みなら既に再生が始まっているので、プレイヤーを入れ替えるだけ
+     */
+    private void onPlayerCompletion(TrackPlayer mp) {
+        if (mp != mediaPlayer) return;
+        markTransition(true);
+        if (nextPlayer == null || !nextReady) {
+            playNext();
+            return;
+        }
+        TrackPlayer finished = mediaPlayer;
+        mediaPlayer = nextPlayer;
+        currentGain = nextGain;
+        order.next();
+        currentIndex = nextIndex;
+        currentUri = nextUri;
+        currentTitle = nextTitle;
+        nextPlayer = null;
+        nextIndex = -1;
+        nextReady = false;
+        finished.release();
+        onTrackChanged();
+        prepareNext();
+    }
+
+    /**
+     * 再生・準備中のエラー
+     * - 次曲側なら連結をやめるだけ
+     * - 再生中の曲がデコーダ再生なら MediaPlayer でやり直し、MediaPlayer でも駄目なら飛ばす
+     */
+    private void onPlayerError(TrackPlayer mp, int what, int extra) {
+        Log.w(TAG, mp.engine() + " エラー what=" + what + " extra=" + extra);
+        Tracer.record(TraceEvent.TRACK_ERROR, what);
+        if (mp == nextPlayer) {
+            releaseNextPlayer();
+        } else if (mp == mediaPlayer) {
+            playing = false;
+            if (mp.engine() == TrackPlayer.Engine.CODEC) {
+                if (prepared) pendingSeekMs = mp.getCurrentPosition();
+                playbackHandler.removeCallbacksAndMessages(prepareTimeout);
+                playCurrent(TrackPlayer.Engine.MEDIA_PLAYER);
+                return;
+            }
+            skipFailed(prepareToken);
+        }
+    }
+
+    /**
+     * 曲切り替えの時刻を記録し、終了と開始が揃ったら無音時間を計算する
+     * （二つのコールバックの到着順は保証されないため、先に届いた方を保持する）
+     *
+     * @param completed true: 前曲の終了 / false: 次曲の開始
+     */
+    private void markTransition(boolean completed) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        if (completed) transitionCompletedNs = now;
+        else transitionStartedNs = now;
+        if (transitionCompletedNs == 0 || transitionStartedNs == 0) return;
+        lastTransitionGapUs = Math.max(0, transitionStartedNs - transitionCompletedNs) / 1000;
+        transitionCompletedNs = 0;
+        transitionStartedNs = 0;
+        Tracer.record(TraceEvent.TRACK_GAP, lastTransitionGapUs);
+        Metrics.record(Metric.TRACK_GAP, lastTransitionGapUs);
+        Log.d(TAG, "曲間の無音: " + lastTransitionGapUs + "us");
+    }
+
+    /**
+     * 曲の終了時に次の曲を再生（リピート設定に従う）
      */
     private void playNext() {
-        if (playlist == null || playlist.isEmpty()) {
-            stopSelf();
+        playIndex(order.next());
+    }
+
+    /**
+     * キュー上の index の曲を再生。-1（キューの終わり）なら停止する
+     */
+    private void playIndex(int index) {
+        if (index < 0) {
+            playing = false;
+            mainHandler.post(this::stop);
             return;
         }
-        currentIndex = (currentIndex + 1) % playlist.size();
-        playInService(playlist.get(currentIndex));
+        currentIndex = index;
+        pendingSeekMs = 0;
+        playCurrent();
     }
 
     /**
-     * 通知を構築
-     * @return Notification オブジェクト
+     * 再生順が変わった時に先読みしている次曲を作り直す
      */
-    private Notification buildNotification() {
-        String channelId = createNotificationChannel();
-        // 停止用 PendingIntent
-        Intent stopIntent = new Intent(this, MusicService.class)
-                .setAction(ACTION_STOP);
-        PendingIntent pStop = PendingIntent.getService(
-                this, 0, stopIntent, PendingIntent.FLAG_IMMUTABLE);
-
-        Intent startIntent = new Intent(this, MusicService.class)
-                .setAction(ACTION_PLAY);
-        PendingIntent pPlay = PendingIntent.getService(
-                this, 0, startIntent, PendingIntent.FLAG_IMMUTABLE);
-
-        String title = playTitlelist.get(currentIndex);
-        return new NotificationCompat.Builder(this, channelId)
+    private void relinkNext() {
+        if (!playing) return;
+        releaseNextPlayer();
+        prepareNext();
+    }
+
+    /**
+     * 再生中・準備中のプレイヤーを止めて待機状態に戻す
+     */
+    private void haltPlayers() {
+        // 止めた位置を保存し、次の再生はそこから始める
+        if (prepared) pendingSeekMs = mediaPlayer.getCurrentPosition();
+        checkpoint();
+        prepared = false;
+        prepareToken++;
+        playbackHandler.removeCallbacksAndMessages(prepareTimeout);
+        playbackHandler.removeCallbacksAndMessages(checkpointTimer);
+        if (mediaPlayer != null) mediaPlayer.reset();
+        releaseNextPlayer();
+        transitionCompletedNs = 0;
+        transitionStartedNs = 0;
+    }
+
+    /**
+     * 再生状態（位置・再生順など数十バイト）を保存する。書き込みは専用スレッドで行う
+     */
+    private void checkpoint() {
+        PlaybackSnapshot s = snapshot;
+        if (s == null || queue.size() == 0) return;
+        PlaybackSnapshot.State state = new PlaybackSnapshot.State();
+        state.queueId = queueId;
+        state.index = currentIndex;
+        state.positionMs = prepared ? mediaPlayer.getCurrentPosition() : pendingSeekMs;
+        state.playing = playing;
+        state.volume = currentVolume;
+        state.uri = currentUri;
+        state.title = currentTitle;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            order.save(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            return;   // メモリ上への書き込みなので起きない
+        }
+        state.order = bytes.toByteArray();
+        snapshotExecutor.execute(() -> s.writeState(state));
+    }
+
+    /**
+     * 再生中は一定間隔で checkpoint() する
+     */
+    private void scheduleCheckpoint() {
+        playbackHandler.removeCallbacksAndMessages(checkpointTimer);
+        playbackHandler.postDelayed(() -> {
+            if (!playing) return;
+            checkpoint();
+            scheduleCheckpoint();
+        }, checkpointTimer, CHECKPOINT_INTERVAL_MS);
+    }
+
+    /**
+     * 保存済みの再生状態をキュー・再生順・位置に戻す（ライブラリの再走査・DB の読み込みはしない）
+     * 再生中の曲の表示は保存しておいた URI・タイトルで行い、
+     * プレイリストの曲情報は再生を始めた時に DB のスレッドで読む
+     */
+    private void restoreSnapshot() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        snapshot = new PlaybackSnapshot(getFilesDir());
+        PlaybackSnapshot.Restored restored =
+                snapshot.read(AppDatabase.getInstance(this), playbackExecutor);
+        if (restored == null) return;
+        PlaybackSnapshot.State state = restored.state;
+        boolean ok;
+        try {
+            ok = order.restore(new DataInputStream(new ByteArrayInputStream(state.order)),
+                    restored.queue.size());
+        } catch (IOException e) {
+            ok = false;
+        }
+        if (!ok) order.reset(restored.queue.size(), state.index);
+        queue = restored.queue;
+        queueId = state.queueId;
+        currentIndex = order.current();
+        pendingSeekMs = currentIndex == state.index ? state.positionMs : 0;
+        resumeOnRestart = state.playing;
+        currentVolume = state.volume;
+        shuffle = order.isShuffle();
+        repeatMode = order.getRepeatMode();
+
+        if (currentIndex == state.index) {
+            currentUri = state.uri;
+            currentTitle = state.title;
+        }
+        nowPlayingTitle = currentTitle != null ? currentTitle : "";
+        nowPlayingIndex = currentIndex;
+        postState();
+        Log.d(TAG, "再生状態を復元: " + (SystemClock.elapsedRealtimeNanos() - start) / 1000 + "us");
+    }
+
+    /**
+     * START_STICKY で再起動された時、落ちる前に再生中だったなら続きから再開する
+     */
+    private void resumeAfterRestart() {
+        if (!resumeOnRestart || queue.size() == 0) {
+            // 再開するものがない → 起動状態を解除（バインド中ならサービスは残る）
+            mainHandler.post(() -> {
+                if (playing) return;
+                started = false;
+                stopSelf();
+            });
+            return;
+        }
+        resumeOnRestart = false;
+        String title = nowPlayingTitle;
+        mainHandler.post(() -> {
+            try {
+                session.setActive(true);
+                shownTitle = title;
+                startForeground(NOTIFICATION_ID, buildNotification());
+            } catch (IllegalStateException e) {
+                // バックグラウンドからのフォアグラウンド化が許可されていない → 状態だけ残して止める
+                Log.w(TAG, "再起動後のフォアグラウンド化に失敗", e);
+                stop();
+            }
+        });
+        failedInRow = 0;
+        playCurrent();
+    }
+
+    // ---------------------------------------------------------------
+    // MediaSession・通知（UI スレッドで実行される）
+    // ---------------------------------------------------------------
+
+    /**
+     * MediaSession・通知チャンネル・通知ビルダーを一度だけ用意する
+     */
+    private void setUpSessionAndNotification() {
+        notificationManager = getSystemService(NotificationManager.class);
+        notificationManager.createNotificationChannel(new NotificationChannel(
+                CHANNEL_ID, "Music Playback", NotificationManager.IMPORTANCE_LOW));
+
+        artwork = ArtworkCache.getInstance(this);
+        artworkPx = getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+
+        session = new MediaSession(this, TAG);
+        session.setCallback(sessionCallback);
+
+        prevAction = action(android.R.drawable.ic_media_previous, "前へ", ACTION_PREVIOUS);
+        playAction = action(android.R.drawable.ic_media_play, "再生", ACTION_PLAY);
+        pauseAction = action(android.R.drawable.ic_media_pause, "一時停止", ACTION_PAUSE);
+        nextAction = action(android.R.drawable.ic_media_next, "次へ", ACTION_NEXT);
+        stopAction = action(android.R.drawable.ic_menu_close_clear_cancel, "停止", ACTION_STOP);
+        notificationBuilder = new Notification.Builder(this, CHANNEL_ID)
                 .setContentTitle("再生中の音楽")
-                .setContentText(title)
                 .setSmallIcon(R.drawable.ic_notification)
-                .addAction(android.R.drawable.ic_media_pause, "停止", pStop)
-                .addAction(android.R.drawable.ic_media_play, "再生", pPlay)
-                .setOngoing(true)
-                .build();
+                .setVisibility(Notification.VISIBILITY_PUBLIC)
+                .setStyle(new Notification.MediaStyle()
+                        .setMediaSession(session.getSessionToken())
+                        .setShowActionsInCompactView(0, 1, 2));
+    }
+
+    private Notification.Action action(int icon, String title, String serviceAction) {
+        Intent intent = new Intent(this, MusicService.class).setAction(serviceAction);
+        PendingIntent pi = PendingIntent.getService(this, 0, intent, PendingIntent.FLAG_IMMUTABLE);
+        return new Notification.Action.Builder(Icon.createWithResource(this, icon), title, pi).build();
+    }
+
+    /**
+     * 再生スレッドから届いた状態を反映する
+     * - PlaybackState は毎回（位置の基準を更新するため）
+     * - メタデータ・購読者への通知は曲が変わった時だけ
+     * - 通知はタイトルか再生/一時停止が変わった時だけ、間隔を空けて出す
+     */
+    private void applyState(String title, int index, @Nullable String uri, boolean isPlaying,
+                            long position, long duration) {
+        session.setPlaybackState(new PlaybackState.Builder()
+                .setActions(SESSION_ACTIONS)
+                .setState(isPlaying ? PlaybackState.STATE_PLAYING : PlaybackState.STATE_PAUSED,
+                        position, isPlaying ? 1f : 0f)
+                .build());
+        boolean metadataChanged = !title.equals(shownTitle) || duration != shownDuration
+                || index != listenedIndex;
+        shownTitle = title;
+        shownPlaying = isPlaying;
+        shownDuration = duration;
+        if (!Objects.equals(uri, artUri)) {
+            loadArtwork(uri);
+        } else if (metadataChanged) {
+            publishMetadata();
+        }
+
+        if (!title.equals(listenedTitle) || index != listenedIndex) {
+            listenedTitle = title;
+            listenedIndex = index;
+            // タイトル更新を購読者へ通知
+            for (PlaybackListener l : listeners) l.onNowPlayingChanged(title, index);
+        }
+        requestNotificationUpdate();
+    }
+
+    /**
+     * 曲が変わったらアートワークを読み込み直す（キャッシュにあればその場で反映）
+     */
+    private void loadArtwork(@Nullable String uri) {
+        if (artRequest != null) artRequest.cancel();
+        artRequest = null;
+        artUri = uri;
+        art = null;
+        if (uri != null) {
+            artRequest = artwork.load(uri, artworkPx, bitmap -> {
+                artRequest = null;
+                art = bitmap;
+                publishMetadata();
+                // 画像だけが変わった場合も通知を出し直す
+                notifiedTitle = null;
+                requestNotificationUpdate();
+            });
+        }
+        // キャッシュから即時に反映された場合はコールバック内で公開済み
+        if (uri == null || artRequest != null) publishMetadata();
+    }
+
+    private void publishMetadata() {
+        session.setMetadata(new MediaMetadata.Builder()
+                .putString(MediaMetadata.METADATA_KEY_TITLE, shownTitle)
+                .putLong(MediaMetadata.METADATA_KEY_DURATION, shownDuration)
+                .putBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART, art)
+                .build());
     }
 
     /**
-     * 通知チャンネルを作成 (Android O+)
-     * @return チャンネルID
+     * 表示中の通知と状態が違えば更新する（NOTIFY_MIN_INTERVAL_MS 以内の連続変化はまとめる）
      */
-    private String createNotificationChannel() {
-        String id = "music_playback_channel";
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel chan = new NotificationChannel(
-                    id, "Music Playback", NotificationManager.IMPORTANCE_LOW);
-            getSystemService(NotificationManager.class).createNotificationChannel(chan);
+    private void requestNotificationUpdate() {
+        if (!started || notifyScheduled) return;
+        if (Objects.equals(shownTitle, notifiedTitle) && shownPlaying == notifiedPlaying) return;
+        long wait = lastNotifyAt + NOTIFY_MIN_INTERVAL_MS - SystemClock.uptimeMillis();
+        if (wait > 0) {
+            notifyScheduled = true;
+            mainHandler.postDelayed(() -> {
+                notifyScheduled = false;
+                requestNotificationUpdate();
+            }, wait);
+            return;
         }
-        return id;
+        notificationManager.notify(NOTIFICATION_ID, buildNotification());
     }
 
     /**
-     * Service 解放時に MediaPlayer を停止・リリース
+     * 使い回しのビルダーに現在の状態を入れて通知を作る
+     * @return Notification オブジェクト
+     */
+    private Notification buildNotification() {
+        notifiedTitle = shownTitle;
+        notifiedPlaying = shownPlaying;
+        lastNotifyAt = SystemClock.uptimeMillis();
+        return notificationBuilder
+                .setContentText(shownTitle)
+                .setLargeIcon(art)
+                .setOngoing(shownPlaying)
+                .setActions(prevAction, shownPlaying ? pauseAction : playAction, nextAction, stopAction)
+                .build();
+    }
+
+    /**
+     * Service 解放時にプレイヤーを停止・リリース
      */
     @Override
     public void onDestroy() {
         super.onDestroy();
         // --- レシーバー解除 ---
         unregisterReceiver(noisyReceiver);
+        if (artRequest != null) artRequest.cancel();
+        session.release();
+        mainHandler.removeCallbacksAndMessages(null);
 
-        if (mediaPlayer != null) {
-            mediaPlayer.stop();
-            mediaPlayer.release();
-        }
+        // 再生スレッドで状態を保存・解放してからスレッドを終了
+        playbackHandler.post(() -> {
+            haltPlayers();
+            if (mediaPlayer != null) {
+                mediaPlayer.release();
+                mediaPlayer = null;
+            }
+            // 保存待ちの書き込みは済ませてから終了
+            snapshotExecutor.shutdown();
+        });
+        playbackThread.quitSafely();
     }
 
     /**
-     * バインドサービスではないため null を返却
+     * 同一プロセスの画面から直接操作するための Binder を返す
      */
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,422 @@
+package jp.tukutano.musicapplication.service;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+import jp.tukutano.musicapplication.dsp.DspChain;
+import jp.tukutano.musicapplication.dsp.DspConfig;
+
+/**
+ * CodecTrackPlayer の PCM を AudioTrack へ書き出す出力スレッド
+ * - 流している曲（source）のリングからスロットを取り出し、float に展開して音量を掛けて書く
+ * - 曲の終わりで連結された次曲が同じ形式なら、そのまま次曲のリングへ読み替える（曲間が途切れない）
+ * - クロスフェードが設定されていれば、前曲の終わりの手前で次曲へ切り替え、
+ *   前曲の残り（後奏）をフェードアウトしながら次曲のフェードインに足し合わせる
+ * - 音量・クロスフェードを掛けた後に DspChain を通す（流している曲の設定に従い、変わったら差し替える）
+ * - 再生位置は AudioTrack の再生ヘッドから求める
+ * 出力スレッドは自分のロックを持ったまま CodecTrackPlayer を呼ばない（逆順のロックを避けるため）
+ */
+final class PcmOutput {
+    private static final String TAG = "PcmOutput";
+
+    // 音量変化をならすフレーム数
+    private static final int RAMP_FRAMES = 256;
+    // 最後まで鳴らし切るのを待つ上限
+    private static final long DRAIN_TIMEOUT_MS = 2_000;
+    // フェードカーブを計算する間隔（間は直線で補間する）
+    private static final int FADE_STEP_FRAMES = 64;
+
+    private final AudioTrack track;
+    private final int sampleRate;
+    private final int channels;
+    // スロット 1 つ分を float に展開する作業領域（再生中は確保しない）
+    private final float[] scratch;
+    private final DspChain dsp;
+    private final Thread thread;
+    // 出力スレッドだけが触る：最後に掛けた音量
+    private float appliedGain = -1f;
+
+    // --- クロスフェード（出力スレッドだけが触る） ---
+    private Crossfade.Curve fadeCurve;
+    private long fadeFrames;
+    private long fadePos;
+    // フェード開始時の epoch（flush されたらフェードをやめる）
+    private int fadeEpoch;
+    // 後奏：前曲と、そのリング・読みかけのスロット
+    private CodecTrackPlayer tail;
+    private PcmRing tailRing;
+    private PcmRing.Slot tailSlot;
+    private boolean tailFloat;
+
+    // --- 以下は this で保護 ---
+    private CodecTrackPlayer source;
+    // dsp に設定済みの構成
+    private DspConfig appliedDsp;
+    private boolean paused = true;
+    private boolean released;
+    // flush() のたびに進める（書きかけのスロットを捨てる目印）
+    private int epoch;
+    // AudioTrack へ書き込んだフレーム数（flush 後は再生ヘッドに合わせる）
+    private long framesWritten;
+    // source の basePositionUs に当たる再生ヘッド位置
+    private long headBase;
+    private long basePositionUs;
+
+    /**
+     * @throws UnsupportedOperationException AudioTrack を作れない
+     */
+    PcmOutput(CodecTrackPlayer source, int sampleRate, int channels, long positionUs,
+              int bufferMs, int slotBytes) {
+        this.source = source;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.basePositionUs = positionUs;
+        int mask = channels == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        int minBytes = AudioTrack.getMinBufferSize(sampleRate, mask, AudioFormat.ENCODING_PCM_FLOAT);
+        int wantBytes = (int) ((long) sampleRate * bufferMs / 1000) * channels * 4;
+        track = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(mask)
+                        .build())
+                .setBufferSizeInBytes(Math.max(minBytes, wantBytes))
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                // 画面オフでの連続再生向け（大きめのバッファで起床回数を減らす）
+                .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_POWER_SAVING)
+                .build();
+        // 16bit PCM が最も多くのサンプルになる
+        scratch = new float[slotBytes / 2];
+        dsp = new DspChain(sampleRate, channels, scratch.length);
+        setDsp(source.dsp());
+        thread = new Thread(this::run, "codec-output");
+        thread.start();
+    }
+
+    synchronized void play() {
+        if (released) return;
+        paused = false;
+        track.play();
+        notifyAll();
+    }
+
+    synchronized void pause() {
+        if (released) return;
+        paused = true;
+        // 書き込み中の write() も戻る
+        track.pause();
+        notifyAll();
+    }
+
+    /**
+     * 書き込み済みの PCM を捨て、positionUs から書き直す（シーク用）
+     */
+    synchronized void flush(long positionUs) {
+        if (released) return;
+        track.pause();
+        track.flush();
+        epoch++;
+        framesWritten = head();
+        headBase = framesWritten;
+        basePositionUs = positionUs;
+        if (!paused) track.play();
+        notifyAll();
+    }
+
+    /**
+     * @return 流している曲の再生位置（マイクロ秒）
+     */
+    synchronized long positionUs() {
+        if (released) return basePositionUs;
+        long played = Math.max(0, head() - headBase);
+        return basePositionUs + played * 1_000_000 / sampleRate;
+    }
+
+    /**
+     * DSP の構成を差し替える（段の準備は呼び出し側のスレッドで行う）
+     */
+    void setDsp(DspConfig config) {
+        synchronized (this) {
+            if (config.equals(appliedDsp)) return;
+            appliedDsp = config;
+        }
+        dsp.setStages(config.createStages());
+    }
+
+    synchronized void release() {
+        if (released) return;
+        released = true;
+        track.pause();
+        track.flush();
+        notifyAll();
+        thread.interrupt();
+    }
+
+    private long head() {
+        return track.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+    }
+
+    private void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        try {
+            while (true) {
+                CodecTrackPlayer src;
+                int e;
+                synchronized (this) {
+                    while (paused && !released) wait();
+                    if (released) return;
+                    src = source;
+                    e = epoch;
+                }
+                // シークされたらフェードを打ち切る
+                if (fading() && e != fadeEpoch) endCrossfade();
+                PcmRing ring = src.ringFor(this);
+                if (ring == null) {
+                    // 曲が reset された（まもなく release される）
+                    synchronized (this) {
+                        if (!released) wait(10);
+                    }
+                    continue;
+                }
+                PcmRing.Slot slot = ring.take();
+                if (slot == null) continue;
+                if (slot.eos) {
+                    ring.recycle(slot);
+                    endCrossfade();
+                    if (!onSourceEnd(src)) return;
+                    continue;
+                }
+                // フェードを始めたらこのスロットは後奏の先頭になる
+                if (!fading() && beginCrossfade(src, slot, e)) continue;
+                boolean ok = write(slot.data, src, e);
+                ring.recycle(slot);
+                if (!ok) {
+                    src.onOutputError(this);
+                    return;
+                }
+            }
+        } catch (InterruptedException ignored) {
+            // release() からの割り込み
+        } finally {
+            endCrossfade();
+            synchronized (this) {
+                released = true;
+            }
+            track.release();
+        }
+    }
+
+    /**
+     * スロットの PCM を float に展開し、音量を掛けて書き込む
+     *
+     * @return 書き込みエラーなら false（flush・release で中断した場合は true）
+     */
+    private boolean write(ByteBuffer data, CodecTrackPlayer src, int e) throws InterruptedException {
+        int base = data.position();
+        int samples;
+        if (src.isFloatPcm()) {
+            samples = data.remaining() / 4;
+            for (int i = 0; i < samples; i++) scratch[i] = data.getFloat(base + 4 * i);
+        } else {
+            samples = data.remaining() / 2;
+            for (int i = 0; i < samples; i++) scratch[i] = data.getShort(base + 2 * i) / 32768f;
+        }
+        applyGain(samples, src.volume());
+        if (fading()) mixCrossfade(samples / channels);
+        dsp.process(scratch, samples / channels);
+
+        int off = 0;
+        while (off < samples) {
+            synchronized (this) {
+                while (paused && !released && e == epoch) wait();
+                if (released || e != epoch) return true;
+            }
+            int n = track.write(scratch, off, samples - off, AudioTrack.WRITE_BLOCKING);
+            if (n < 0) {
+                Log.w(TAG, "AudioTrack への書き込みに失敗: " + n);
+                return false;
+            }
+            synchronized (this) {
+                if (e == epoch) framesWritten += n / channels;
+            }
+            off += n;
+        }
+        return true;
+    }
+
+    /**
+     * 音量を掛ける。前回から変わっていれば RAMP_FRAMES かけて移る
+     */
+    private void applyGain(int samples, float target) {
+        float from = appliedGain < 0 ? target : appliedGain;
+        appliedGain = target;
+        int frames = samples / channels;
+        if (from == target) {
+            if (target == 1f) return;
+            for (int i = 0; i < samples; i++) scratch[i] *= target;
+            return;
+        }
+        int ramp = Math.min(frames, RAMP_FRAMES);
+        float step = (target - from) / ramp;
+        for (int f = 0; f < frames; f++) {
+            float g = f < ramp ? from + step * (f + 1) : target;
+            for (int c = 0; c < channels; c++) scratch[f * channels + c] *= g;
+        }
+    }
+
+    private boolean fading() {
+        return fadePos < fadeFrames;
+    }
+
+    /**
+     * 曲の終わりがクロスフェードの範囲に入ったら、連結された次曲へ出力を引き継ぎ、
+     * 残りを後奏として混ぜ始める
+     *
+     * @param slot src から取り出したスロット（始めた場合は後奏の先頭として持ち続ける）
+     * @return フェードを始めた（slot を消費した）なら true
+     */
+    private boolean beginCrossfade(CodecTrackPlayer src, PcmRing.Slot slot, int e) {
+        CodecTrackPlayer next = src.nextPlayer();
+        if (next == null) return false;
+        Crossfade fade = src.crossfade();
+        long durationUs = src.durationUs();
+        long overlapUs = fade.overlapMs(durationUs / 1000, next.getDuration()) * 1000;
+        if (overlapUs <= 0 || slot.timeUs < durationUs - overlapUs) return false;
+        long nextStartUs = next.takeOver(this, sampleRate, channels);
+        if (nextStartUs < 0) return false;
+        PcmRing r = src.handOffTail(this);
+        setDsp(next.dsp());
+        synchronized (this) {
+            source = next;
+            // ここから書く分が次曲の先頭
+            headBase = framesWritten;
+            basePositionUs = nextStartUs;
+        }
+        if (r == null) return true;  // 前曲は既に reset 済み（slot のリングも閉じている）
+        tail = src;
+        tailRing = r;
+        tailSlot = slot;
+        tailFloat = src.isFloatPcm();
+        fadeCurve = fade.curve;
+        // 前曲の残りの長さでフェードする（連結が遅れた場合は指定より短くなる）
+        fadeFrames = Math.max(1, (durationUs - slot.timeUs) * sampleRate / 1_000_000);
+        fadePos = 0;
+        fadeEpoch = e;
+        return true;
+    }
+
+    /**
+     * scratch の先頭 frames フレーム（次曲）にフェードインを掛け、フェードアウトした後奏を足す
+     * カーブは FADE_STEP_FRAMES ごとに求め、間は直線で補間する
+     */
+    private void mixCrossfade(int frames) {
+        float tailVolume = tail != null ? tail.volume() : 0f;
+        int f = 0;
+        while (f < frames && fading()) {
+            int n = (int) Math.min(Math.min(frames - f, FADE_STEP_FRAMES), fadeFrames - fadePos);
+            float x0 = (float) fadePos / fadeFrames;
+            float x1 = (float) (fadePos + n) / fadeFrames;
+            float in0 = fadeCurve.fadeIn(x0);
+            float inStep = (fadeCurve.fadeIn(x1) - in0) / n;
+            float out0 = fadeCurve.fadeOut(x0) * tailVolume;
+            float outStep = (fadeCurve.fadeOut(x1) * tailVolume - out0) / n;
+            for (int i = 1; i <= n; i++, f++) {
+                int at = f * channels;
+                float gin = in0 + inStep * i;
+                for (int c = 0; c < channels; c++) scratch[at + c] *= gin;
+                if (tail != null) addTailFrame(at, out0 + outStep * i);
+            }
+            fadePos += n;
+        }
+        // フェードアウトし切った後奏の残りは捨てる
+        if (!fading()) releaseTail();
+    }
+
+    /**
+     * 後奏の 1 フレームに gain を掛けて scratch[at..] に足す
+     * 後奏のデコードが追いついていなければ足さない（出力は待たない）
+     */
+    private void addTailFrame(int at, float gain) {
+        PcmRing.Slot slot = tailSlot;
+        if (slot == null || !slot.data.hasRemaining()) {
+            if (slot != null) tailRing.recycle(slot);
+            slot = tailSlot = tailRing.poll();
+            if (slot == null) return;
+            if (slot.eos) {
+                releaseTail();
+                return;
+            }
+        }
+        ByteBuffer data = slot.data;
+        for (int c = 0; c < channels; c++) {
+            float v = tailFloat ? data.getFloat() : data.getShort() / 32768f;
+            scratch[at + c] += v * gain;
+        }
+    }
+
+    /**
+     * フェードをやめる（後奏は打ち切り、次曲はそのままの音量にする）
+     */
+    private void endCrossfade() {
+        releaseTail();
+        fadePos = fadeFrames;
+    }
+
+    private void releaseTail() {
+        if (tail == null) return;
+        if (tailSlot != null) tailRing.recycle(tailSlot);
+        tail.onTailFinished(tailRing);
+        tail = null;
+        tailRing = null;
+        tailSlot = null;
+    }
+
+    /**
+     * 曲の終わり。次曲が引き継げるなら続けて流し、できなければ鳴らし切って終了する
+     *
+     * @return 出力を続けるなら true
+     */
+    private boolean onSourceEnd(CodecTrackPlayer src) throws InterruptedException {
+        CodecTrackPlayer next = src.nextPlayer();
+        long nextStartUs = next != null ? next.takeOver(this, sampleRate, channels) : -1;
+        if (nextStartUs >= 0) {
+            setDsp(next.dsp());
+            synchronized (this) {
+                source = next;
+                // 書き込み済みの分を鳴らし終えた所が次曲の先頭
+                headBase = framesWritten;
+                basePositionUs = nextStartUs;
+            }
+            src.onOutputFinished(this, false);
+            return true;
+        }
+
+        // 書き込んだ分が再生ヘッドに届くまで待つ（一時停止中は数えない）
+        long waited = 0;
+        while (true) {
+            synchronized (this) {
+                if (released) return false;
+                if (head() >= framesWritten || waited > DRAIN_TIMEOUT_MS) break;
+                if (paused) {
+                    wait();
+                    continue;
+                }
+            }
+            long t = SystemClock.uptimeMillis();
+            Thread.sleep(10);
+            waited += SystemClock.uptimeMillis() - t;
+        }
+        src.onOutputFinished(this, true);
+        return false;
+    }
+}
@@ -0,0 +1,175 @@
+package jp.tukutano.musicapplication.service;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * デコードスレッドと出力スレッドの間で PCM を受け渡す固定長のリングバッファ
+ * - スロットは生成時に確保したダイレクト ByteBuffer を使い回す（再生中は確保しない）
+ * - 書き手は acquire() → 書き込み → commit()、読み手は take()（待たないなら poll()）→ 読み出し → recycle()
+ * - clear() はシーク用。書き込み済みのスロットを捨て、書き込み中のスロットも commit 時に捨てる
+ *   clear() 前にデコードしたデータは、その時点の世代を acquire(int) に渡すと clear() 後に取ったスロットでも捨てられる
+ * 書き手・読み手それぞれ 1 スレッドで使うこと
+ */
+final class PcmRing {
+
+    static final class Slot {
+        final ByteBuffer data;
+        long timeUs;          // 先頭フレームの曲内の時刻
+        boolean eos;          // 曲の終わり（data は空）
+        int generation;
+
+        Slot(int bytes) {
+            data = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    private final Slot[] slots;
+    // 次に acquire するスロットと、次に take するスロット
+    private int write;
+    private int read;
+    // 空きでないスロット数（書き込み中・書き込み済み・読み出し中）と、書き込み済みの数
+    private int used;
+    private int filled;
+    // clear() のたびに進める（古い世代のスロットは commit 時に捨てる）
+    private int generation;
+    private boolean closed;
+
+    /**
+     * @param slotCount スロット数
+     * @param slotBytes 1 スロットのバイト数
+     */
+    PcmRing(int slotCount, int slotBytes) {
+        if (slotCount < 2 || slotBytes <= 0) throw new IllegalArgumentException();
+        slots = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++) slots[i] = new Slot(slotBytes);
+    }
+
+    int slotBytes() {
+        return slots[0].data.capacity();
+    }
+
+    /**
+     * @return 現在の世代（clear() のたびに進む）
+     */
+    synchronized int generation() {
+        return generation;
+    }
+
+    /**
+     * 書き込み用の空きスロットを取る（空きがなければ待つ）
+     *
+     * @return 中身を消したスロット。close() 済みなら null
+     */
+    @Nullable
+    synchronized Slot acquire() {
+        return acquire(generation);
+    }
+
+    /**
+     * 書き込むデータの世代を指定して空きスロットを取る（世代が現在と違えば commit 時に捨てる）
+     *
+     * @param dataGeneration データをデコードし始めた時点の generation()
+     * @return 中身を消したスロット。close() 済みなら null
+     */
+    @Nullable
+    synchronized Slot acquire(int dataGeneration) {
+        while (used == slots.length && !closed) waitUninterruptibly();
+        if (closed) return null;
+        Slot slot = slots[write];
+        used++;
+        slot.data.clear();
+        slot.timeUs = 0;
+        slot.eos = false;
+        slot.generation = dataGeneration;
+        return slot;
+    }
+
+    /**
+     * acquire() したスロットを読み手へ渡す
+     *
+     * @return 渡せたら true。世代が古い（書き込み中・デコード中に clear() された）・close() 済みなら false
+     */
+    synchronized boolean commit(Slot slot) {
+        if (closed) return false;
+        if (slot.generation != generation) {
+            // 書き込み中・デコード中に clear() された
+            used--;
+            notifyAll();
+            return false;
+        }
+        slot.data.flip();
+        write = (write + 1) % slots.length;
+        filled++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * 書き込み済みのスロットを取る（なければ待つ）
+     *
+     * @return スロット。close() 済みなら null
+     */
+    @Nullable
+    synchronized Slot take() {
+        while (filled == 0 && !closed) waitUninterruptibly();
+        return poll();
+    }
+
+    /**
+     * 書き込み済みのスロットがあれば取る（待たない）
+     *
+     * @return スロット。なければ・close() 済みなら null
+     */
+    @Nullable
+    synchronized Slot poll() {
+        if (filled == 0 || closed) return null;
+        Slot slot = slots[read];
+        read = (read + 1) % slots.length;
+        filled--;
+        return slot;
+    }
+
+    /**
+     * take() したスロットを空きに戻す
+     */
+    synchronized void recycle(Slot slot) {
+        if (closed) return;
+        used--;
+        notifyAll();
+    }
+
+    /**
+     * 書き込み済みのスロットを捨てる（書き込み中・読み出し中のスロットは持ち主が返す）
+     */
+    synchronized void clear() {
+        used -= filled;
+        read = (read + filled) % slots.length;
+        filled = 0;
+        generation++;
+        notifyAll();
+    }
+
+    /**
+     * 待っている書き手・読み手を起こし、以降の acquire()/take() を null にする
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    synchronized int filled() {
+        return filled;
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package jp.tukutano.musicapplication.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 再生順を決めるキューエンジン
+ * - 曲は QueueSource 上のインデックス（int）で扱い、曲ごとのオブジェクトは作らない
+ * - シャッフルは Fisher–Yates を再生位置に合わせて 1 手ずつ進める（切り替え時に全体を並べ替えない）
+ *   order[i] は 0 なら i、それ以外は order[i] - 1 を表すので、確保直後の配列がそのまま恒等順になる
+ * - 「次に再生」はメインの並びとは別の int リングバッファに積み、先に消化する
+ * - next()/previous()/peekNext() はいずれも O(1)
+ * - シャッフル順は種から再現できるため、保存（save）は数十バイトで済む
+ * スレッドセーフではない（再生スレッドから使う）
+ */
+public class PlaybackQueue {
+
+    public enum RepeatMode {
+        /** 最後まで再生したら止まる */
+        OFF,
+        /** 同じ曲を繰り返す（曲の終了時のみ。スキップでは次へ進む） */
+        ONE,
+        /** 最後まで再生したら先頭に戻る */
+        ALL
+    }
+
+    // シャッフルごとの種を作る乱数
+    private final Random seeds;
+    // 現在のシャッフルの種・先頭に置いた曲と、その種から作った乱数（fix() はこの順に消費する）
+    private long shuffleSeed;
+    private int shuffleStart;
+    private Random random;
+
+    private int size;
+    // メインの並びでの再生位置（シャッフル中は order 上の位置、それ以外はソース上のインデックス）
+    private int pos;
+    private boolean shuffle;
+    private RepeatMode repeatMode = RepeatMode.ALL;
+
+    // シャッフル順（遅延確定）と、確定済みの先頭からの長さ
+    private int[] order;
+    private int fixed;
+
+    // 「次に再生」の曲（先頭から消化するリングバッファ）
+    private int[] upNext = new int[8];
+    private int upHead;
+    private int upCount;
+    // 現在「次に再生」から取り出した曲を再生中なら、そのインデックス
+    private int upCurrent = -1;
+
+    public PlaybackQueue(Random seeds) {
+        this.seeds = seeds;
+    }
+
+    /**
+     * 新しいキューに切り替える
+     *
+     * @param size       曲数
+     * @param startIndex 最初に再生するソース上のインデックス
+     */
+    public void reset(int size, int startIndex) {
+        this.size = size;
+        upHead = 0;
+        upCount = 0;
+        upCurrent = -1;
+        int start = size == 0 ? 0 : Math.max(0, Math.min(startIndex, size - 1));
+        if (shuffle) {
+            startShuffle(start);
+        } else {
+            pos = start;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 再生中の曲のソース上のインデックス。空なら -1
+     */
+    public int current() {
+        if (size == 0) return -1;
+        if (upCurrent >= 0) return upCurrent;
+        return shuffle ? valueAt(pos) : pos;
+    }
+
+    /**
+     * 曲の終了時に次へ進む（リピート 1 曲なら同じ曲）
+     *
+     * @return 次に再生するソース上のインデックス。終わりなら -1（位置は変わらない）
+     */
+    public int next() {
+        if (size == 0) return -1;
+        if (repeatMode == RepeatMode.ONE) return current();
+        return skipToNext();
+    }
+
+    /**
+     * next() を呼んだ場合に返る曲（状態は変えない）
+     * 次曲の先読み用。シャッフル中は次の位置を確定するが、確定結果は next() と一致する
+     */
+    public int peekNext() {
+        if (size == 0) return -1;
+        if (repeatMode == RepeatMode.ONE) return current();
+        if (upCount > 0) return upNext[upHead];
+        int p = pos + 1;
+        if (p >= size) {
+            if (repeatMode != RepeatMode.ALL) return -1;
+            p = 0;
+        }
+        if (!shuffle) return p;
+        fix(p);
+        return valueAt(p);
+    }
+
+    /**
+     * ユーザー操作で次の曲へ進む（リピート 1 曲でも進む）
+     *
+     * @return 次に再生するソース上のインデックス。終わりなら -1（位置は変わらない）
+     */
+    public int skipToNext() {
+        if (size == 0) return -1;
+        if (upCount > 0) {
+            upCurrent = upNext[upHead];
+            upHead = (upHead + 1) % upNext.length;
+            upCount--;
+            return upCurrent;
+        }
+        int p = pos + 1;
+        if (p >= size) {
+            if (repeatMode != RepeatMode.ALL) return -1;
+            p = 0;
+        }
+        upCurrent = -1;
+        pos = p;
+        if (!shuffle) return pos;
+        fix(pos);
+        return valueAt(pos);
+    }
+
+    /**
+     * 前の曲へ戻る
+     * - 「次に再生」の曲を再生中なら、割り込まれたメインの曲へ戻る
+     * - 先頭ではリピート全曲（シャッフルなし）のみ末尾へ戻り、それ以外は先頭のまま
+     *
+     * @return 再生するソース上のインデックス。空なら -1
+     */
+    public int previous() {
+        if (size == 0) return -1;
+        if (upCurrent >= 0) {
+            upCurrent = -1;
+            return current();
+        }
+        if (pos > 0) {
+            pos--;
+        } else if (repeatMode == RepeatMode.ALL && !shuffle) {
+            pos = size - 1;
+        }
+        return current();
+    }
+
+    /**
+     * 再生中の曲の直後に割り込ませる（後から追加したものほど先に再生される）
+     *
+     * @param sourceIndex ソース上のインデックス
+     */
+    public void playNext(int sourceIndex) {
+        if (sourceIndex < 0 || sourceIndex >= size) return;
+        if (upCount == upNext.length) growUpNext();
+        upHead = (upHead - 1 + upNext.length) % upNext.length;
+        upNext[upHead] = sourceIndex;
+        upCount++;
+    }
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    /**
+     * シャッフルの切り替え。再生中の曲はそのままで、以降の並びだけが変わる
+     */
+    public void setShuffle(boolean on) {
+        if (on == shuffle) return;
+        int cur = current();
+        int main = upCurrent >= 0 ? (shuffle ? valueAt(pos) : pos) : cur;
+        shuffle = on;
+        if (size == 0) return;
+        if (on) {
+            startShuffle(main);
+        } else {
+            // メインの曲のソース上の位置から順番どおりに続ける
+            pos = main;
+        }
+    }
+
+    public RepeatMode getRepeatMode() {
+        return repeatMode;
+    }
+
+    public void setRepeatMode(RepeatMode mode) {
+        repeatMode = mode;
+    }
+
+    /**
+     * 状態を書き出す（「次に再生」の曲以外は固定長）
+     */
+    public void save(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(pos);
+        out.writeBoolean(shuffle);
+        out.writeByte(repeatMode.ordinal());
+        out.writeLong(shuffleSeed);
+        out.writeInt(shuffleStart);
+        out.writeInt(fixed);
+        out.writeInt(upCurrent);
+        out.writeInt(upCount);
+        for (int i = 0; i < upCount; i++) out.writeInt(upNext[(upHead + i) % upNext.length]);
+    }
+
+    /**
+     * save() で書き出した状態に戻す。シャッフル順は種から確定済みの位置まで作り直す
+     *
+     * @param expectedSize 現在のキューの曲数（保存時と違えば失敗）
+     * @return 復元できたら true（失敗時は状態を変えない）
+     */
+    public boolean restore(DataInput in, int expectedSize) throws IOException {
+        int savedSize = in.readInt();
+        int savedPos = in.readInt();
+        boolean savedShuffle = in.readBoolean();
+        int mode = in.readByte();
+        long savedSeed = in.readLong();
+        int savedStart = in.readInt();
+        int savedFixed = in.readInt();
+        int savedUpCurrent = in.readInt();
+        int savedUpCount = in.readInt();
+        if (savedSize != expectedSize || savedSize <= 0 || savedPos < 0 || savedPos >= savedSize
+                || mode < 0 || mode >= RepeatMode.values().length
+                || savedShuffle && (savedStart < 0 || savedStart >= savedSize
+                        || savedFixed < 1 || savedFixed > savedSize)
+                || savedUpCurrent >= savedSize || savedUpCount < 0 || savedUpCount > savedSize * 4) {
+            return false;
+        }
+        int[] savedUp = new int[Math.max(8, Integer.highestOneBit(savedUpCount) * 2)];
+        for (int i = 0; i < savedUpCount; i++) {
+            savedUp[i] = in.readInt();
+            if (savedUp[i] < 0 || savedUp[i] >= savedSize) return false;
+        }
+
+        size = savedSize;
+        repeatMode = RepeatMode.values()[mode];
+        shuffle = savedShuffle;
+        upNext = savedUp;
+        upHead = 0;
+        upCount = savedUpCount;
+        upCurrent = savedUpCurrent;
+        if (shuffle) {
+            // 同じ種・同じ先頭から、確定済みの位置まで同じ乱数列で並べ直す
+            startShuffle(savedStart, savedSeed);
+            fix(savedFixed - 1);
+        }
+        pos = savedPos;
+        return true;
+    }
+
+    /**
+     * start を先頭にして残りを遅延シャッフルする
+     */
+    private void startShuffle(int start) {
+        startShuffle(start, seeds.nextLong());
+    }
+
+    private void startShuffle(int start, long seed) {
+        resetOrder(seed);
+        shuffleStart = start;
+        pos = 0;
+        fixed = 1;
+        if (size > 0) swap(0, start);
+    }
+
+    /**
+     * シャッフル順を恒等順に戻し、種から乱数を作り直す
+     */
+    private void resetOrder(long seed) {
+        shuffleSeed = seed;
+        random = new Random(seed);
+        if (order == null || order.length < size) {
+            order = new int[size];
+        } else {
+            Arrays.fill(order, 0, size, 0);
+        }
+    }
+
+    /**
+     * 位置 p までのシャッフルを確定する（Fisher–Yates を 1 手ずつ）
+     */
+    private void fix(int p) {
+        while (fixed <= p) {
+            int j = fixed + random.nextInt(size - fixed);
+            swap(fixed, j);
+            fixed++;
+        }
+    }
+
+    private int valueAt(int i) {
+        int v = order[i];
+        return v == 0 ? i : v - 1;
+    }
+
+    private void swap(int i, int j) {
+        int vi = valueAt(i);
+        int vj = valueAt(j);
+        order[i] = vj + 1;
+        order[j] = vi + 1;
+    }
+
+    private void growUpNext() {
+        int[] grown = new int[upNext.length * 2];
+        for (int i = 0; i < upCount; i++) {
+            grown[i] = upNext[(upHead + i) % upNext.length];
+        }
+        upNext = grown;
+        upHead = 0;
+    }
+}
@@ -0,0 +1,181 @@
+package jp.tukutano.musicapplication.service;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import jp.tukutano.musicapplication.AppDatabase;
+
+/**
+ * プロセスが落ちても再生を再開できるよう、再生状態をファイルに保存する
+ * - キューの中身（曲の並び）はキューが変わった時だけ書く
+ * - 位置などの状態は数十バイトで、一定間隔と操作のたびに書く
+ * - どちらも AtomicFile で書くので、書き込み途中で落ちても前回の内容が残る
+ * 書き込みは呼び出し元が直列化すること（MusicService では専用スレッド）
+ */
+final class PlaybackSnapshot {
+    private static final String TAG = "PlaybackSnapshot";
+
+    static final int SOURCE_LIST = 0;
+    static final int SOURCE_PLAYLIST = 1;
+    private static final int VERSION = 2;
+    // 壊れたファイルで巨大な配列を確保しないための上限
+    private static final int MAX_QUEUE = 1_000_000;
+
+    /**
+     * 定期的に保存する再生状態
+     */
+    static final class State {
+        int queueId;          // どのキューに対する状態か（キュー側と一致しなければ捨てる）
+        int index;            // 再生中の曲のキュー上のインデックス
+        long positionMs;      // 曲内の再生位置
+        boolean playing;      // 再生中だったか（再起動時に自動で再開するか）
+        float volume;
+        byte[] order;         // PlaybackQueue.save() の内容
+        // 再生中の曲の URI・タイトル（復元時に DB を読まずに表示・再開するため。不明なら null）
+        @Nullable
+        String uri;
+        @Nullable
+        String title;
+    }
+
+    /**
+     * 復元結果
+     */
+    static final class Restored {
+        final QueueSource queue;
+        final State state;
+
+        Restored(QueueSource queue, State state) {
+            this.queue = queue;
+            this.state = state;
+        }
+    }
+
+    private final AtomicFile queueFile;
+    private final AtomicFile stateFile;
+
+    PlaybackSnapshot(File dir) {
+        queueFile = new AtomicFile(new File(dir, "playback_queue.bin"));
+        stateFile = new AtomicFile(new File(dir, "playback_state.bin"));
+    }
+
+    void writeQueue(int queueId, QueueSource queue) {
+        FileOutputStream fos = null;
+        try {
+            fos = queueFile.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(VERSION);
+            out.writeInt(queueId);
+            queue.writeTo(out);
+            out.flush();
+            queueFile.finishWrite(fos);
+        } catch (IOException e) {
+            Log.w(TAG, "キューの保存に失敗", e);
+            if (fos != null) queueFile.failWrite(fos);
+        }
+    }
+
+    void writeState(State state) {
+        FileOutputStream fos = null;
+        try {
+            fos = stateFile.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(VERSION);
+            out.writeInt(state.queueId);
+            out.writeInt(state.index);
+            out.writeLong(state.positionMs);
+            out.writeBoolean(state.playing);
+            out.writeFloat(state.volume);
+            out.writeInt(state.order.length);
+            out.write(state.order);
+            out.writeUTF(state.uri != null ? state.uri : "");
+            out.writeUTF(state.title != null ? state.title : "");
+            out.flush();
+            stateFile.finishWrite(fos);
+        } catch (IOException e) {
+            Log.w(TAG, "再生状態の保存に失敗", e);
+            if (fos != null) stateFile.failWrite(fos);
+        }
+    }
+
+    /**
+     * 保存済みの状態を読み込む
+     *
+     * @param db       プレイリストの曲情報を後から読むための DB（ここでは読まない）
+     * @param playback 再生スレッドで実行する Executor（プレイリストの曲情報の受け取り先）
+     * @return 保存がない・壊れている・キューと状態が対応しない場合は null
+     */
+    @Nullable
+    Restored read(AppDatabase db, Executor playback) {
+        try (DataInputStream q = new DataInputStream(new BufferedInputStream(queueFile.openRead()));
+             DataInputStream s = new DataInputStream(new BufferedInputStream(stateFile.openRead()))) {
+            if (q.readInt() != VERSION || s.readInt() != VERSION) return null;
+            int queueId = q.readInt();
+            QueueSource queue = readQueue(q, db, playback);
+            State state = new State();
+            state.queueId = s.readInt();
+            if (queue == null || state.queueId != queueId) return null;
+            state.index = s.readInt();
+            state.positionMs = s.readLong();
+            state.playing = s.readBoolean();
+            state.volume = s.readFloat();
+            int len = s.readInt();
+            if (len < 0 || len > (1 << 20)) return null;
+            state.order = new byte[len];
+            s.readFully(state.order);
+            state.uri = emptyToNull(s.readUTF());
+            state.title = emptyToNull(s.readUTF());
+            if (state.index < 0 || state.index >= queue.size()) return null;
+            return new Restored(queue, state);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "保存された再生状態を読めないため破棄", e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static String emptyToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+    @Nullable
+    private static QueueSource readQueue(DataInputStream in, AppDatabase db, Executor playback)
+            throws IOException {
+        int type = in.readByte();
+        if (type == SOURCE_LIST) {
+            int n = in.readInt();
+            if (n <= 0 || n > MAX_QUEUE) return null;
+            List<String> uris = new ArrayList<>(n);
+            List<String> titles = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                uris.add(in.readUTF());
+                titles.add(in.readUTF());
+            }
+            return new ListQueueSource(uris, titles);
+        } else if (type == SOURCE_PLAYLIST) {
+            long playlistId = in.readLong();
+            int n = in.readInt();
+            if (n <= 0 || n > MAX_QUEUE) return null;
+            long[] ids = new long[n];
+            for (int i = 0; i < n; i++) ids[i] = in.readLong();
+            return new PlaylistQueueSource(db, playback, playlistId, ids);
+        }
+        return null;
+    }
+}
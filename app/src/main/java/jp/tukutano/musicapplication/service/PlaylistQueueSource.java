@@ -0,0 +1,145 @@
+package jp.tukutano.musicapplication.service;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import jp.tukutano.musicapplication.AppDatabase;
+import jp.tukutano.musicapplication.db.PlaylistEntry;
+
+/**
+ * Room のプレイリストを再生するキュー
+ * - 開始時に並び順のエントリ ID だけを読み、曲情報は PAGE 曲ずつ必要になった分だけ読む
+ * - DB は AppDatabase のクエリ実行スレッドで読み、結果を再生スレッドで受け取る（再生スレッドでは待たない）
+ * - 読んだ曲情報はページ単位で MAX_PAGES まで残す
+ *   （シャッフルで再生中の曲と先読みする次の曲が別のページでも、互いを追い出さない）
+ * - 再生中にプレイリストが編集されても開始時の並びで再生する（削除された曲は飛ばす）
+ * 再生スレッドから使うこと
+ */
+class PlaylistQueueSource implements QueueSource {
+
+    // 一度に読む曲数
+    private static final int PAGE = 32;
+    // 残しておくページ数（再生中・次の曲の 2 ページ + シャッフル中の前後の移動分）
+    private static final int MAX_PAGES = 4;
+
+    private final AppDatabase db;
+    private final Executor playback;
+    private final long playlistId;
+    private final long[] entryIds;
+    // ページ番号 → 読み込み済みの曲情報（最近使った順）
+    private final Map<Integer, Page> pages = new LinkedHashMap<Integer, Page>(MAX_PAGES * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    // 読み込み中のページ → 読み込み後に渡す先
+    private final Map<Integer, List<Consumer<Page>>> loading = new HashMap<>();
+
+    /**
+     * プレイリストの並びを DB のスレッドで読み、キューを作って再生スレッドで渡す
+     * 読めなかった場合は曲数 0 のキューを渡す
+     *
+     * @param playback 再生スレッドで実行する Executor
+     */
+    static void open(AppDatabase db, Executor playback, long playlistId,
+                     Consumer<PlaylistQueueSource> onOpened) {
+        db.queryAsync(() -> toArray(db.playlistDao().getEntryIds(playlistId)), new long[0], playback,
+                ids -> onOpened.accept(new PlaylistQueueSource(db, playback, playlistId, ids)));
+    }
+
+    /**
+     * 保存しておいた並びで作り直す（スナップショットからの復元用。DB はまだ読まない）
+     */
+    PlaylistQueueSource(AppDatabase db, Executor playback, long playlistId, long[] entryIds) {
+        this.db = db;
+        this.playback = playback;
+        this.playlistId = playlistId;
+        this.entryIds = entryIds;
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        long[] out = new long[ids.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ids.get(i);
+        return out;
+    }
+
+    @Override
+    public int size() {
+        return entryIds.length;
+    }
+
+    @Override
+    public void fetch(int index, Callback callback) {
+        int p = index / PAGE;
+        Page page = pages.get(p);
+        if (page != null) {
+            page.deliver(index, callback);
+            return;
+        }
+        List<Consumer<Page>> waiting = loading.get(p);
+        if (waiting == null) {
+            waiting = new ArrayList<>();
+            loading.put(p, waiting);
+            load(p);
+        }
+        waiting.add(loaded -> loaded.deliver(index, callback));
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(PlaybackSnapshot.SOURCE_PLAYLIST);
+        out.writeLong(playlistId);
+        out.writeInt(entryIds.length);
+        for (long id : entryIds) out.writeLong(id);
+    }
+
+    /**
+     * p ページ目を DB のスレッドで読み、再生スレッドで待っている先へ渡す
+     * 読めなかった場合は全曲を削除済みとして渡し、ページは残さない（次に使う時に読み直す）
+     */
+    private void load(int p) {
+        int start = p * PAGE;
+        int end = Math.min(entryIds.length, start + PAGE);
+        List<Long> ids = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) ids.add(entryIds[i]);
+        db.queryAsync(() -> db.playlistDao().getEntriesByIds(ids), null, playback, entries -> {
+            Page page = new Page();
+            if (entries != null) {
+                Map<Long, PlaylistEntry> byId = new HashMap<>();
+                for (PlaylistEntry e : entries) byId.put(e.id, e);
+                for (int i = 0; i < ids.size(); i++) {
+                    PlaylistEntry e = byId.get(ids.get(i));
+                    if (e == null) continue;
+                    page.uris[i] = e.uri;
+                    page.titles[i] = e.title;
+                }
+                pages.put(p, page);
+            }
+            List<Consumer<Page>> waiting = loading.remove(p);
+            if (waiting != null) {
+                for (Consumer<Page> w : waiting) w.accept(page);
+            }
+        });
+    }
+
+    /**
+     * 1 ページ分の曲情報（削除済みの曲は null）
+     */
+    private static final class Page {
+        final String[] uris = new String[PAGE];
+        final String[] titles = new String[PAGE];
+
+        void deliver(int index, Callback callback) {
+            int i = index % PAGE;
+            callback.onTrack(uris[i], titles[i]);
+        }
+    }
+}
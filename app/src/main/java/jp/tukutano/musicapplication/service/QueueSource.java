@@ -0,0 +1,37 @@
+package jp.tukutano.musicapplication.service;
+
+import androidx.annotation.Nullable;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 再生キューの曲の取り出し元（再生スレッドから使う）
+ * 曲情報は fetch() で受け取る（DB から読む場合も再生スレッドでは待たない）
+ */
+interface QueueSource {
+
+    /**
+     * 曲情報の受け取り先（再生スレッドで呼ばれる）
+     */
+    interface Callback {
+        /**
+         * @param uri   再生用 URI。取り出せなければ（削除済みなど）null
+         * @param title タイトル。取り出せなければ null
+         */
+        void onTrack(@Nullable String uri, @Nullable String title);
+    }
+
+    int size();
+
+    /**
+     * index の曲情報を callback に渡す
+     * 手元にあればその場で、なければ読み込んでから再生スレッドで呼ぶ
+     */
+    void fetch(int index, Callback callback);
+
+    /**
+     * 再起動時に復元できるよう内容を書き出す（PlaybackSnapshot が読み戻す）
+     */
+    void writeTo(DataOutput out) throws IOException;
+}
@@ -0,0 +1,93 @@
+package jp.tukutano.musicapplication.service;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+import jp.tukutano.musicapplication.dsp.DspConfig;
+
+/**
+ * 1 曲分の再生エンジン（MusicService から見た MediaPlayer 相当の操作）
+ * - 実装は MediaPlayer を包む MediaTrackPlayer と、MediaCodec + AudioTrack の CodecTrackPlayer
+ * - リスナーは生成したスレッド（MusicService の再生スレッド）で呼ばれる
+ * - 状態遷移は MediaPlayer と同じ（reset → setDataSource → prepareAsync → start ...）
+ */
+interface TrackPlayer {
+
+    /**
+     * エンジンの種類（設定でインストールごとに選ぶ）
+     */
+    enum Engine {
+        MEDIA_PLAYER,
+        CODEC
+    }
+
+    interface Listener {
+        void onPrepared(TrackPlayer player);
+
+        void onCompletion(TrackPlayer player);
+
+        /**
+         * setNextPlayer() で連結した次曲が再生を始めた（次曲側のプレイヤーで呼ばれる）
+         */
+        void onStartedAsNext(TrackPlayer player);
+
+        void onError(TrackPlayer player, int what, int extra);
+    }
+
+    Engine engine();
+
+    void setListener(Listener listener);
+
+    void setDataSource(Context context, Uri uri) throws IOException;
+
+    void prepareAsync();
+
+    void start();
+
+    void pause();
+
+    boolean isPlaying();
+
+    void seekTo(long positionMs);
+
+    long getCurrentPosition();
+
+    /**
+     * @return 曲の長さ（ミリ秒）。不明なら -1
+     */
+    long getDuration();
+
+    /**
+     * @param volume 0.0〜1.0（曲ごとの補正を含めた最終的な倍率）
+     */
+    void setVolume(float volume);
+
+    /**
+     * 出力に掛ける DSP を設定する（再生中でも途切れずに切り替わる）
+     * MediaTrackPlayer は PCM に触れないため何もしない
+     */
+    void setDsp(DspConfig dsp);
+
+    /**
+     * 連結した次曲へのクロスフェードを設定する（次に setNextPlayer() した時から有効）
+     */
+    void setCrossfade(Crossfade crossfade);
+
+    /**
+     * 再生終了後に続けて再生するプレイヤーを連結する（準備完了済みのもの。null で解除）
+     * 同じエンジン同士でのみ連結できる
+     * クロスフェードする場合は終わりの手前で次曲を始め、その時点で onStartedAsNext → onCompletion を通知する。
+     * 以降、鳴り終わるまでの前曲の音は次曲側が持つ（次曲の pause で止まり、seekTo・reset で打ち切られる）
+     *
+     * @throws IllegalStateException 連結できない状態
+     */
+    void setNextPlayer(@Nullable TrackPlayer next);
+
+    void reset();
+
+    void release();
+}
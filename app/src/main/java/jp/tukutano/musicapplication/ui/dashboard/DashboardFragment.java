@@ -1,20 +1,9 @@
 package jp.tukutano.musicapplication.ui.dashboard;
 
-import static jp.tukutano.musicapplication.service.MusicService.ACTION_TITLE;
-import static jp.tukutano.musicapplication.service.MusicService.ACTION_VOLUME_UP;
-import static jp.tukutano.musicapplication.service.MusicService.EXTRA_VOLUME;
-
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.media.MediaPlayer;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.net.Uri;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.SeekBar;
@@ -22,27 +11,24 @@ import android.widget.Spinner;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.widget.SearchView;
-import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
-import androidx.room.Room;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import jp.tukutano.musicapplication.databinding.FragmentDashboardBinding;
-import jp.tukutano.musicapplication.db.FavoriteDao;
-import jp.tukutano.musicapplication.db.Setting;
-import jp.tukutano.musicapplication.db.SettingDao;
+import jp.tukutano.musicapplication.db.SettingsStore;
 import jp.tukutano.musicapplication.model.Song;
-import jp.tukutano.musicapplication.AppDatabase;
-import jp.tukutano.musicapplication.service.MusicService;
-import jp.tukutano.musicapplication.util.LogUtils;
-import jp.tukutano.musicapplication.util.MusicUtils;
+import jp.tukutano.musicapplication.library.ArtworkCache;
+import jp.tukutano.musicapplication.library.FavoriteCache;
+import jp.tukutano.musicapplication.library.LibrarySnapshot;
+import jp.tukutano.musicapplication.service.MusicController;
+import jp.tukutano.musicapplication.util.TraceEvent;
+import jp.tukutano.musicapplication.util.Tracer;
 
 /**
  * ダッシュボード画面
@@ -55,8 +41,6 @@ public class DashboardFragment extends Fragment {
 
     // ViewBinding オブジェクト
     private FragmentDashboardBinding binding;
-    // バックグラウンド再生用 MediaPlayer
-    private MediaPlayer mediaPlayer;
     // 選択中の楽曲
     private Song selectedSong;
     // 音量調整用 SeekBar
@@ -64,10 +48,10 @@ public class DashboardFragment extends Fragment {
     // 現在のアプリ内再生音量 (0.0〜1.0)
     private Float currentVolume = 0.5f;
 
-    // 全楽曲リスト
-    private List<Song> songList;
-    // フィルタ後リスト
-    private List<Song> filteredList;
+    // 表示中の楽曲ライブラリ（プロセス共通のリポジトリから届いた最新のスナップショット）
+    private LibrarySnapshot library;
+    // 待機中・実行中の絞り込みの対象（なければ null）。この後に届いたページは結果と一緒に反映する
+    private LibrarySnapshot filterSource;
     // RecyclerView 用アダプタ
     private SongAdapter adapter;
 
@@ -77,12 +61,19 @@ public class DashboardFragment extends Fragment {
     private List<String> artistNames;
     private ArrayAdapter<String> spinnerAdapter;
 
-    // Room DB
-    private AppDatabase db;
-    private FavoriteDao favoriteDao;
-    private SettingDao settingDao;
-    // 再生中曲情報受信用レシーバー
-    private BroadcastReceiver nowPlayingReceiver;
+    // お気に入り ID のメモリキャッシュ（プロセス共通）
+    private FavoriteCache favoriteCache;
+    // 設定ストア（音量保存用）
+    private SettingsStore settings;
+    // MusicService 操作用クライアント（再生中曲情報も購読する）
+    private MusicController music;
+    // Spinner に反映済みのアーティスト名一覧
+    private List<String> shownArtists;
+    // 絞り込み用ワーカー
+    private final ExecutorService filterExecutor = Executors.newSingleThreadExecutor();
+    private final SongFilterPipeline filterPipeline = new SongFilterPipeline(filterExecutor);
+    // 検索入力をまとめる時間
+    private static final long FILTER_DEBOUNCE_MS = 150;
 
     /**
      * フラグメントのビュー生成処理
@@ -90,57 +81,45 @@ public class DashboardFragment extends Fragment {
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater,
                              ViewGroup container, Bundle savedInstanceState) {
-        // デバッグ用ログ
-        LogUtils.logWithCaller(Thread.currentThread().getStackTrace(), "Dashboard onCreateView");
-        // ViewModel 初期化（不要なら削除可）
+        // トレース記録（デバッグビルドのみ）
+        Tracer.record(TraceEvent.DASHBOARD_CREATE_VIEW);
+        // ViewModel の取得（楽曲ライブラリはプロセス共通のリポジトリが保持）
         DashboardViewModel dashboardViewModel =
                 new ViewModelProvider(this).get(DashboardViewModel.class);
         // ViewBinding のセット
         binding = FragmentDashboardBinding.inflate(inflater, container, false);
         View root = binding.getRoot();
 
-        // --- Room DB 初期化 ---
-        db = Room.databaseBuilder(
-                        requireContext().getApplicationContext(),
-                        AppDatabase.class, "music_app_db")
-                .allowMainThreadQueries()  // デモ用: 本番は非同期推奨
-                .build();
-        favoriteDao = db.favoriteDao();
-        settingDao = db.settingDao();
-
-        // 保存音量読み込み or デフォルト
-        Float saved = settingDao.getValue("volume");
-        currentVolume = (saved != null) ? saved : 0.5f;
+        favoriteCache = dashboardViewModel.getFavoriteCache();
+        settings = SettingsStore.getInstance(requireContext());
+        music = new MusicController(requireContext(), (title, index) -> {
+            if (binding != null) binding.tvNowPlaying.setText(title);
+        });
 
-        // MediaPlayer 初期化
-        mediaPlayer = new MediaPlayer();
         seekBarVolume = binding.seekBarVolume;
-        // SeekBar に初期音量をセット
+        // SeekBar に初期音量をセット（保存音量は onStart で非同期に読み込む）
         seekBarVolume.setProgress((int)(currentVolume * 100));
 
-        // --- 曲リスト読み込み ---
-        songList = MusicUtils.loadAllAudio(requireContext());
-        filteredList = new ArrayList<>(songList);
-
         // --- 検索バー設定 ---
         binding.searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
             public boolean onQueryTextSubmit(String query) {
                 // 検索実行
-                applyFilters(query, (String) spinnerArtist.getSelectedItem());
+                applyFilters(query, (String) spinnerArtist.getSelectedItem(), 0);
                 return true;
             }
             @Override
             public boolean onQueryTextChange(String newText) {
                 // 入力ごとにフィルタ更新
-                applyFilters(newText, (String) spinnerArtist.getSelectedItem());
+                applyFilters(newText, (String) spinnerArtist.getSelectedItem(), FILTER_DEBOUNCE_MS);
                 return true;
             }
         });
 
         // --- RecyclerView 設定 ---
         binding.recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
-        adapter = new SongAdapter(filteredList, this::onSongSelected, favoriteDao);
+        adapter = new SongAdapter(new ArrayList<>(), this::onSongSelected, favoriteCache,
+                ArtworkCache.getInstance(requireContext()));
         binding.recyclerView.setAdapter(adapter);
 
         // --- 再生/停止 ボタン処理 ---
@@ -149,12 +128,8 @@ public class DashboardFragment extends Fragment {
 
         // --- アーティスト Spinner 設定 ---
         spinnerArtist = binding.spinnerArtist;
-        // 重複排除してアーティスト名を抽出
-        Set<String> set = new TreeSet<>();
-        for (Song s : songList) set.add(s.getArtist());
         artistNames = new ArrayList<>();
-        artistNames.add("すべて");
-        artistNames.addAll(set);
+        artistNames.add(SongFilterPipeline.ALL_ARTISTS);
         spinnerAdapter = new ArrayAdapter<>(
                 requireContext(),
                 android.R.layout.simple_spinner_item,
@@ -165,47 +140,84 @@ public class DashboardFragment extends Fragment {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
                 // 選択アーティストで絞り込み
-                applyFilters(binding.searchView.getQuery().toString(), artistNames.get(pos));
+                applyFilters(binding.searchView.getQuery().toString(), artistNames.get(pos), 0);
             }
             @Override public void onNothingSelected(AdapterView<?> parent) {
                 // デフォルト表示
-                applyFilters(binding.searchView.getQuery().toString(), "すべて");
+                applyFilters(binding.searchView.getQuery().toString(), SongFilterPipeline.ALL_ARTISTS, 0);
             }
         });
 
+        // --- 楽曲ライブラリを購読（読み込み中はページが届くたびに、作り直し時は最新の状態が届く） ---
+        dashboardViewModel.getLibrary().observe(getViewLifecycleOwner(), this::onLibraryChanged);
+
         return root;
     }
 
+    /**
+     * 楽曲ライブラリの更新を一覧とアーティスト Spinner に反映する
+     * - 末尾へのページ追加なら、追加分のうち条件に合う曲だけワーカーで求めて一覧へ追加（絞り込み中なら結果を待つ）
+     * - 差し替えや初回表示なら絞り込みをやり直す
+     */
+    private void onLibraryChanged(LibrarySnapshot next) {
+        if (binding == null) return;
+        LibrarySnapshot prev = library;
+        library = next;
+        // 全ページ到着後（初回表示時は届いている分で）アーティスト一覧を確定
+        if ((prev == null || next.complete) && next.artists != shownArtists) refreshArtists();
+        if (prev != null && prev.version == next.version) return;  // 検索インデックスの付与・完了のみ
+        if (prev != null && next.appendedFrom == prev.songs.size()) {
+            if (filterSource == null) {
+                appendMatching(next.songs.subList(next.appendedFrom, next.songs.size()),
+                        binding.searchView.getQuery().toString(), (String) spinnerArtist.getSelectedItem());
+            }
+        } else {
+            applyFilters(binding.searchView.getQuery().toString(),
+                    (String) spinnerArtist.getSelectedItem(), 0);
+        }
+    }
+
+    /**
+     * 読み込まれたページのうち条件に合う曲だけを一覧の末尾へ追加する（判定はワーカーで行う）
+     */
+    private void appendMatching(List<Song> page, String keyword, String artist) {
+        filterPipeline.append(page, keyword, artist, matched -> {
+            if (binding != null) adapter.appendSongs(matched);
+        });
+    }
+
+    /**
+     * アーティスト Spinner の項目をライブラリから作り直す（選択中の項目は維持）
+     */
+    private void refreshArtists() {
+        shownArtists = library.artists;
+        String selected = (String) spinnerArtist.getSelectedItem();
+        artistNames.clear();
+        artistNames.add(SongFilterPipeline.ALL_ARTISTS);
+        artistNames.addAll(shownArtists);
+        spinnerAdapter.notifyDataSetChanged();
+        int pos = selected != null ? artistNames.indexOf(selected) : 0;
+        spinnerArtist.setSelection(Math.max(pos, 0));
+    }
+
     /**
      * 選択された楽曲を再生リクエスト
      */
     private void playSelectedSong() {
         if (selectedSong == null) return;
-        // Intent に URI とタイトルをセットし Service 起動
-        ArrayList<String> uriList = new ArrayList<>();
-        ArrayList<String> titleList = new ArrayList<>();
+        // URI とタイトル、現在音量を Service に渡して再生
+        List<String> uriList = new ArrayList<>();
+        List<String> titleList = new ArrayList<>();
         uriList.add(selectedSong.getUri());
         titleList.add(selectedSong.getTitle());
-        Intent intent = new Intent(requireContext(), MusicService.class)
-                .setAction(MusicService.ACTION_PLAYLIST_PLAY)
-                .putStringArrayListExtra(MusicService.EXTRA_PLAYLIST, uriList)
-                .putStringArrayListExtra(MusicService.EXTRA_PLAYLIST_TITLE, titleList)
-                .putExtra(MusicService.EXTRA_START_INDEX, 0);
-        ContextCompat.startForegroundService(requireContext(), intent);
-        // 初期音量を Service に通知
-        Intent volUp = new Intent(requireContext(), MusicService.class)
-                .setAction(ACTION_VOLUME_UP)
-                .putExtra(EXTRA_VOLUME, currentVolume);
-        ContextCompat.startForegroundService(requireContext(), volUp);
+        music.playQueue(uriList, titleList, 0, currentVolume);
     }
 
     /**
      * 再生中の楽曲を停止
      */
     private void stopPlayback() {
-        Intent stop = new Intent(requireContext(), MusicService.class)
-                .setAction(MusicService.ACTION_STOP);
-        ContextCompat.startForegroundService(requireContext(), stop);
+        music.stop();
     }
 
     /**
@@ -218,49 +230,51 @@ public class DashboardFragment extends Fragment {
 
     /**
      * 検索キーワードとアーティスト絞り込みを同時に適用
+     * - 絞り込みはワーカーで行い、最新の要求の結果だけを一覧に反映する
+     * - 絞り込み中に末尾へ追加されたページは、結果を反映した後に追加分だけワーカーで判定して足す
+     *   （読み込み中はページが次々に届くので、やり直すといつまでも結果が出ない）
+     *
+     * @param delayMs 連続入力をまとめるための待ち時間
      */
-    private void applyFilters(String keyword, String artist) {
-        String q = keyword.trim().toLowerCase();
-        filteredList.clear();
-        for (Song s : songList) {
-            boolean matchKey = q.isEmpty() || s.getTitle().toLowerCase().contains(q) || s.getArtist().toLowerCase().contains(q);
-            boolean matchArtist = "すべて".equals(artist) || s.getArtist().equals(artist);
-            if (matchKey && matchArtist) filteredList.add(s);
-        }
-        adapter.updateList(filteredList);
+    private void applyFilters(String keyword, String artist, long delayMs) {
+        if (library == null) return;
+        // スナップショットは変更されないのでそのままワーカーへ渡す
+        LibrarySnapshot source = library;
+        filterSource = source;
+        filterPipeline.submit(source.songs, source.index, keyword, artist, delayMs, result -> {
+            if (binding == null) return;
+            filterSource = null;
+            adapter.updateList(result);
+            if (source.version != library.version) {
+                // 差し替えなら絞り込みをやり直しているのでここへは来ない → 末尾への追加のみ
+                appendMatching(library.songs.subList(source.songs.size(), library.songs.size()),
+                        keyword, artist);
+            }
+        });
     }
 
     /**
-     * フラグメント開始時: レシーバ登録 & SeekBar リスナー
+     * フラグメント開始時: Service へのバインド & SeekBar リスナー
      */
     @Override
     public void onStart() {
         super.onStart();
-        // 音量設定の再読み込み
-        Float saved = settingDao.getValue("volume");
-        currentVolume = (saved != null) ? saved : 0.5f;
-        seekBarVolume.setProgress((int)(currentVolume * 100));
-        // BroadcastReceiver 登録: Service から現在曲タイトルを受信
-        nowPlayingReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                String title = intent.getStringExtra(MusicService.EXTRA_NOW_PLAYING);
-                if (title != null) binding.tvNowPlaying.setText(title);
-            }
-        };
-        LocalBroadcastManager.getInstance(requireContext())
-                .registerReceiver(nowPlayingReceiver, new IntentFilter(MusicService.ACTION_UPDATE_NOW_PLAYING));
+        // 音量設定の再読み込み（設定ストアのメモリから。初回は読み込み完了後）
+        settings.whenLoaded(() -> {
+            if (binding == null) return;
+            currentVolume = settings.getFloat(SettingsStore.KEY_VOLUME, 0.5f);
+            seekBarVolume.setProgress((int)(currentVolume * 100));
+        });
+        // Service へバインド（接続時に現在曲タイトルが通知される）
+        music.bind();
         // SeekBar の音量変更リスナー
         seekBarVolume.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 currentVolume = progress / 100f;
-                Intent volIntent = new Intent(requireContext(), MusicService.class)
-                        .setAction(ACTION_VOLUME_UP)
-                        .putExtra(EXTRA_VOLUME, currentVolume);
-                ContextCompat.startForegroundService(requireContext(), volIntent);
-                // Room に音量保存
-                settingDao.insert(new Setting("volume", currentVolume));
+                music.setVolume(currentVolume);
+                // 音量を保存（永続化はまとめて遅延実行）
+                settings.putFloat(SettingsStore.KEY_VOLUME, currentVolume);
             }
             @Override public void onStartTrackingTouch(SeekBar seekBar) {}
             @Override public void onStopTrackingTouch(SeekBar seekBar) {}
@@ -268,31 +282,23 @@ public class DashboardFragment extends Fragment {
     }
 
     /**
-     * フラグメント再開時: Service にタイトル更新要求
+     * フラグメント停止時: 設定の書き出し & バインド解除
      */
     @Override
-    public void onResume() {
-        super.onResume();
-        Intent intent = new Intent(requireContext(), MusicService.class)
-                .setAction(ACTION_TITLE);
-        ContextCompat.startForegroundService(requireContext(), intent);
+    public void onStop() {
+        super.onStop();
+        // 未保存の設定を書き出す
+        settings.flush();
+        music.unbind();
     }
 
     /**
-     * フラグメント停止時: リソース解放 & レシーバ解除
+     * フラグメント破棄時に絞り込み用ワーカーを停止
      */
     @Override
-    public void onStop() {
-        super.onStop();
-        if (mediaPlayer != null) {
-            if (mediaPlayer.isPlaying()) mediaPlayer.stop();
-            mediaPlayer.release();
-            mediaPlayer = null;
-        }
-        if (nowPlayingReceiver != null) {
-            LocalBroadcastManager.getInstance(requireContext()).unregisterReceiver(nowPlayingReceiver);
-            nowPlayingReceiver = null;
-        }
+    public void onDestroy() {
+        super.onDestroy();
+        filterExecutor.shutdownNow();
     }
 
     /**
@@ -301,6 +307,10 @@ public class DashboardFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        filterPipeline.cancel();
+        library = null;
+        filterSource = null;
+        shownArtists = null;
         binding = null;
     }
 }
\ No newline at end of file
@@ -1,19 +1,41 @@
 package jp.tukutano.musicapplication.ui.dashboard;
 
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
 
-public class DashboardViewModel extends ViewModel {
+import jp.tukutano.musicapplication.library.FavoriteCache;
+import jp.tukutano.musicapplication.library.LibraryRepository;
+import jp.tukutano.musicapplication.library.LibrarySnapshot;
+
+/**
+ * ダッシュボード画面の状態
+ * - 楽曲ライブラリはプロセス共通の LibraryRepository から受け取る（作り直しても読み込み直さない）
+ */
+public class DashboardViewModel extends AndroidViewModel {
 
-    private final MutableLiveData<String> mText;
+    private final LibraryRepository repository;
+
+    public DashboardViewModel(@NonNull Application application) {
+        super(application);
+        repository = LibraryRepository.getInstance(application);
+        // 初回だけ読み込みが始まる
+        repository.load();
+    }
 
-    public DashboardViewModel() {
-        mText = new MutableLiveData<>();
-        mText.setValue("This is dashboard fragment");
+    /**
+     * @return 楽曲ライブラリ
+     */
+    public LiveData<LibrarySnapshot> getLibrary() {
+        return repository.getLibrary();
     }
 
-    public LiveData<String> getText() {
-        return mText;
+    /**
+     * @return お気に入り ID のキャッシュ
+     */
+    public FavoriteCache getFavoriteCache() {
+        return repository.getFavoriteCache();
     }
-}
\ No newline at end of file
+}
@@ -1,20 +1,32 @@
 package jp.tukutano.musicapplication.ui.dashboard;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import jp.tukutano.musicapplication.R;
-import jp.tukutano.musicapplication.db.FavoriteDao;
-import jp.tukutano.musicapplication.db.FavoriteSong;
+import jp.tukutano.musicapplication.library.ArtworkCache;
+import jp.tukutano.musicapplication.library.FavoriteCache;
 import jp.tukutano.musicapplication.model.Song;
+import jp.tukutano.musicapplication.util.LongHashSet;
 
 /***
  - SongAdapter
@@ -23,17 +35,53 @@ import jp.tukutano.musicapplication.model.Song;
 public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder> {
 
     /**
-     * 表示する楽曲のリスト
+     * 差分計算の手間（前後の件数の和 × 編集量）がこれを超える更新は差分計算せずに差し替える
+     * （DiffUtil の計算量は (N+M)·D のため、大きなリスト同士の絞り込み変更では終わらない）
      */
-    private List<Song> songList;
+    private static final long MAX_DIFF_COST = 20_000_000L;
+    /**
+     * 差分計算用ワーカー（全アダプタで共有）
+     */
+    private static final ExecutorService DIFF_EXECUTOR =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "song-diff"));
+    /**
+     * 表示中の楽曲リスト（UI スレッドでのみ変更する）
+     * 差分計算中はワーカーが読むため変更せず、計算結果の反映時に別のリストへ差し替える
+     */
+    private ArrayList<Song> items;
+    /**
+     * 差分計算中か
+     */
+    private boolean diffing;
+    /**
+     * 差分計算中に届いたページ（計算結果の反映後に末尾へ追加する）
+     */
+    private final ArrayList<Song> appended = new ArrayList<>();
+    /**
+     * 更新の世代（古い差分計算の結果は捨てる）
+     */
+    private int generation;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     /**
      * 楽曲タップ時のコールバック
      */
     private final OnSongClickListener listener;
     /**
-     * お気に入り操作用 DAO
+     * お気に入り状態のキャッシュ
      */
-    private final FavoriteDao favoriteDao;
+    private final FavoriteCache favorites;
+    /**
+     * アルバムアートのキャッシュ
+     */
+    private final ArtworkCache artwork;
+    /**
+     * 曲をバインド中の ViewHolder（お気に入り状態の変化はこの中だけを見る）
+     */
+    private final Set<SongViewHolder> boundHolders = new HashSet<>();
+    /**
+     * お気に入り状態が変わった行だけを更新するリスナー
+     */
+    private final FavoriteCache.Listener favoritesListener = this::onFavoritesChanged;
 
     /**
      * インターフェース：楽曲選択時のコールバック
@@ -50,23 +98,109 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
      * コンストラクタ
      *
      * @param songList 楽曲リスト
-     * @param listener 楽曲タップ時コールバック
-     * @param dao      お気に入り操作用 DAO
+     * @param listener  楽曲タップ時コールバック
+     * @param favorites お気に入り状態のキャッシュ
+     * @param artwork   アルバムアートのキャッシュ
      */
-    public SongAdapter(List<Song> songList, OnSongClickListener listener, FavoriteDao dao) {
-        this.songList = songList;
+    public SongAdapter(List<Song> songList, OnSongClickListener listener, FavoriteCache favorites,
+                       ArtworkCache artwork) {
         this.listener = listener;
-        this.favoriteDao = dao;
+        this.favorites = favorites;
+        this.artwork = artwork;
+        items = new ArrayList<>(songList);
     }
 
     /**
      * フィルタリング後などでリストを更新する
+     * 複製・差分の見積もり・差分計算はすべてワーカーで行い、UI スレッドでは結果を反映するだけにする
+     * - 変化が小さければ前後のリストを突き合わせ、変化した範囲だけを通知する
+     * - 変化が大きければ（絞り込み条件の変更など）差分計算せずに丸ごと差し替える
+     *
+     * @param next 更新後の楽曲リスト（渡した後は変更しないこと）
+     */
+    public void updateList(List<Song> next) {
+        int gen = ++generation;
+        appended.clear();
+        if (next.isEmpty()) {
+            diffing = false;
+            items = new ArrayList<>();
+            notifyDataSetChanged();
+            return;
+        }
+        diffing = true;
+        List<Song> old = items;
+        DIFF_EXECUTOR.execute(() -> {
+            ArrayList<Song> copy = new ArrayList<>(next);
+            DiffUtil.DiffResult result = old.isEmpty() || diffCost(old, copy) > MAX_DIFF_COST
+                    ? null : DiffUtil.calculateDiff(new SongDiff(old, copy), false);
+            mainHandler.post(() -> {
+                if (gen != generation) return;
+                diffing = false;
+                items = copy;
+                if (result != null) {
+                    result.dispatchUpdatesTo(SongAdapter.this);
+                } else {
+                    notifyDataSetChanged();
+                }
+                if (!appended.isEmpty()) {
+                    insert(appended);
+                    appended.clear();
+                }
+            });
+        });
+    }
+
+    /**
+     * 読み込まれたページをリスト末尾に追加する（差分計算せずに追加分だけを通知する）
+     * 差分計算中なら結果の反映後に追加する
      *
-     * @param filtered 更新後の楽曲リスト
+     * @param page 追加する楽曲
+     */
+    public void appendSongs(List<Song> page) {
+        if (page.isEmpty()) return;
+        if (diffing) {
+            appended.addAll(page);
+            return;
+        }
+        insert(page);
+    }
+
+    private void insert(List<Song> page) {
+        int start = items.size();
+        items.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    /**
+     * 差分計算の手間を見積もる（共通する曲の数から編集量を求める。ワーカーで呼ぶ）
+     * 同じ曲かの判定は SongDiff と同じ sameSong()（URI）で行う
      */
-    public void updateList(List<Song> filtered) {
-        this.songList = filtered;
-        notifyDataSetChanged();
+    static long diffCost(List<Song> old, List<Song> next) {
+        long n = old.size() + next.size();
+        long sizeDelta = Math.abs(old.size() - next.size());
+        // 編集量は少なくとも件数差（この時点で超えるなら曲を数えない）
+        if (n * sizeDelta > MAX_DIFF_COST) return n * sizeDelta;
+        Set<String> keys = new HashSet<>(old.size() * 2);
+        for (Song s : old) keys.add(s.getUri());
+        int shared = 0;
+        for (Song s : next) {
+            if (keys.contains(s.getUri())) shared++;
+        }
+        return n * (n - 2L * shared);
+    }
+
+    /**
+     * 同じ曲か（URI はボリュームと MediaStore の ID を含む）
+     */
+    static boolean sameSong(Song a, Song b) {
+        return a.getUri().equals(b.getUri());
+    }
+
+    /**
+     * @return 現在表示中の楽曲リスト（変更不可）
+     */
+    public List<Song> getCurrentList() {
+        return Collections.unmodifiableList(items);
     }
 
     @NonNull
@@ -80,73 +214,157 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
 
     @Override
     public void onBindViewHolder(@NonNull SongViewHolder holder, int position) {
-        Song song = songList.get(position);
+        Song song = items.get(position);
         // タイトルとアーティスト名をセット
         holder.tvTitle.setText(song.getTitle());
         holder.tvArtist.setText(song.getArtist());
 
-        // お気に入り状態をアイコンで表示
-        boolean isFav = favoriteDao.isFavorite(song.getId());
+        // お気に入り状態をアイコンで表示（メモリ上のキャッシュを参照）
+        holder.song = song;
+        boundHolders.add(holder);
+        bindFavorite(holder, song);
+
+        // アルバムアート（メモリにあれば即時、なければ非同期で読み込む）
+        bindArtwork(holder, song);
+
+        // アイテムタップで再生コールバック（差分更新で位置がずれるためタップ時に取得）
+        holder.itemView.setOnClickListener(v -> {
+            int pos = holder.getBindingAdapterPosition();
+            if (pos != RecyclerView.NO_POSITION) listener.onSongClick(pos, song);
+        });
+
+        // お気に入りボタン押下で登録/解除
+        holder.btnFav.setOnClickListener(v ->
+                favorites.setFavorite(song, !favorites.isFavorite(song.getId())));
+    }
+
+    private void bindFavorite(SongViewHolder holder, Song song) {
         holder.btnFav.setImageResource(
-                isFav ? R.drawable.ic_favorite_fill : R.drawable.ic_favorite
+                favorites.isFavorite(song.getId()) ? R.drawable.ic_favorite_fill : R.drawable.ic_favorite
         );
+    }
 
-        // アイテムタップで再生コールバック
-        holder.itemView.setOnClickListener(v -> listener.onSongClick(position, song));
+    private void bindArtwork(SongViewHolder holder, Song song) {
+        holder.cancelArtwork();
+        holder.ivArt.setImageDrawable(null);
+        int size = holder.ivArt.getLayoutParams().width;
+        holder.artRequest = artwork.load(song.getUri(), size, bitmap -> {
+            holder.artRequest = null;
+            holder.ivArt.setImageBitmap(bitmap);
+        });
+    }
 
-        // お気に入りボタン押下で登録/解除
-        holder.btnFav.setOnClickListener(v -> {
-            if (favoriteDao.isFavorite(song.getId())) {
-                // 既にお気に入りなら削除
-                favoriteDao.delete(toFavoriteSong(song));
-                holder.btnFav.setImageResource(R.drawable.ic_favorite);
-            } else {
-                // お気に入りに追加
-                favoriteDao.insert(toFavoriteSong(song));
-                holder.btnFav.setImageResource(R.drawable.ic_favorite_fill);
+    /**
+     * 画面外へ流れた行の読み込みは取り消す（再利用先の曲の画像が上書きされないように）
+     */
+    @Override
+    public void onViewRecycled(@NonNull SongViewHolder holder) {
+        super.onViewRecycled(holder);
+        boundHolders.remove(holder);
+        holder.song = null;
+        holder.cancelArtwork();
+        holder.ivArt.setImageDrawable(null);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        favorites.addListener(favoritesListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        favorites.removeListener(favoritesListener);
+    }
+
+    /**
+     * お気に入り状態が変わった曲の行だけアイコンを更新する
+     * 見るのはバインド中の ViewHolder だけ（リストの件数によらない）。それ以外の行はバインド時に反映される
+     *
+     * @param changed 状態が変わった曲 ID
+     */
+    private void onFavoritesChanged(LongHashSet changed) {
+        for (SongViewHolder holder : boundHolders) {
+            if (changed.contains(FavoriteCache.parseId(holder.song.getId()))) {
+                bindFavorite(holder, holder.song);
             }
-        });
+        }
     }
 
     @Override
     public int getItemCount() {
-        return songList.size();
+        return items.size();
     }
 
     /**
-     * Song モデルから FavoriteSong Entity に変換
-     *
-     * @param s Song オブジェクト
-     * @return FavoriteSong オブジェクト
+     * 差分計算用の比較：同じ曲かは sameSong()、表示内容はタグで判定
      */
-    private FavoriteSong toFavoriteSong(Song s) {
-        FavoriteSong f = new FavoriteSong();
-        f.id = s.getId();
-        f.title = s.getTitle();
-        f.artist = s.getArtist();
-        f.album = s.getAlbum();
-        f.uri = s.getUri();
-        f.duration = s.getDuration();
-        return f;
+    private static final class SongDiff extends DiffUtil.Callback {
+        private final List<Song> old;
+        private final List<Song> next;
+
+        SongDiff(List<Song> old, List<Song> next) {
+            this.old = old;
+            this.next = next;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return old.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return next.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPos, int newPos) {
+            return sameSong(old.get(oldPos), next.get(newPos));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPos, int newPos) {
+            Song a = old.get(oldPos);
+            Song b = next.get(newPos);
+            return Objects.equals(a.getTitle(), b.getTitle())
+                    && Objects.equals(a.getArtist(), b.getArtist())
+                    && Objects.equals(a.getAlbum(), b.getAlbum())
+                    && a.getDuration() == b.getDuration();
+        }
     }
 
     /**
      * ViewHolder：各アイテムのビューを保持
      */
     static class SongViewHolder extends RecyclerView.ViewHolder {
+        ImageView ivArt;
         TextView tvTitle;
         TextView tvArtist;
         ImageButton btnFav;
+        // バインド中の曲（再利用待ちなら null）
+        Song song;
+        // 読み込み中のアルバムアート
+        ArtworkCache.Request artRequest;
 
         /**
          * コンストラクタ：ビューIDと紐づけ
          */
         SongViewHolder(@NonNull View itemView) {
             super(itemView);
+            ivArt = itemView.findViewById(R.id.ivArt);
             tvTitle = itemView.findViewById(R.id.tvTitle);
             tvArtist = itemView.findViewById(R.id.tvArtist);
             btnFav = itemView.findViewById(R.id.btnFavorite);
         }
+
+        void cancelArtwork() {
+            if (artRequest != null) {
+                artRequest.cancel();
+                artRequest = null;
+            }
+        }
     }
 }
 
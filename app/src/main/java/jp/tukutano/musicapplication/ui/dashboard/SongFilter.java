@@ -0,0 +1,83 @@
+package jp.tukutano.musicapplication.ui.dashboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import jp.tukutano.musicapplication.library.SongSearchIndex;
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * 検索キーワード・アーティストによる絞り込みの本体（Android に依存しない）
+ * スレッドの切り替えや打ち切りの判断は SongFilterPipeline が行う
+ */
+public final class SongFilter {
+
+    /**
+     * アーティスト絞り込みなしを表す Spinner の項目
+     */
+    public static final String ALL_ARTISTS = "すべて";
+
+    // 打ち切り判定を行う間隔（曲数）
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    private SongFilter() {
+    }
+
+    /**
+     * 前回の検索結果を使わずに絞り込む
+     *
+     * @see #filter(List, SongSearchIndex, SongSearchIndex.Narrowing, String, String, BooleanSupplier)
+     */
+    public static List<Song> filter(List<Song> songs, SongSearchIndex index, String keyword,
+                                    String artist, BooleanSupplier cancelled) {
+        return filter(songs, index, null, keyword, artist, cancelled);
+    }
+
+    /**
+     * @param songs     絞り込み対象
+     * @param index     songs に対応する検索インデックス（未構築なら null で線形走査）
+     * @param narrowing 直前の検索（入力を続けた場合の絞り込み用。不要なら null）
+     * @param keyword   検索キーワード
+     * @param artist    アーティスト名（ALL_ARTISTS・null で絞り込みなし）
+     * @param cancelled 途中で打ち切るなら true を返す
+     * @return 絞り込み結果（打ち切った場合は null）
+     */
+    public static List<Song> filter(List<Song> songs, SongSearchIndex index,
+                                    SongSearchIndex.Narrowing narrowing, String keyword,
+                                    String artist, BooleanSupplier cancelled) {
+        String q = SongSearchIndex.normalize(keyword);
+        if (artist == null) artist = ALL_ARTISTS;
+        boolean allArtists = ALL_ARTISTS.equals(artist);
+        List<Song> result = new ArrayList<>();
+
+        if (index != null) {
+            // インデックスで検索キーワードに合う曲を引き、アーティスト条件だけを確認
+            int[] hits = index.search(q, narrowing);
+            for (int i = 0; i < hits.length; i++) {
+                if (i % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) return null;
+                Song s = songs.get(hits[i]);
+                if (allArtists || s.getArtist().equals(artist)) result.add(s);
+            }
+        } else {
+            // インデックス構築前（読み込み中）は線形走査
+            for (int i = 0; i < songs.size(); i++) {
+                if (i % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) return null;
+                Song s = songs.get(i);
+                if (matches(s, q, artist)) result.add(s);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 1 曲が検索キーワード（正規化済み）とアーティスト条件に合うか
+     */
+    public static boolean matches(Song s, String q, String artist) {
+        boolean matchKey = q.isEmpty()
+                || SongSearchIndex.normalize(s.getTitle()).contains(q)
+                || SongSearchIndex.normalize(s.getArtist()).contains(q);
+        boolean matchArtist = ALL_ARTISTS.equals(artist) || s.getArtist().equals(artist);
+        return matchKey && matchArtist;
+    }
+}
@@ -0,0 +1,109 @@
+package jp.tukutano.musicapplication.ui.dashboard;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import jp.tukutano.musicapplication.library.SongSearchIndex;
+import jp.tukutano.musicapplication.model.Song;
+import jp.tukutano.musicapplication.util.Metric;
+import jp.tukutano.musicapplication.util.Metrics;
+import jp.tukutano.musicapplication.util.TraceEvent;
+import jp.tukutano.musicapplication.util.Tracer;
+
+/**
+ * 検索キーワード・アーティストによる絞り込みをワーカースレッドで行うパイプライン
+ * - 連続した入力は debounce でまとめ、最後の要求だけを実行する
+ * - 新しい要求が来た時点で実行中・待機中の古い要求は打ち切る
+ * - 結果は最新の要求のものだけを UI スレッドへ返す
+ * submit / cancel は UI スレッドから呼ぶこと
+ */
+public class SongFilterPipeline {
+
+    /**
+     * アーティスト絞り込みなしを表す Spinner の項目
+     */
+    public static final String ALL_ARTISTS = SongFilter.ALL_ARTISTS;
+
+    private final Executor worker;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 最新の要求番号（これと異なる要求は古い）
+    private final AtomicInteger generation = new AtomicInteger();
+    private Runnable pending;
+    // このパイプラインの直前の検索（ワーカーでのみ使う。インデックスはプロセスで共有されるので持たせない）
+    private final SongSearchIndex.Narrowing narrowing = new SongSearchIndex.Narrowing();
+
+    /**
+     * コンストラクタ
+     *
+     * @param worker 絞り込みを行うワーカー（直前の検索を引き継ぐため 1 スレッドにすること）
+     */
+    public SongFilterPipeline(Executor worker) {
+        this.worker = worker;
+    }
+
+    /**
+     * 絞り込みを要求する（それまでの要求は破棄）
+     *
+     * @param songs    絞り込み対象（実行中に変更しないこと）
+     * @param index    songs に対応する検索インデックス（未構築なら null で線形走査）
+     * @param keyword  検索キーワード
+     * @param artist   アーティスト名（ALL_ARTISTS で絞り込みなし）
+     * @param delayMs  実行までの待ち時間（この間に次の要求が来たらまとめる）
+     * @param onResult 結果の受け取り先（UI スレッドで呼ばれる）
+     */
+    public void submit(List<Song> songs, SongSearchIndex index, String keyword, String artist,
+                       long delayMs, Consumer<List<Song>> onResult) {
+        int gen = generation.incrementAndGet();
+        if (pending != null) mainHandler.removeCallbacks(pending);
+        pending = () -> worker.execute(() -> {
+            Tracer.record(TraceEvent.SEARCH_BEGIN, songs.size());
+            long startNs = System.nanoTime();
+            List<Song> result = SongFilter.filter(songs, index, narrowing, keyword, artist,
+                    () -> gen != generation.get());
+            Tracer.record(TraceEvent.SEARCH_END, result != null ? result.size() : -1);
+            if (result == null) return;
+            Metrics.since(Metric.SEARCH, startNs);
+            mainHandler.post(() -> {
+                if (gen == generation.get()) onResult.accept(result);
+            });
+        });
+        mainHandler.postDelayed(pending, delayMs);
+    }
+
+    /**
+     * 末尾に追加されたページのうち条件に合う曲を求める（待機中・実行中の要求は打ち切らない）
+     * 判定はワーカーで行うので、先に submit した要求があればその結果の後に届く。
+     * この後に submit / cancel した場合は届かない（新しい要求が追加分も含めて絞り込む）
+     *
+     * @param page     追加されたページ（実行中に変更しないこと）
+     * @param keyword  検索キーワード
+     * @param artist   アーティスト名（ALL_ARTISTS で絞り込みなし）
+     * @param onResult 結果の受け取り先（UI スレッドで呼ばれる）
+     */
+    public void append(List<Song> page, String keyword, String artist,
+                       Consumer<List<Song>> onResult) {
+        int gen = generation.get();
+        worker.execute(() -> {
+            List<Song> matched = SongFilter.filter(page, null, keyword, artist,
+                    () -> gen != generation.get());
+            if (matched == null) return;
+            mainHandler.post(() -> {
+                if (gen == generation.get()) onResult.accept(matched);
+            });
+        });
+    }
+
+    /**
+     * 待機中・実行中の要求をすべて破棄する
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        mainHandler.removeCallbacksAndMessages(null);
+        pending = null;
+    }
+}
@@ -1,19 +1,43 @@
 package jp.tukutano.musicapplication.ui.home;
 
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
 
-public class HomeViewModel extends ViewModel {
+import java.util.List;
+
+import jp.tukutano.musicapplication.library.FavoriteCache;
+import jp.tukutano.musicapplication.library.LibraryRepository;
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * ホーム画面の状態
+ * - お気に入り一覧はプロセス共通の LibraryRepository から受け取る（変更時だけ読み直される）
+ */
+public class HomeViewModel extends AndroidViewModel {
 
-    private final MutableLiveData<String> mText;
+    private final LibraryRepository repository;
+
+    public HomeViewModel(@NonNull Application application) {
+        super(application);
+        repository = LibraryRepository.getInstance(application);
+        // ダッシュボードを開く前でもライブラリの読み込み・同期を始めておく
+        repository.load();
+    }
 
-    public HomeViewModel() {
-        mText = new MutableLiveData<>();
-        mText.setValue("This is home fragment");
+    /**
+     * @return お気に入りプレイリストの曲（読み込み前は null）
+     */
+    public LiveData<List<Song>> getFavorites() {
+        return repository.getFavorites();
     }
 
-    public LiveData<String> getText() {
-        return mText;
+    /**
+     * @return お気に入り ID のキャッシュ
+     */
+    public FavoriteCache getFavoriteCache() {
+        return repository.getFavoriteCache();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,92 @@
+package jp.tukutano.musicapplication.ui.notifications;
+
+import java.util.Locale;
+
+import jp.tukutano.musicapplication.util.LatencyHistogram;
+import jp.tukutano.musicapplication.util.Metric;
+import jp.tukutano.musicapplication.util.Metrics;
+
+/**
+ * 診断画面の表示文字列を作る
+ * 項目ごとに件数・パーセンタイルと、2 のべき乗ごとの件数を棒の高さにしたヒストグラムを並べる
+ */
+final class DiagnosticsFormatter {
+
+    // ヒストグラムの棒（件数の少ない順）
+    private static final char[] BARS = {'▁', '▂', '▃', '▄', '▅', '▆', '▇', '█'};
+    // 2^25µs ≒ 33 秒以上は最後の棒にまとめる
+    private static final int OCTAVES = 26;
+
+    private DiagnosticsFormatter() {
+    }
+
+    /**
+     * @return 全項目の現在の記録
+     */
+    static String format() {
+        LatencyHistogram.Snapshot frames = Metrics.snapshot(Metric.FRAME);
+        StringBuilder sb = new StringBuilder();
+        for (Metric metric : Metric.values()) {
+            LatencyHistogram.Snapshot s = metric == Metric.FRAME ? frames : Metrics.snapshot(metric);
+            if (sb.length() > 0) sb.append('\n');
+            append(sb, metric, s, frames.count);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 1 項目分を追加する
+     *
+     * @param frameCount 描画したフレーム数（フレーム落ちの割合に使う）
+     */
+    static void append(StringBuilder sb, Metric metric, LatencyHistogram.Snapshot s, long frameCount) {
+        sb.append(metric.label).append("  n=").append(s.count);
+        if (metric == Metric.FRAME_DROP && frameCount > 0) {
+            sb.append(String.format(Locale.ROOT, " (%.1f%%)", 100.0 * s.count / frameCount));
+        }
+        sb.append('\n');
+        if (s.count == 0) {
+            sb.append("  記録なし\n");
+            return;
+        }
+        sb.append("  p50 ").append(duration(s.percentile(0.50)))
+                .append("  p90 ").append(duration(s.percentile(0.90)))
+                .append("  p99 ").append(duration(s.percentile(0.99)))
+                .append("  max ").append(duration(s.max))
+                .append('\n');
+        appendBars(sb, s.octaves(OCTAVES));
+    }
+
+    /**
+     * 記録のある範囲だけ棒を並べ、両端の値を添える
+     */
+    private static void appendBars(StringBuilder sb, long[] octaves) {
+        int first = -1;
+        int last = -1;
+        long peak = 0;
+        for (int i = 0; i < octaves.length; i++) {
+            if (octaves[i] == 0) continue;
+            if (first < 0) first = i;
+            last = i;
+            peak = Math.max(peak, octaves[i]);
+        }
+        sb.append("  ");
+        for (int i = first; i <= last; i++) {
+            sb.append(octaves[i] == 0 ? ' ' : BARS[(int) ((octaves[i] * BARS.length - 1) / peak)]);
+        }
+        // [k] は 2^(k-1) 以上 2^k 未満
+        long low = first == 0 ? 0 : 1L << (first - 1);
+        sb.append("  ").append(duration(low)).append(" … ");
+        sb.append(last == octaves.length - 1 ? "" : duration(1L << last)).append('\n');
+    }
+
+    /**
+     * @param micros µs
+     * @return 単位付きの時間（µs・ms・s）
+     */
+    static String duration(long micros) {
+        if (micros < 1000) return micros + "µs";
+        if (micros < 1_000_000) return String.format(Locale.ROOT, "%.1fms", micros / 1e3);
+        return String.format(Locale.ROOT, "%.2fs", micros / 1e6);
+    }
+}
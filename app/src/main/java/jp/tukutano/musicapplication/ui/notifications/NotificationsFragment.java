@@ -1,26 +1,56 @@
 package jp.tukutano.musicapplication.ui.notifications;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.SeekBar;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.ViewModelProvider;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import jp.tukutano.musicapplication.databinding.FragmentNotificationsBinding;
+import jp.tukutano.musicapplication.db.SettingsStore;
+import jp.tukutano.musicapplication.dsp.EqPreset;
+import jp.tukutano.musicapplication.service.Crossfade;
+import jp.tukutano.musicapplication.service.MusicController;
+import jp.tukutano.musicapplication.util.Tracer;
 
 /**
  * NotificationsFragment
  * - 通知タブ用のフラグメント
- * - ViewModel からの文字列を TextView に表示
+ * - 再生エンジンの切り替え・クロスフェードの長さとカーブ・DSP（EQ・コンプレッサー・リミッター）の設定
+ * - パフォーマンス診断（読み込み・検索・曲の準備・曲間・DB・フレームの所要時間の分布）
+ *   表示中は 1 秒ごとに Metrics の記録を読み直す
  */
 public class NotificationsFragment extends Fragment {
 
+    // 診断表示の更新間隔
+    private static final long DIAGNOSTICS_REFRESH_MS = 1000;
+
     // ViewBinding の参照
     private FragmentNotificationsBinding binding;
+    // DSP の変更を再生中の曲へ反映するためのクライアント
+    private MusicController music;
+    private NotificationsViewModel viewModel;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable refreshDiagnostics = new Runnable() {
+        @Override
+        public void run() {
+            viewModel.refresh();
+            handler.postDelayed(this, DIAGNOSTICS_REFRESH_MS);
+        }
+    };
 
     /**
      * フラグメントのビュー生成
@@ -33,21 +63,148 @@ public class NotificationsFragment extends Fragment {
     public View onCreateView(@NonNull LayoutInflater inflater,
                              ViewGroup container, Bundle savedInstanceState) {
         // ViewModel の取得
-        NotificationsViewModel notificationsViewModel =
-                new ViewModelProvider(this).get(NotificationsViewModel.class);
+        viewModel = new ViewModelProvider(this).get(NotificationsViewModel.class);
 
         // ViewBinding の初期化
         binding = FragmentNotificationsBinding.inflate(inflater, container, false);
         View root = binding.getRoot();
 
-        // TextView の取得
-        final TextView textView = binding.textNotifications;
-        // LiveData を監視して更新
-        notificationsViewModel.getText().observe(getViewLifecycleOwner(), textView::setText);
+        // 診断表示
+        viewModel.getReport().observe(getViewLifecycleOwner(), binding.tvDiagnostics::setText);
+        binding.btnResetMetrics.setOnClickListener(v -> viewModel.reset());
+        binding.btnDumpTrace.setVisibility(Tracer.ENABLED ? View.VISIBLE : View.GONE);
+        binding.btnDumpTrace.setOnClickListener(v -> viewModel.dumpTrace(message -> {
+            if (isAdded()) Toast.makeText(requireContext(), message, Toast.LENGTH_SHORT).show();
+        }));
+
+        music = new MusicController(requireContext(), null);
+        setUpPlaybackSettings();
 
         return root;
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        refreshDiagnostics.run();
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        handler.removeCallbacks(refreshDiagnostics);
+        // DSP の変更時だけ接続するので、離れたら解除する
+        if (music != null) music.unbind();
+    }
+
+    /**
+     * DSP の設定変更を再生中の曲へ反映する
+     * 表示中の時だけ接続する（この画面を開いただけでは Service を起こさない。解除は onStop）
+     */
+    private void reloadDsp() {
+        if (!getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) return;
+        music.bind();
+        music.reloadDsp();
+    }
+
+    /**
+     * 再生設定（エンジン・クロスフェード・DSP）
+     * 設定の読み込み完了後に現在値を反映してから操作を受け付ける
+     */
+    private void setUpPlaybackSettings() {
+        SettingsStore settings = SettingsStore.getInstance(requireContext());
+        binding.switchCodecEngine.setEnabled(false);
+        binding.seekBarCrossfade.setEnabled(false);
+        binding.spinnerCrossfadeCurve.setEnabled(false);
+        binding.spinnerEqPreset.setEnabled(false);
+        binding.switchCompressor.setEnabled(false);
+        binding.switchLimiter.setEnabled(false);
+
+        // カーブの選択肢（並びは Crossfade.Curve の順）
+        List<String> curveLabels = new ArrayList<>();
+        for (Crossfade.Curve c : Crossfade.Curve.values()) curveLabels.add(c.label);
+        ArrayAdapter<String> curveAdapter = new ArrayAdapter<>(
+                requireContext(),
+                android.R.layout.simple_spinner_item,
+                curveLabels);
+        curveAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        binding.spinnerCrossfadeCurve.setAdapter(curveAdapter);
+
+        // EQ プリセットの選択肢（並びは EqPreset の順）
+        List<String> eqLabels = new ArrayList<>();
+        for (EqPreset p : EqPreset.values()) eqLabels.add(p.label);
+        ArrayAdapter<String> eqAdapter = new ArrayAdapter<>(
+                requireContext(),
+                android.R.layout.simple_spinner_item,
+                eqLabels);
+        eqAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        binding.spinnerEqPreset.setAdapter(eqAdapter);
+
+        settings.whenLoaded(() -> {
+            if (binding == null) return;
+            binding.switchCodecEngine.setChecked(
+                    settings.getBoolean(SettingsStore.KEY_CODEC_ENGINE, false));
+            int seconds = settings.getInt(SettingsStore.KEY_CROSSFADE_MS, 0) / 1000;
+            binding.seekBarCrossfade.setProgress(seconds);
+            showCrossfade(seconds);
+            binding.spinnerCrossfadeCurve.setSelection(Crossfade.of(0,
+                    settings.getInt(SettingsStore.KEY_CROSSFADE_CURVE, 0)).curve.ordinal());
+
+            binding.spinnerEqPreset.setSelection(
+                    EqPreset.of(settings.getInt(SettingsStore.KEY_EQ_PRESET, 0)).ordinal());
+            binding.switchCompressor.setChecked(settings.getBoolean(SettingsStore.KEY_COMPRESSOR, false));
+            binding.switchLimiter.setChecked(settings.getBoolean(SettingsStore.KEY_LIMITER, false));
+
+            binding.switchCodecEngine.setEnabled(true);
+            binding.seekBarCrossfade.setEnabled(true);
+            binding.spinnerCrossfadeCurve.setEnabled(true);
+            binding.spinnerEqPreset.setEnabled(true);
+            binding.switchCompressor.setEnabled(true);
+            binding.switchLimiter.setEnabled(true);
+            // 変更は次に曲を連結する時から反映される
+            binding.switchCodecEngine.setOnCheckedChangeListener((button, checked) ->
+                    settings.putBoolean(SettingsStore.KEY_CODEC_ENGINE, checked));
+            binding.seekBarCrossfade.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+                @Override
+                public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                    showCrossfade(progress);
+                    settings.putInt(SettingsStore.KEY_CROSSFADE_MS, progress * 1000);
+                }
+                @Override public void onStartTrackingTouch(SeekBar seekBar) {}
+                @Override public void onStopTrackingTouch(SeekBar seekBar) {}
+            });
+            binding.spinnerCrossfadeCurve.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+                @Override
+                public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
+                    settings.putInt(SettingsStore.KEY_CROSSFADE_CURVE, pos);
+                }
+                @Override public void onNothingSelected(AdapterView<?> parent) {}
+            });
+            // DSP は再生中の曲にもすぐ反映する
+            binding.spinnerEqPreset.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+                @Override
+                public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
+                    if (settings.getInt(SettingsStore.KEY_EQ_PRESET, 0) == pos) return;
+                    settings.putInt(SettingsStore.KEY_EQ_PRESET, pos);
+                    reloadDsp();
+                }
+                @Override public void onNothingSelected(AdapterView<?> parent) {}
+            });
+            binding.switchCompressor.setOnCheckedChangeListener((button, checked) -> {
+                settings.putBoolean(SettingsStore.KEY_COMPRESSOR, checked);
+                reloadDsp();
+            });
+            binding.switchLimiter.setOnCheckedChangeListener((button, checked) -> {
+                settings.putBoolean(SettingsStore.KEY_LIMITER, checked);
+                reloadDsp();
+            });
+        });
+    }
+
+    private void showCrossfade(int seconds) {
+        binding.tvCrossfade.setText(seconds == 0 ? "クロスフェード: なし" : "クロスフェード: " + seconds + " 秒");
+    }
+
     /**
      * ビュー破棄時にバインディングをクリアしてリークを防止
      */
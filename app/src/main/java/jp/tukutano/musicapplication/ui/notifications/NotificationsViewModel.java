@@ -1,19 +1,87 @@
 package jp.tukutano.musicapplication.ui.notifications;
 
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
 
-public class NotificationsViewModel extends ViewModel {
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import jp.tukutano.musicapplication.util.Metrics;
+import jp.tukutano.musicapplication.util.Tracer;
+
+/**
+ * 診断画面の ViewModel
+ * - Metrics の記録を表示用の文字列にして配る（refresh() を呼んだ時に更新）
+ * - トレースのファイル書き出しをワーカーで行う
+ */
+public class NotificationsViewModel extends AndroidViewModel {
+
+    private static final String TAG = "NotificationsViewModel";
+
+    private final MutableLiveData<String> report = new MutableLiveData<>();
+    // ファイル書き出し用ワーカー
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public NotificationsViewModel(@NonNull Application application) {
+        super(application);
+        refresh();
+    }
+
+    /**
+     * @return 計測値の表示文字列
+     */
+    public LiveData<String> getReport() {
+        return report;
+    }
 
-    private final MutableLiveData<String> mText;
+    /**
+     * 現在の記録で表示文字列を作り直す（UI スレッドから呼ぶ）
+     */
+    public void refresh() {
+        report.setValue(DiagnosticsFormatter.format());
+    }
+
+    /**
+     * 記録を消して表示を更新する
+     */
+    public void reset() {
+        Metrics.reset();
+        refresh();
+    }
 
-    public NotificationsViewModel() {
-        mText = new MutableLiveData<>();
-        mText.setValue("This is notifications fragment");
+    /**
+     * Tracer の記録をファイルへ書き出す
+     *
+     * @param onResult 結果メッセージの受け取り先（UI スレッドで呼ばれる）
+     */
+    public void dumpTrace(Consumer<String> onResult) {
+        executor.execute(() -> {
+            String message;
+            try {
+                File file = Tracer.dump(getApplication());
+                message = file != null ? "書き出しました: " + file.getName() : "トレースは無効です";
+            } catch (IOException e) {
+                Log.w(TAG, "トレースの書き出しに失敗", e);
+                message = "書き出しに失敗しました";
+            }
+            String result = message;
+            mainHandler.post(() -> onResult.accept(result));
+        });
     }
 
-    public LiveData<String> getText() {
-        return mText;
+    @Override
+    protected void onCleared() {
+        executor.shutdown();
     }
-}
\ No newline at end of file
+}
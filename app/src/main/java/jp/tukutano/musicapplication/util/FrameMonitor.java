@@ -0,0 +1,50 @@
+package jp.tukutano.musicapplication.util;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+/**
+ * ウィンドウの描画フレームを Metrics へ記録する
+ * - 全フレームの所要時間を Metric.FRAME、期限（DEADLINE）を超えたフレームの超過分を Metric.FRAME_DROP に入れる
+ * - 通知は専用スレッドで受け取る（UI スレッドの描画には割り込まない）
+ */
+public final class FrameMonitor implements Window.OnFrameMetricsAvailableListener {
+
+    private static Handler handler;
+
+    // 全ウィンドウで 1 本のスレッドを使い回す
+    private static synchronized Handler handler() {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread("FrameMonitor");
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+
+    /**
+     * 記録を始める（Activity の onCreate から呼ぶ）
+     */
+    public void attach(Window window) {
+        window.addOnFrameMetricsAvailableListener(this, handler());
+    }
+
+    /**
+     * 記録をやめる（Activity の onDestroy から呼ぶ）
+     */
+    public void detach(Window window) {
+        window.removeOnFrameMetricsAvailableListener(this);
+    }
+
+    @Override
+    public void onFrameMetricsAvailable(Window window, FrameMetrics frame, int dropCountSinceLastInvocation) {
+        // 画面を開いた直後の最初のフレームはレイアウト込みなので数えない
+        if (frame.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) return;
+        long totalNs = frame.getMetric(FrameMetrics.TOTAL_DURATION);
+        long deadlineNs = frame.getMetric(FrameMetrics.DEADLINE);
+        Metrics.record(Metric.FRAME, totalNs / 1000);
+        if (totalNs > deadlineNs) Metrics.record(Metric.FRAME_DROP, (totalNs - deadlineNs) / 1000);
+    }
+}
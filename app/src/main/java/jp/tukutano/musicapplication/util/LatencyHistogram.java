@@ -0,0 +1,151 @@
+package jp.tukutano.musicapplication.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定長・ロックなしの所要時間ヒストグラム（単位はマイクロ秒を想定）
+ * - 2 のべき乗ごとの区間を 16 等分した対数バケットに数える（相対誤差 1/16 以内）
+ * - record() はカウンタを増やすだけで、オブジェクトを作らない（どのスレッドからでも呼べる）
+ * - 読み取りは snapshot() で複製してから行う（記録中の値が混ざっても件数がずれるだけ）
+ */
+public final class LatencyHistogram {
+
+    // 1 区間あたりのバケット数（2^SUB_BITS）
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // これより大きい値は最後のバケットにまとめる（2^36µs ≒ 19 時間）
+    private static final int MAX_EXPONENT = 36;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 1 件記録する（負の値は 0 として数える）
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // 他のスレッドが更新した最大値と比べ直す
+        }
+    }
+
+    /**
+     * すべての記録を消す
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return 現在の記録の複製
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.get(), max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >> shift) & (SUB_COUNT - 1));
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int shift = bucket / SUB_COUNT - 1;
+        return (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int shift = bucket / SUB_COUNT - 1;
+        return lowerBound(bucket) + (1L << shift) - 1;
+    }
+
+    /**
+     * ある時点のヒストグラム（不変）
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        /** 件数 */
+        public final long count;
+        /** 合計 */
+        public final long sum;
+        /** 最大値 */
+        public final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return 平均（記録がなければ 0）
+         */
+        public long mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * @param q 0.0〜1.0（0.99 で p99）
+         * @return その順位の値が入るバケットの上端（最大値を超えない。記録がなければ 0）
+         */
+        public long percentile(double q) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(upperBound(i), max);
+            }
+            return max;
+        }
+
+        /**
+         * @param threshold しきい値
+         * @return しきい値より大きい記録のおおよその件数（しきい値を含むバケットは数えない）
+         */
+        public long countAbove(long threshold) {
+            long n = 0;
+            for (int i = counts.length - 1; i >= 0 && lowerBound(i) > threshold; i--) n += counts[i];
+            return n;
+        }
+
+        /**
+         * 2 のべき乗ごとにまとめた件数（表示用）
+         * [0] は 1 未満、[k] は 2^(k-1) 以上 2^k 未満
+         *
+         * @param octaves まとめる区間の数（これ以上の値は最後にまとめる）
+         */
+        public long[] octaves(int octaves) {
+            long[] out = new long[octaves];
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) continue;
+                long low = lowerBound(i);
+                int k = low == 0 ? 0 : 64 - Long.numberOfLeadingZeros(low);
+                out[Math.min(k, octaves - 1)] += counts[i];
+            }
+            return out;
+        }
+    }
+}
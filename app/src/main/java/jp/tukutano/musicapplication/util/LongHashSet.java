@@ -0,0 +1,139 @@
+package jp.tukutano.musicapplication.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * long 値のオープンアドレス法ハッシュセット
+ * - 要素ごとのオブジェクト（Long のボクシング）を作らず、contains は O(1)
+ * スレッドセーフではない
+ */
+public class LongHashSet {
+    // 空きスロットを表す値（0 自体は hasZero で別管理）
+    private static final long EMPTY = 0L;
+
+    private long[] table;
+    private int size;
+    private boolean hasZero;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    /**
+     * @param expected 想定要素数（再ハッシュを避けるための初期容量）
+     */
+    public LongHashSet(int expected) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expected) capacity <<= 1;
+        table = new long[capacity];
+    }
+
+    /**
+     * @return 要素数
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) return hasZero;
+        int mask = table.length - 1;
+        for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+            long v = table[i];
+            if (v == EMPTY) return false;
+            if (v == value) return true;
+        }
+    }
+
+    /**
+     * @return 追加された場合 true（既に含まれていたら false）
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (hasZero) return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        if ((size + 1) * 4 > table.length * 3) rehash(table.length << 1);
+        int mask = table.length - 1;
+        for (int i = hash(value) & mask; ; i = (i + 1) & mask) {
+            long v = table[i];
+            if (v == value) return false;
+            if (v == EMPTY) {
+                table[i] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return 削除された場合 true
+     */
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!hasZero) return false;
+            hasZero = false;
+            size--;
+            return true;
+        }
+        int mask = table.length - 1;
+        int i = hash(value) & mask;
+        while (table[i] != value) {
+            if (table[i] == EMPTY) return false;
+            i = (i + 1) & mask;
+        }
+        // 後続のクラスタを詰め直して探索の連続性を保つ（墓標を使わない削除）
+        int gap = i;
+        for (int j = (i + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+            int home = hash(table[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                table[gap] = table[j];
+                gap = j;
+            }
+        }
+        table[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    /**
+     * 全要素を順不同で列挙する
+     */
+    public void forEach(LongConsumer action) {
+        if (hasZero) action.accept(EMPTY);
+        for (long v : table) {
+            if (v != EMPTY) action.accept(v);
+        }
+    }
+
+    /**
+     * @return 同じ要素を持つ独立したコピー
+     */
+    public LongHashSet copy() {
+        LongHashSet c = new LongHashSet(0);
+        c.table = Arrays.copyOf(table, table.length);
+        c.size = size;
+        c.hasZero = hasZero;
+        return c;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = table;
+        table = new long[capacity];
+        int mask = capacity - 1;
+        for (long v : old) {
+            if (v == EMPTY) continue;
+            int i = hash(v) & mask;
+            while (table[i] != EMPTY) i = (i + 1) & mask;
+            table[i] = v;
+        }
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
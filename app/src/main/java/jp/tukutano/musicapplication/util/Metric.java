@@ -0,0 +1,28 @@
+package jp.tukutano.musicapplication.util;
+
+/**
+ * Metrics で集計する項目（値の単位はすべてマイクロ秒）
+ */
+public enum Metric {
+    /** ライブラリの読み込み・同期の開始から完了まで */
+    LIBRARY_SCAN("ライブラリ読み込み"),
+    /** 検索・絞り込み 1 回（打ち切った分は除く） */
+    SEARCH("検索"),
+    /** 曲の準備（prepareAsync から準備完了まで） */
+    PREPARE("曲の準備"),
+    /** 前の曲の終了から次の曲の開始まで */
+    TRACK_GAP("曲間の無音"),
+    /** DB の読み込みクエリ 1 回（AppDatabase.queryAsync） */
+    DB_QUERY("DB クエリ"),
+    /** 描画した全フレームの所要時間 */
+    FRAME("フレーム時間"),
+    /** 期限に間に合わなかったフレームの超過時間（件数 = 落ちたフレーム数） */
+    FRAME_DROP("フレーム落ち");
+
+    /** 表示名 */
+    public final String label;
+
+    Metric(String label) {
+        this.label = label;
+    }
+}
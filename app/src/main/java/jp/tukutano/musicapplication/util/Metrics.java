@@ -0,0 +1,52 @@
+package jp.tukutano.musicapplication.util;
+
+/**
+ * プロセス共通の計測値レジストリ
+ * - Metric ごとに LatencyHistogram を 1 つ持ち、Service・画面・DB から所要時間を書き込む
+ * - 書き込みはカウンタを増やすだけなので、リリースビルドでも常に有効（診断画面で確認する）
+ */
+public final class Metrics {
+
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[Metric.values().length];
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) HISTOGRAMS[i] = new LatencyHistogram();
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * 所要時間を記録する（どのスレッドからでも呼べる）
+     *
+     * @param metric 項目
+     * @param micros 所要時間（µs）
+     */
+    public static void record(Metric metric, long micros) {
+        HISTOGRAMS[metric.ordinal()].record(micros);
+    }
+
+    /**
+     * 開始時刻から今までの時間を記録する
+     *
+     * @param metric  項目
+     * @param startNs 開始時刻（System.nanoTime）
+     */
+    public static void since(Metric metric, long startNs) {
+        record(metric, (System.nanoTime() - startNs) / 1000);
+    }
+
+    /**
+     * @return 項目の現在の記録
+     */
+    public static LatencyHistogram.Snapshot snapshot(Metric metric) {
+        return HISTOGRAMS[metric.ordinal()].snapshot();
+    }
+
+    /**
+     * すべての項目の記録を消す
+     */
+    public static void reset() {
+        for (LatencyHistogram h : HISTOGRAMS) h.reset();
+    }
+}
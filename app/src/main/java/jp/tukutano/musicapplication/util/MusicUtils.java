@@ -17,50 +17,64 @@ import jp.tukutano.musicapplication.model.Song;
  */
 public class MusicUtils {
 
+    // 取得したいカラム
+    static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.ALBUM,
+            MediaStore.Audio.Media.DURATION
+    };
+    static final String SORT_ORDER = MediaStore.Audio.Media.DATE_ADDED + " DESC";
+
     /**
-     * ストレージから全オーディオファイルのリストを取得する
+     * 走査対象のボリューム名を返す
+     * Android 10+ では VOLUME 外部／内部を使い分け、Android 9 以下では従来の CONTENT_URI を使用
      *
-     * @param context コンテキスト
-     * @return Song オブジェクトのリスト
+     * @return ボリューム名（Android 9 以下は collection URI 文字列）の配列
      */
-    public static List<Song> loadAllAudio(Context context) {
-        List<Song> songs = new ArrayList<>();
-
-        // Android 10+ では VOLUME 外部／内部を使い分け、Android 9 以下では従来の CONTENT_URI を使用
-        String[] volumes;
+    public static String[] audioVolumes() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            volumes = new String[]{
+            return new String[]{
                     MediaStore.VOLUME_EXTERNAL_PRIMARY,
                     MediaStore.VOLUME_INTERNAL
             };
         } else {
-            volumes = new String[]{
+            return new String[]{
                     MediaStore.Audio.Media.EXTERNAL_CONTENT_URI.toString(),
                     MediaStore.Audio.Media.INTERNAL_CONTENT_URI.toString()
             };
         }
+    }
 
-        // 取得したいカラム
-        String[] projection = {
-                MediaStore.Audio.Media._ID,
-                MediaStore.Audio.Media.TITLE,
-                MediaStore.Audio.Media.ARTIST,
-                MediaStore.Audio.Media.ALBUM,
-                MediaStore.Audio.Media.DURATION
-        };
-        String sortOrder = MediaStore.Audio.Media.DATE_ADDED + " DESC";
+    /**
+     * ボリュームごとに適切な collection URI を生成
+     *
+     * @param vol audioVolumes() が返すボリューム名
+     * @return オーディオの collection URI
+     */
+    public static Uri audioCollection(String vol) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return MediaStore.Audio.Media.getContentUri(vol);
+        } else {
+            return Uri.parse(vol);
+        }
+    }
 
-        for (String vol : volumes) {
-            // ボリュームごとに適切な collection URI を生成
-            Uri collection;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                collection = MediaStore.Audio.Media.getContentUri(vol);
-            } else {
-                collection = Uri.parse(vol);
-            }
+    /**
+     * ストレージから全オーディオファイルのリストを取得する
+     *
+     * @param context コンテキスト
+     * @return Song オブジェクトのリスト
+     */
+    public static List<Song> loadAllAudio(Context context) {
+        List<Song> songs = new ArrayList<>();
+
+        for (String vol : audioVolumes()) {
+            Uri collection = audioCollection(vol);
 
             try (Cursor cursor = context.getContentResolver()
-                    .query(collection, projection, null, null, sortOrder)) {
+                    .query(collection, PROJECTION, null, null, SORT_ORDER)) {
                 if (cursor == null) continue;
 
                 int idCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
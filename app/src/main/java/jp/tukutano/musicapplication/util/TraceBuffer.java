@@ -0,0 +1,101 @@
+package jp.tukutano.musicapplication.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定長・ロックなしのトレース記録用リングバッファ
+ * - put() は通し番号を 1 つ取って枠に書くだけで、オブジェクトを作らない（どのスレッドからでも呼べる）
+ * - 満杯になると古い記録から上書きする
+ * - 枠ごとに「書き終えた通し番号」を持ち、読み取り中に書き換えられた枠は読み飛ばす（seqlock）
+ */
+public final class TraceBuffer {
+
+    /**
+     * 記録の受け取り先
+     */
+    public interface Visitor {
+        /**
+         * @param seq      通し番号（0 から）
+         * @param timeNs   記録時刻（System.nanoTime）
+         * @param event    イベント ID
+         * @param arg      イベントの引数
+         * @param threadId 記録したスレッドの ID
+         */
+        void visit(long seq, long timeNs, int event, long arg, long threadId);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    // 枠ごとの「書き終えた通し番号 + 1」（0 は空き・書き込み中）
+    private final AtomicLongArray published;
+    private final AtomicLongArray times;
+    private final AtomicIntegerArray events;
+    private final AtomicLongArray args;
+    private final AtomicLongArray threads;
+
+    /**
+     * @param capacity 保持する記録数（2 のべき乗）
+     */
+    public TraceBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity は 2 のべき乗: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        published = new AtomicLongArray(capacity);
+        times = new AtomicLongArray(capacity);
+        events = new AtomicIntegerArray(capacity);
+        args = new AtomicLongArray(capacity);
+        threads = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * 1 件記録する
+     */
+    public void put(int event, long arg, long timeNs, long threadId) {
+        long seq = next.getAndIncrement();
+        int i = (int) seq & mask;
+        published.set(i, 0);
+        times.lazySet(i, timeNs);
+        events.lazySet(i, event);
+        args.lazySet(i, arg);
+        threads.lazySet(i, threadId);
+        published.lazySet(i, seq + 1);
+    }
+
+    /**
+     * 残っている記録を古い順に渡す（書き込み中・読み取り中に上書きされた記録は除く）
+     *
+     * @return 渡した件数
+     */
+    public int forEach(Visitor visitor) {
+        long end = next.get();
+        int count = 0;
+        for (long seq = Math.max(0, end - capacity); seq < end; seq++) {
+            int i = (int) seq & mask;
+            if (published.get(i) != seq + 1) continue;
+            long time = times.get(i);
+            int event = events.get(i);
+            long arg = args.get(i);
+            long thread = threads.get(i);
+            if (published.get(i) != seq + 1) continue;
+            visitor.visit(seq, time, event, arg, thread);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return これまでに記録された件数（上書きされた分を含む）
+     */
+    public long recorded() {
+        return next.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
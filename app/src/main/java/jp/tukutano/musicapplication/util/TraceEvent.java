@@ -0,0 +1,30 @@
+package jp.tukutano.musicapplication.util;
+
+/**
+ * Tracer に記録するイベント（ordinal がイベント ID。記録時には名前を作らない）
+ * 引数（arg）の意味はイベントごとに決まっている
+ */
+public enum TraceEvent {
+    /** ホーム画面のビュー生成 */
+    HOME_CREATE_VIEW,
+    /** ダッシュボード画面のビュー生成 */
+    DASHBOARD_CREATE_VIEW,
+    /** ライブラリ読み込みの開始（キャッシュ → 差分同期） */
+    LIBRARY_LOAD_BEGIN,
+    /** MediaStore との差分同期だけの開始 */
+    LIBRARY_SYNC_BEGIN,
+    /** ライブラリ読み込み・同期の完了（arg: 曲数） */
+    LIBRARY_LOAD_END,
+    /** 絞り込みの開始（arg: 対象の曲数） */
+    SEARCH_BEGIN,
+    /** 絞り込みの完了（arg: 結果の曲数。打ち切りは -1） */
+    SEARCH_END,
+    /** 再生する曲の準備開始（arg: キュー上のインデックス） */
+    TRACK_PREPARE,
+    /** 再生する曲の準備完了（arg: キュー上のインデックス） */
+    TRACK_PREPARED,
+    /** 曲間の無音（arg: µs） */
+    TRACK_GAP,
+    /** プレイヤーのエラー（arg: what） */
+    TRACK_ERROR,
+}
@@ -0,0 +1,102 @@
+package jp.tukutano.musicapplication.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import jp.tukutano.musicapplication.BuildConfig;
+
+/**
+ * 低オーバーヘッドのイベントトレーサー
+ * - 事前に定義したイベント（TraceEvent）と時刻・引数を TraceBuffer へ記録する
+ *   スタックトレースの取得やログ文字列の組み立てをしないので、onCreateView や再生スレッドからでも呼べる
+ * - dump() で記録をアプリ専用領域のテキストファイルへ書き出す
+ * - リリースビルドでは ENABLED が定数 false になり、record() は何もしない（バッファも確保しない）
+ */
+public final class Tracer {
+
+    private static final String TAG = "Tracer";
+
+    /** トレースを記録するビルドか（コンパイル時定数） */
+    public static final boolean ENABLED = BuildConfig.TRACING;
+
+    // 保持する記録数（古い記録から上書き）
+    private static final int CAPACITY = 8192;
+
+    private static final TraceEvent[] EVENTS = TraceEvent.values();
+
+    private Tracer() {
+    }
+
+    // 初めて記録する時に確保する
+    private static final class Holder {
+        static final TraceBuffer BUFFER = new TraceBuffer(CAPACITY);
+    }
+
+    /**
+     * イベントを記録する（どのスレッドからでも呼べる）
+     */
+    public static void record(TraceEvent event) {
+        if (!ENABLED) return;
+        Holder.BUFFER.put(event.ordinal(), 0, System.nanoTime(), Thread.currentThread().getId());
+    }
+
+    /**
+     * 引数付きでイベントを記録する（引数の意味は TraceEvent を参照）
+     */
+    public static void record(TraceEvent event, long arg) {
+        if (!ENABLED) return;
+        Holder.BUFFER.put(event.ordinal(), arg, System.nanoTime(), Thread.currentThread().getId());
+    }
+
+    /**
+     * 残っている記録を files/traces/trace-<時刻>.txt へ書き出す
+     * 1 行 1 記録で「通し番号・最初の記録からの経過 ms・スレッド ID・イベント名・引数」をタブ区切りで出す
+     *
+     * @param context コンテキスト
+     * @return 書き出したファイル（トレース無効のビルドでは null）
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public static File dump(Context context) throws IOException {
+        if (!ENABLED) return null;
+        File dir = new File(context.getFilesDir(), "traces");
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("作成できない: " + dir);
+        File file = new File(dir, "trace-" + System.currentTimeMillis() + ".txt");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            write(Holder.BUFFER, out);
+        }
+        Log.d(TAG, "トレースを書き出し: " + file);
+        return file;
+    }
+
+    /**
+     * 記録をテキストにする
+     */
+    private static void write(TraceBuffer buffer, Writer out) throws IOException {
+        out.write("# recorded=" + buffer.recorded() + " capacity=" + buffer.capacity() + "\n");
+        out.write("# seq\tms\tthread\tevent\targ\n");
+        long[] origin = {-1};
+        IOException[] error = new IOException[1];
+        buffer.forEach((seq, timeNs, event, arg, threadId) -> {
+            if (error[0] != null) return;
+            if (origin[0] < 0) origin[0] = timeNs;
+            String name = event >= 0 && event < EVENTS.length ? EVENTS[event].name() : "#" + event;
+            try {
+                out.write(String.format(Locale.ROOT, "%d\t%.3f\t%d\t%s\t%d\n",
+                        seq, (timeNs - origin[0]) / 1e6, threadId, name, arg));
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) throw error[0];
+    }
+}
@@ -0,0 +1,42 @@
+package jp.tukutano.musicapplication;
+
+import android.content.Context;
+
+import jp.tukutano.musicapplication.db.SettingsStore;
+import jp.tukutano.musicapplication.library.ArtworkCache;
+import jp.tukutano.musicapplication.library.LibraryRepository;
+import jp.tukutano.musicapplication.library.LoudnessScanner;
+
+/**
+ * プロセス共通のインスタンス（AppDatabase・LibraryRepository など）をテストごとに作り直す
+ * Robolectric は同じ設定のテストクラス間で static フィールドを引き継ぐため、@Before / @After で呼ぶ
+ */
+public final class TestSingletons {
+
+    private TestSingletons() {
+    }
+
+    /**
+     * すべて破棄し、getInstance() がメモリ上の AppDatabase を返すようにする
+     *
+     * @param context コンテキスト
+     * @return 新しいメモリ上の DB
+     */
+    public static AppDatabase useInMemoryDatabase(Context context) {
+        reset();
+        AppDatabase db = AppDatabase.createInMemory(context);
+        AppDatabase.setInstanceForTesting(db);
+        return db;
+    }
+
+    /**
+     * すべて破棄する（DB は閉じる）。DB を使う側から先に破棄する
+     */
+    public static void reset() {
+        LibraryRepository.resetForTesting();
+        LoudnessScanner.resetForTesting();
+        SettingsStore.resetForTesting();
+        ArtworkCache.resetForTesting();
+        AppDatabase.setInstanceForTesting(null);
+    }
+}
@@ -0,0 +1,106 @@
+package jp.tukutano.musicapplication.dsp;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * DspChain のローカルユニットテスト
+ */
+public class DspChainTest {
+
+    /** 固定の倍率を掛ける段 */
+    private static final class Gain implements DspStage {
+        final float gain;
+        boolean prepared;
+
+        Gain(float gain) {
+            this.gain = gain;
+        }
+
+        @Override
+        public void prepare(int sampleRate, int channels) {
+            prepared = true;
+        }
+
+        @Override
+        public void process(float[] buf, int frames) {
+            for (int i = 0; i < frames * 2; i++) buf[i] *= gain;
+        }
+    }
+
+    private static float[] ones(int samples) {
+        float[] buf = new float[samples];
+        java.util.Arrays.fill(buf, 1f);
+        return buf;
+    }
+
+    @Test
+    public void emptyChainPassesThrough() {
+        DspChain chain = new DspChain(48_000, 2, 256);
+        float[] buf = ones(256);
+        chain.process(buf, 128);
+        assertArrayEquals(ones(256), buf, 0f);
+    }
+
+    @Test
+    public void setStagesPreparesAndCrossfadesOverOneBlock() {
+        DspChain chain = new DspChain(48_000, 2, 256);
+        Gain half = new Gain(0.5f);
+        chain.setStages(half);
+        assertTrue(half.prepared);
+
+        // 差し替えたブロックは素通し → 0.5 へ直線的に移る
+        float[] buf = ones(256);
+        chain.process(buf, 128);
+        assertEquals(1f - 0.5f / 128, buf[0], 1e-6);
+        assertEquals(buf[0], buf[1], 0f);
+        assertEquals(0.75f, buf[127], 0.01f);
+        assertEquals(0.5f, buf[254], 1e-6);
+        // 次のブロックからは新チェーンだけ
+        buf = ones(256);
+        chain.process(buf, 128);
+        assertArrayEquals(ones(256), scale(buf, 2f), 1e-6f);
+    }
+
+    private static float[] scale(float[] buf, float k) {
+        for (int i = 0; i < buf.length; i++) buf[i] *= k;
+        return buf;
+    }
+
+    @Test
+    public void processDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long id = Thread.currentThread().getId();
+
+        DspChain chain = new DspChain(48_000, 2, 2048);
+        chain.setStages(new DspConfig(EqPreset.WIND, true, true).createStages());
+        float[] buf = new float[2048];
+        // JIT が落ち着くまで回す
+        for (int i = 0; i < 20_000; i++) {
+            buf[i % buf.length] = (float) Math.sin(i);
+            chain.process(buf, 1024);
+        }
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 1_000; i++) chain.process(buf, 1024);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertEquals("allocated bytes", 0, allocated);
+    }
+
+    @Test
+    public void configEqualityAndStages() {
+        assertTrue(DspConfig.OFF.isOff());
+        assertEquals(0, DspConfig.OFF.createStages().length);
+        assertEquals(new DspConfig(EqPreset.BASS, true, false), new DspConfig(EqPreset.BASS, true, false));
+        // コンプレッサーを使う時はリミッターも入る
+        DspStage[] stages = new DspConfig(EqPreset.FLAT, true, false).createStages();
+        assertEquals(2, stages.length);
+        assertTrue(stages[1] instanceof Limiter);
+        assertEquals(EqPreset.FLAT, EqPreset.of(99));
+    }
+}
@@ -0,0 +1,123 @@
+package jp.tukutano.musicapplication.dsp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * ParametricEq / Compressor / Limiter のローカルユニットテスト
+ */
+public class DspStagesTest {
+
+    private static final int RATE = 48_000;
+
+    /** ステレオの正弦波（両チャンネル同じ） */
+    private static float[] sine(double freq, double amplitude, int frames) {
+        float[] buf = new float[frames * 2];
+        for (int f = 0; f < frames; f++) {
+            float v = (float) (amplitude * Math.sin(2 * Math.PI * freq * f / RATE));
+            buf[2 * f] = v;
+            buf[2 * f + 1] = v;
+        }
+        return buf;
+    }
+
+    /** ステレオの矩形波（絶対値が常に amplitude） */
+    private static float[] square(double amplitude, int frames) {
+        float[] buf = new float[frames * 2];
+        for (int f = 0; f < frames; f++) {
+            float v = (float) ((f / 24) % 2 == 0 ? amplitude : -amplitude);
+            buf[2 * f] = v;
+            buf[2 * f + 1] = v;
+        }
+        return buf;
+    }
+
+    /** 後半（過渡応答が収まった部分）の RMS（dB） */
+    private static double tailLevelDb(float[] buf) {
+        double sum = 0;
+        for (int i = buf.length / 2; i < buf.length; i++) sum += (double) buf[i] * buf[i];
+        return 10 * Math.log10(sum / (buf.length - buf.length / 2));
+    }
+
+    private static double gainDb(DspStage stage, float[] buf) {
+        double in = tailLevelDb(buf);
+        stage.prepare(RATE, 2);
+        stage.process(buf, buf.length / 2);
+        return tailLevelDb(buf) - in;
+    }
+
+    private static double gainDb(DspStage stage, double freq, double amplitude) {
+        return gainDb(stage, sine(freq, amplitude, RATE / 2));
+    }
+
+    @Test
+    public void eqPeakBoostsCenterFrequencyOnly() {
+        ParametricEq.Band band = new ParametricEq.Band(ParametricEq.Type.PEAK, 1000f, 6f, 1f);
+        assertEquals(6.0, gainDb(new ParametricEq(band), 1000, 0.25), 0.1);
+        assertEquals(0.0, gainDb(new ParametricEq(band), 50, 0.25), 0.2);
+        assertEquals(0.0, gainDb(new ParametricEq(band), 15000, 0.25), 0.2);
+    }
+
+    @Test
+    public void eqShelvesAndHighPassShapeTheEnds() {
+        ParametricEq low = new ParametricEq(new ParametricEq.Band(ParametricEq.Type.LOW_SHELF, 200f, -6f, 0.707f));
+        assertEquals(-6.0, gainDb(low, 30, 0.25), 0.3);
+        ParametricEq high = new ParametricEq(new ParametricEq.Band(ParametricEq.Type.HIGH_SHELF, 4000f, 4f, 0.707f));
+        assertEquals(4.0, gainDb(high, 16000, 0.25), 0.3);
+        ParametricEq hp = new ParametricEq(new ParametricEq.Band(ParametricEq.Type.HIGH_PASS, 120f, 0f, 0.707f));
+        assertTrue(gainDb(hp, 30, 0.25) < -20);
+        assertEquals(0.0, gainDb(hp, 2000, 0.25), 0.1);
+    }
+
+    @Test
+    public void compressorFollowsStaticCurve() {
+        Compressor comp = new Compressor(-20f, 4f, 0f, 1f, 50f, 0f);
+        assertEquals(0f, comp.reduction(-30f), 0f);
+        assertEquals(7.5f, comp.reduction(-10f), 1e-4f);
+        // -6 dBFS の入力は 14 dB 超過 → 10.5 dB 圧縮
+        assertEquals(-10.5, gainDb(comp, square(0.5, RATE / 2)), 0.1);
+        // しきい値未満はメイクアップだけ掛かる
+        Compressor makeup = new Compressor(-20f, 4f, 0f, 1f, 50f, 6f);
+        assertEquals(6.0, gainDb(makeup, 1000, 0.01), 0.1);
+    }
+
+    @Test
+    public void compressorSoftKneeIsContinuous() {
+        Compressor comp = new Compressor(-20f, 3f, 10f, 1f, 50f, 0f);
+        assertEquals(0f, comp.reduction(-25f), 1e-5f);
+        assertEquals(comp.reduction(-15.001f), comp.reduction(-14.999f), 0.01f);
+        assertTrue(comp.reduction(-20f) > 0f);
+    }
+
+    @Test
+    public void limiterNeverExceedsCeiling() {
+        Limiter limiter = new Limiter(-1f, 5f, 80f);
+        limiter.prepare(RATE, 2);
+        float ceiling = (float) Math.pow(10, -1 / 20.0);
+        // 静かな区間の後に突然の大音量（先読みでクリップせずに下げる）
+        float[] buf = sine(440, 0.1, RATE / 4);
+        float[] loud = sine(440, 2.0, RATE / 4);
+        System.arraycopy(loud, 0, buf, buf.length / 2, buf.length / 2);
+        float max = 0f;
+        for (int off = 0; off < buf.length; off += 960) {
+            float[] block = new float[960];
+            System.arraycopy(buf, off, block, 0, 960);
+            limiter.process(block, 480);
+            for (float v : block) max = Math.max(max, Math.abs(v));
+        }
+        assertTrue("max=" + max, max <= ceiling + 1e-6f);
+        assertTrue("max=" + max, max > ceiling * 0.9f);
+    }
+
+    @Test
+    public void limiterPassesQuietSignalDelayed() {
+        Limiter limiter = new Limiter(-1f, 1f, 80f);
+        limiter.prepare(RATE, 2);
+        int delay = limiter.latencyFrames();
+        float[] buf = sine(440, 0.5, 1000);
+        float[] in = buf.clone();
+        limiter.process(buf, 1000);
+        for (int f = delay; f < 1000; f++) assertEquals(in[2 * (f - delay)], buf[2 * f], 1e-6);
+    }
+}
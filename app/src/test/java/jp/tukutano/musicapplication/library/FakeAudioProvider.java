@@ -0,0 +1,211 @@
+package jp.tukutano.musicapplication.library;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Intent;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.MediaStore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.robolectric.Robolectric;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * テスト用の MediaStore（authority "media"）
+ * - 外部ボリュームに指定した曲数の合成行を返す（内部ボリュームは空）
+ * - 行は保持せず、カーソルの位置から値を計算する（10 万曲でもメモリを使わない）
+ * - _ID・DATE_ADDED・GENERATION_MODIFIED は 1〜count の同じ値で、DATE_ADDED の新しい順に並ぶ
+ * - MediaStore.getVersion / getGeneration の call() と、GENERATION_MODIFIED > ? の条件に応える
+ */
+public class FakeAudioProvider extends ContentProvider {
+
+    public static final String VERSION = "fake-media-1";
+
+    private static final String[] WORDS = {
+            "love", "night", "road", "wind", "summer", "rain", "blue", "heart", "city", "light",
+            "夜", "風", "海", "空", "ドライブ", "ハイウェイ",
+    };
+    private static final Pattern GENERATION_SELECTION =
+            Pattern.compile(MediaStore.Audio.Media.GENERATION_MODIFIED + "\\s*>\\s*\\?");
+
+    private static volatile int count;
+
+    /**
+     * プロバイダを登録する（Robolectric のテスト中に呼ぶ）
+     *
+     * @param rows 外部ボリュームの曲数
+     */
+    public static void register(int rows) {
+        count = rows;
+        Robolectric.setupContentProvider(FakeAudioProvider.class, MediaStore.AUTHORITY);
+    }
+
+    /** 行の曲名（_ID から決まる） */
+    public static String title(long id) {
+        return WORDS[(int) (id % WORDS.length)] + " " + WORDS[(int) (id * 7 % WORDS.length)] + " " + id;
+    }
+
+    /** 行のアーティスト名（40 曲ごとに 1 人） */
+    public static String artist(long id) {
+        return "Artist " + id / 40;
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        String volume = extras != null ? extras.getString(Intent.EXTRA_TEXT) : null;
+        boolean external = !MediaStore.VOLUME_INTERNAL.equals(volume);
+        Bundle out = new Bundle();
+        switch (method) {
+            case "get_version":
+                out.putString(Intent.EXTRA_TEXT, VERSION);
+                return out;
+            case "get_generation":
+                out.putLong(Intent.EXTRA_INDEX, external ? count : 0);
+                return out;
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        String volume = uri.getPathSegments().get(0);
+        if (MediaStore.VOLUME_INTERNAL.equals(volume)) {
+            return new SyntheticCursor(projection, 0, 0);
+        }
+        long after = 0;
+        if (selection != null) {
+            Matcher m = GENERATION_SELECTION.matcher(selection);
+            if (!m.matches() || selectionArgs == null) {
+                throw new IllegalArgumentException("未対応の条件: " + selection);
+            }
+            after = Long.parseLong(selectionArgs[0]);
+        }
+        return new SyntheticCursor(projection, count, after);
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * _ID が newest から after+1 まで降順に並ぶカーソル
+     */
+    private static final class SyntheticCursor extends AbstractCursor {
+        private final String[] columns;
+        private final long newest;
+        private final int rows;
+
+        SyntheticCursor(@Nullable String[] projection, long newest, long after) {
+            this.columns = projection != null ? projection : new String[]{MediaStore.Audio.Media._ID};
+            this.newest = newest;
+            this.rows = (int) Math.max(0, newest - after);
+        }
+
+        private long id() {
+            return newest - getPosition();
+        }
+
+        @Override
+        public int getCount() {
+            return rows;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return columns;
+        }
+
+        @Override
+        public String getString(int column) {
+            long id = id();
+            switch (columns[column]) {
+                case MediaStore.Audio.Media.TITLE:
+                    return title(id);
+                case MediaStore.Audio.Media.ARTIST:
+                    return artist(id);
+                case MediaStore.Audio.Media.ALBUM:
+                    return "Album " + id / 10;
+                default:
+                    return String.valueOf(getLong(column));
+            }
+        }
+
+        @Override
+        public long getLong(int column) {
+            long id = id();
+            switch (columns[column]) {
+                case MediaStore.Audio.Media.DURATION:
+                    return 120_000 + id % 240_000;
+                case MediaStore.Audio.Media.ALBUM_ID:
+                    return id / 10;
+                case MediaStore.Audio.Media._ID:
+                case MediaStore.Audio.Media.DATE_ADDED:
+                case MediaStore.Audio.Media.DATE_MODIFIED:
+                case MediaStore.Audio.Media.GENERATION_MODIFIED:
+                    return id;
+                default:
+                    throw new IllegalArgumentException("未対応の列: " + columns[column]);
+            }
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return getLong(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return false;
+        }
+    }
+}
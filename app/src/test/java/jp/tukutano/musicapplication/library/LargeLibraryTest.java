@@ -0,0 +1,224 @@
+package jp.tukutano.musicapplication.library;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import jp.tukutano.musicapplication.AppDatabase;
+import jp.tukutano.musicapplication.TestSingletons;
+import jp.tukutano.musicapplication.model.Song;
+import jp.tukutano.musicapplication.ui.dashboard.SongFilter;
+import jp.tukutano.musicapplication.util.MusicUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * 実運用規模のライブラリでのスキャン・同期・絞り込み・お気に入り登録（Robolectric）
+ * - MediaStore は FakeAudioProvider、DB はメモリ上の AppDatabase
+ * - 曲数は -PlibraryRows=...（既定 10 万曲）。時間・割り当て量は 1 曲あたりの予算で判定し、
+ *   超えたらテスト（ビルド）を失敗させる
+ * - 通常の test では 1 万曲・予算 3 倍で実行する（-PlargeLibrary で 10 万曲・予算どおり。app/build.gradle 参照）
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LargeLibraryTest {
+
+    private static final int ROWS = Integer.getInteger("bikemusic.libraryRows", 100_000);
+    // 予算の倍率（曲数を減らした通常の test では、固定の手間の分だけ 1 曲あたりが重くなるので緩める）
+    private static final long BUDGET_SCALE = Integer.getInteger("bikemusic.budgetScale", 1);
+
+    // MediaStore のスキャン（MusicUtils.loadAllAudio）: 1 曲 20µs・2KB まで
+    private static final long SCAN_NS_PER_ROW = 20_000;
+    private static final long SCAN_BYTES_PER_ROW = 2_048;
+    // 初回の全件同期（キャッシュ書き込み込み）: 1 曲 100µs まで
+    private static final long SYNC_NS_PER_ROW = 100_000;
+    // 変更なしの再同期（_ID の突き合わせのみ）: 1 曲 10µs まで
+    private static final long RESYNC_NS_PER_ROW = 10_000;
+    // インデックスを使った絞り込み 1 回（前回結果なし）
+    private static final long FILTER_BUDGET_MS = 100;
+    // 1 文字ずつ入力した場合の 1 文字分（前回結果の絞り込み）
+    private static final long TYPING_BUDGET_MS = 50;
+    // JIT の分を除くための先読みに使う語（測る語とは別にする）
+    private static final String[] WARM_UP_QUERIES = {"wind", "海", "3", "qqq"};
+    // お気に入り登録/解除 1 回（DB 書き込み込み）
+    private static final long FAVORITE_TOGGLE_BUDGET_US = 5_000;
+    private static final int FAVORITE_TOGGLES = 1_000;
+
+    private Context context;
+    private AppDatabase db;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        FakeAudioProvider.register(ROWS);
+        db = TestSingletons.useInMemoryDatabase(context);
+    }
+
+    @After
+    public void tearDown() {
+        TestSingletons.reset();
+    }
+
+    /** このスレッドがこれまでに割り当てたバイト数（取得できない JVM では -1） */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * InvalidationTracker による読み直し（別スレッド）が落ち着くまで待つ
+     */
+    private static void awaitTrue(String what, BooleanSupplier condition) {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail(what);
+            try {
+                // Robolectric の SystemClock.sleep は実時間を待たない
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static void assertWithin(String what, long actual, long budget, String unit) {
+        budget *= BUDGET_SCALE;
+        assertTrue(what + ": " + actual + unit + "（予算 " + budget + unit + "）", actual <= budget);
+    }
+
+    @Test
+    public void scanLoadsEveryRowWithinBudget() {
+        // 初回のクラス読み込み・JIT の分を除くため少しだけ先に読む
+        FakeAudioProvider.register(1_000);
+        MusicUtils.loadAllAudio(context);
+        FakeAudioProvider.register(ROWS);
+
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        List<Song> songs = MusicUtils.loadAllAudio(context);
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+
+        assertEquals(ROWS, songs.size());
+        // DATE_ADDED の新しい順
+        assertEquals(String.valueOf(ROWS), songs.get(0).getId());
+        assertEquals(FakeAudioProvider.title(ROWS), songs.get(0).getTitle());
+        assertWithin("スキャン時間", elapsed / 1_000_000, SCAN_NS_PER_ROW * ROWS / 1_000_000, "ms");
+        if (bytesBefore >= 0) {
+            assertWithin("スキャンの割り当て量/曲", bytes / ROWS, SCAN_BYTES_PER_ROW, "B");
+        }
+    }
+
+    @Test
+    public void syncFillsCacheThenResyncIsCheap() {
+        List<Song> streamed = new ArrayList<>();
+        long start = System.nanoTime();
+        LibraryDelta first = LibrarySync.sync(context, db, streamed::addAll);
+        long elapsed = System.nanoTime() - start;
+
+        // キャッシュが空なので全件がページで届き、差分には含まれない
+        assertEquals(ROWS, streamed.size());
+        assertTrue(first.inserted.isEmpty());
+        String volume = MusicUtils.audioVolumes()[0];
+        assertEquals(ROWS, db.libraryDao().getUris(volume).size());
+        assertEquals(LibrarySync.FIRST_PAGE_SIZE,
+                db.libraryDao().getPageAfter(Long.MAX_VALUE, "", LibrarySync.FIRST_PAGE_SIZE).size());
+        assertWithin("初回同期", elapsed / 1_000_000, SYNC_NS_PER_ROW * ROWS / 1_000_000, "ms");
+
+        start = System.nanoTime();
+        LibraryDelta second = LibrarySync.sync(context, db, null);
+        elapsed = System.nanoTime() - start;
+        assertTrue(second.isEmpty());
+        assertWithin("再同期", elapsed / 1_000_000, RESYNC_NS_PER_ROW * ROWS / 1_000_000, "ms");
+    }
+
+    @Test
+    public void indexedFilterMatchesLinearScanWithinBudget() {
+        List<Song> songs = MusicUtils.loadAllAudio(context);
+        SongSearchIndex index = new SongSearchIndex(songs);
+        String artist = songs.get(songs.size() / 2).getArtist();
+        // JIT の分を除くため、測る語とは別の語で先に検索しておく
+        for (String query : WARM_UP_QUERIES) {
+            SongFilter.filter(songs, index, query, SongFilter.ALL_ARTISTS, () -> false);
+        }
+
+        for (String query : new String[]{"love", "ドライブ", "7", "zzz"}) {
+            List<Song> linear = SongFilter.filter(songs, null, query, SongFilter.ALL_ARTISTS, () -> false);
+            long start = System.nanoTime();
+            List<Song> indexed = SongFilter.filter(songs, index, query, SongFilter.ALL_ARTISTS, () -> false);
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(query, linear, indexed);
+            assertWithin("絞り込み \"" + query + "\"", elapsed / 1_000_000, FILTER_BUDGET_MS, "ms");
+            assertEquals(SongFilter.filter(songs, null, query, artist, () -> false),
+                    SongFilter.filter(songs, index, query, artist, () -> false));
+        }
+    }
+
+    @Test
+    public void typingNarrowsWithinBudget() {
+        List<Song> songs = MusicUtils.loadAllAudio(context);
+        SongSearchIndex index = new SongSearchIndex(songs);
+        for (String query : WARM_UP_QUERIES) {
+            SongFilter.filter(songs, index, new SongSearchIndex.Narrowing(), query,
+                    SongFilter.ALL_ARTISTS, () -> false);
+        }
+
+        // 空欄から 1 文字ずつ入力し、1 文字ごとに測る
+        String typed = "love night";
+        SongSearchIndex.Narrowing narrowing = new SongSearchIndex.Narrowing();
+        for (int i = 1; i <= typed.length(); i++) {
+            String query = typed.substring(0, i);
+            long start = System.nanoTime();
+            List<Song> narrowed = SongFilter.filter(songs, index, narrowing, query,
+                    SongFilter.ALL_ARTISTS, () -> false);
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(query, SongFilter.filter(songs, null, query, SongFilter.ALL_ARTISTS, () -> false),
+                    narrowed);
+            assertWithin("入力 \"" + query + "\"", elapsed / 1_000_000, TYPING_BUDGET_MS, "ms");
+        }
+    }
+
+    @Test
+    public void favoriteToggleUpdatesCacheAndDbWithinBudget() {
+        FavoriteCache favorites = new FavoriteCache(db, Runnable::run);
+        favorites.start();
+        List<Song> songs = MusicUtils.loadAllAudio(context);
+        List<Song> targets = songs.subList(0, Math.min(FAVORITE_TOGGLES, songs.size()));
+
+        long start = System.nanoTime();
+        for (Song s : targets) favorites.setFavorite(s, true);
+        long elapsed = System.nanoTime() - start;
+        // DB への書き込みは同じスレッドで済んでいる
+        assertEquals(targets.size(), db.favoriteDao().getAllIds().size());
+        assertEquals(targets.size(), db.playlistDao().getEntries(PlaylistStore.FAVORITES_ID).size());
+        assertWithin("お気に入り登録/曲", elapsed / 1_000 / targets.size(), FAVORITE_TOGGLE_BUDGET_US, "µs");
+        awaitTrue("登録した曲がお気に入りにならない", () -> {
+            for (Song s : targets) {
+                if (!favorites.isFavorite(s.getId())) return false;
+            }
+            return true;
+        });
+        assertFalse(favorites.isFavorite(songs.get(songs.size() - 1).getId()));
+
+        // 半分を解除
+        for (int i = 0; i < targets.size(); i += 2) favorites.setFavorite(targets.get(i), false);
+        awaitTrue("解除した曲がお気に入りのまま", () -> !favorites.isFavorite(targets.get(0).getId())
+                && favorites.isFavorite(targets.get(1).getId()));
+        assertEquals(targets.size() / 2, db.favoriteDao().getAllIds().size());
+        assertEquals(targets.size() / 2, db.playlistDao().getEntries(PlaylistStore.FAVORITES_ID).size());
+        favorites.stop();
+    }
+}
@@ -0,0 +1,104 @@
+package jp.tukutano.musicapplication.library;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import jp.tukutano.musicapplication.model.Song;
+
+import static org.junit.Assert.*;
+
+/**
+ * LibrarySnapshot のローカルユニットテスト
+ */
+public class LibrarySnapshotTest {
+
+    private static Song song(int id, String artist) {
+        return new Song(String.valueOf(id), "title" + id, artist, "album", "content://media/" + id, 1000L);
+    }
+
+    @Test
+    public void appendTracksStartAndBuildsArtistsOnComplete() {
+        LibrarySnapshot a = LibrarySnapshot.EMPTY.append(Arrays.asList(song(1, "b"), song(2, "a")));
+        assertEquals(1, a.version);
+        assertEquals(0, a.appendedFrom);
+        // 読み込み中はアーティスト一覧を作らない
+        assertTrue(a.artists.isEmpty());
+
+        LibrarySnapshot b = a.append(Collections.singletonList(song(3, "c")));
+        assertEquals(2, b.version);
+        assertEquals(2, b.appendedFrom);
+        assertEquals(3, b.songs.size());
+        // 元のスナップショットは変わらない
+        assertEquals(2, a.songs.size());
+        assertSame(b, b.append(Collections.emptyList()));
+
+        LibrarySnapshot done = b.completed();
+        assertEquals(Arrays.asList("a", "b", "c"), done.artists);
+        assertSame(done, done.completed());
+        // 完了後の追加は追加分だけを反映し、増えなければ一覧を使い回す
+        assertSame(done.artists, done.append(Collections.singletonList(song(4, "a"))).artists);
+        assertEquals(Arrays.asList("a", "b", "c", "d"),
+                done.append(Collections.singletonList(song(5, "d"))).artists);
+    }
+
+    @Test
+    public void appendToOlderSnapshotDoesNotChangeNewer() {
+        LibrarySnapshot a = LibrarySnapshot.EMPTY.append(Collections.singletonList(song(1, "a")));
+        LibrarySnapshot b = a.append(Collections.singletonList(song(2, "a")));
+        // 同じ位置への別の追加は b の配列を書き換えない
+        LibrarySnapshot c = a.append(Collections.singletonList(song(3, "a")));
+        assertEquals("2", b.songs.get(1).getId());
+        assertEquals("3", c.songs.get(1).getId());
+        // 多数のページを足しても各版の中身は変わらない
+        LibrarySnapshot s = b;
+        for (int i = 10; i < 1010; i++) s = s.append(Collections.singletonList(song(i, "a")));
+        assertEquals(1002, s.songs.size());
+        assertEquals(2, b.songs.size());
+        assertEquals("1009", s.songs.get(1001).getId());
+        try {
+            b.songs.get(2);
+            fail("範囲外を読めてしまった");
+        } catch (IndexOutOfBoundsException expected) {
+            // 後の版が書き込んだ分は見えない
+        }
+    }
+
+    @Test
+    public void replaceResetsAppendAndRebuildsArtists() {
+        LibrarySnapshot a = LibrarySnapshot.EMPTY.append(Arrays.asList(song(1, "b"), song(2, "a")));
+        LibrarySnapshot r = a.replace(Collections.singletonList(song(2, "a")));
+        assertEquals(a.version + 1, r.version);
+        assertEquals(-1, r.appendedFrom);
+        assertEquals(Collections.singletonList("a"), r.artists);
+        assertSame(a, a.replace(a.songs));
+    }
+
+    @Test
+    public void indexAndCompleteKeepVersion() {
+        LibrarySnapshot a = LibrarySnapshot.EMPTY.append(Arrays.asList(song(1, "b"), song(2, "a")));
+        assertNull(a.index);
+        LibrarySnapshot done = a.completed().withIndex(new SongSearchIndex(a.songs));
+        assertEquals(a.version, done.version);
+        assertSame(a.songs, done.songs);
+        assertTrue(done.complete);
+        assertNotNull(done.index);
+        // 完了後の追加でも完了の印は残り、インデックスは外れる
+        LibrarySnapshot more = done.append(Collections.singletonList(song(3, "c")));
+        assertTrue(more.complete);
+        assertNull(more.index);
+    }
+
+    @Test
+    public void songsAreUnmodifiable() {
+        List<Song> songs = LibrarySnapshot.EMPTY.append(Collections.singletonList(song(1, "a"))).songs;
+        try {
+            songs.add(song(2, "b"));
+            fail("変更できてしまった");
+        } catch (UnsupportedOperationException expected) {
+            // ワーカーへそのまま渡せる
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package jp.tukutano.musicapplication.library;
+
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * LoudnessMeter のローカルユニットテスト
+ * - EBU Tech 3341 の基準信号（1kHz 正弦波）で値を確認
+ */
+public class LoudnessMeterTest {
+
+    /**
+     * 両チャンネルに同じ正弦波を入れたステレオ信号
+     */
+    private static float[] stereoSine(int sampleRate, double freq, double dbfs, double seconds) {
+        double amp = Math.pow(10.0, dbfs / 20.0);
+        int frames = (int) (sampleRate * seconds);
+        float[] pcm = new float[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            float v = (float) (amp * Math.sin(2 * Math.PI * freq * i / sampleRate));
+            pcm[2 * i] = v;
+            pcm[2 * i + 1] = v;
+        }
+        return pcm;
+    }
+
+    @Test
+    public void stereoSineAtMinus23Dbfs_isMinus23Lufs() {
+        LoudnessMeter meter = new LoudnessMeter(48000, 2);
+        float[] pcm = stereoSine(48000, 1000, -23, 20);
+        meter.addPcmFloat(pcm, 0, pcm.length);
+        assertEquals(-23.0, meter.integratedLoudness(), 0.1);
+        assertEquals(Math.pow(10, -23 / 20.0), meter.peak(), 1e-3);
+    }
+
+    @Test
+    public void otherSampleRate_givesSameLoudness() {
+        LoudnessMeter meter = new LoudnessMeter(44100, 2);
+        float[] pcm = stereoSine(44100, 1000, -33, 20);
+        meter.addPcmFloat(pcm, 0, pcm.length);
+        assertEquals(-33.0, meter.integratedLoudness(), 0.1);
+    }
+
+    @Test
+    public void pcm16_matchesFloat() {
+        float[] pcm = stereoSine(48000, 1000, -20, 10);
+        short[] shorts = new short[pcm.length];
+        for (int i = 0; i < pcm.length; i++) shorts[i] = (short) Math.round(pcm[i] * 32767);
+        LoudnessMeter a = new LoudnessMeter(48000, 2);
+        a.addPcmFloat(pcm, 0, pcm.length);
+        LoudnessMeter b = new LoudnessMeter(48000, 2);
+        b.addPcm16(ShortBuffer.wrap(shorts));
+        assertEquals(a.integratedLoudness(), b.integratedLoudness(), 0.01);
+    }
+
+    @Test
+    public void silence_isGatedOut() {
+        LoudnessMeter meter = new LoudnessMeter(48000, 2);
+        float[] tone = stereoSine(48000, 1000, -23, 10);
+        float[] silence = new float[48000 * 2 * 30];
+        meter.addPcmFloat(silence, 0, silence.length);
+        meter.addPcmFloat(tone, 0, tone.length);
+        meter.addPcmFloat(silence, 0, silence.length);
+        // 無音との境界にまたがる数ブロックの分だけわずかに下がる
+        assertEquals(-23.0, meter.integratedLoudness(), 0.2);
+    }
+
+    @Test
+    public void onlySilence_isNegativeInfinityAndZeroGain() {
+        LoudnessMeter meter = new LoudnessMeter(48000, 1);
+        float[] silence = new float[48000 * 5];
+        meter.addPcmFloat(silence, 0, silence.length);
+        assertEquals(Double.NEGATIVE_INFINITY, meter.integratedLoudness(), 0);
+        assertEquals(0f, LoudnessMeter.replayGainDb(meter.integratedLoudness()), 0);
+    }
+
+    @Test
+    public void replayGain_isRelativeToReferenceAndClamped() {
+        assertEquals(-5f, LoudnessMeter.replayGainDb(-13), 1e-6);
+        assertEquals(5f, LoudnessMeter.replayGainDb(-23), 1e-6);
+        assertEquals(LoudnessMeter.MAX_GAIN_DB, LoudnessMeter.replayGainDb(-60), 0);
+        assertEquals(LoudnessMeter.MIN_GAIN_DB, LoudnessMeter.replayGainDb(20), 0);
+    }
+}
@@ -0,0 +1,122 @@
+package jp.tukutano.musicapplication.library;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import jp.tukutano.musicapplication.model.Song;
+
+import static org.junit.Assert.*;
+
+/**
+ * SongSearchIndex のローカルユニットテスト
+ * - 線形走査（従来の applyFilters と同じ判定）と結果が一致することを確認
+ */
+public class SongSearchIndexTest {
+
+    private static Song song(int id, String title, String artist) {
+        return new Song(String.valueOf(id), title, artist, "album", "content://media/" + id, 1000L);
+    }
+
+    private static int[] linear(List<Song> songs, String query) {
+        String q = SongSearchIndex.normalize(query);
+        int[] out = new int[songs.size()];
+        int count = 0;
+        for (int i = 0; i < songs.size(); i++) {
+            Song s = songs.get(i);
+            if (SongSearchIndex.normalize(s.getTitle()).contains(q)
+                    || SongSearchIndex.normalize(s.getArtist()).contains(q)) {
+                out[count++] = i;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    @Test
+    public void search_matchesTitleOrArtistCaseInsensitive() {
+        List<Song> songs = new ArrayList<>();
+        songs.add(song(1, "Blue Sky", "Alpha"));
+        songs.add(song(2, "Red Road", "Skyline"));
+        songs.add(song(3, "夜の風", "ＢＩＫＥ"));
+        SongSearchIndex index = new SongSearchIndex(songs);
+
+        assertArrayEquals(new int[]{0, 1}, index.search("SKY"));
+        assertArrayEquals(new int[]{2}, index.search("bike"));
+        assertArrayEquals(new int[]{2}, index.search("の風"));
+        assertArrayEquals(new int[]{}, index.search("zzz"));
+        assertArrayEquals(new int[]{0, 1, 2}, index.search(""));
+    }
+
+    @Test
+    public void search_narrowingQueriesMatchLinearScan() {
+        Random random = new Random(42);
+        String alphabet = "abcdefgh ";
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            songs.add(song(i, randomText(random, alphabet, 12), randomText(random, alphabet, 6)));
+        }
+        SongSearchIndex index = new SongSearchIndex(songs);
+
+        SongSearchIndex.Narrowing narrowing = new SongSearchIndex.Narrowing();
+        for (String typed : new String[]{"a", "ab", "abc", "abcd", "bc", "h", "ha", "hag"}) {
+            assertArrayEquals(typed, linear(songs, typed), index.search(typed, narrowing));
+            assertArrayEquals(typed, linear(songs, typed), index.search(typed));
+        }
+    }
+
+    @Test
+    public void search_narrowingFromAnotherIndexIsIgnored() {
+        List<Song> first = new ArrayList<>();
+        first.add(song(1, "Blue Sky", "Alpha"));
+        List<Song> second = new ArrayList<>(first);
+        second.add(song(2, "Skyline", "Beta"));
+        SongSearchIndex.Narrowing narrowing = new SongSearchIndex.Narrowing();
+        new SongSearchIndex(first).search("sk", narrowing);
+        // 前回結果（1 曲目だけ）で絞り込まず、新しいインデックス全体から探す
+        assertArrayEquals(new int[]{0, 1}, new SongSearchIndex(second).search("sky", narrowing));
+    }
+
+    @Test
+    public void search_isSafeFromConcurrentCallers() throws InterruptedException {
+        Random random = new Random(7);
+        String alphabet = "abcdefgh ";
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            songs.add(song(i, randomText(random, alphabet, 12), randomText(random, alphabet, 6)));
+        }
+        SongSearchIndex index = new SongSearchIndex(songs);
+        String[] queries = {"a", "ab", "abc", "bcd", "hag", "e f"};
+        int[][] expected = new int[queries.length][];
+        for (int q = 0; q < queries.length; q++) expected[q] = linear(songs, queries[q]);
+
+        // 画面の作り直し直後のように、複数のワーカーが同じインデックスを同時に検索する
+        AssertionError[] failure = new AssertionError[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                SongSearchIndex.Narrowing narrowing = new SongSearchIndex.Narrowing();
+                for (int i = 0; i < 300; i++) {
+                    int q = (i + offset) % queries.length;
+                    int[] hits = index.search(queries[q], narrowing);
+                    if (!Arrays.equals(expected[q], hits)) {
+                        failure[0] = new AssertionError(queries[q]);
+                        return;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        if (failure[0] != null) throw failure[0];
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package jp.tukutano.musicapplication.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Crossfade のローカルユニットテスト
+ */
+public class CrossfadeTest {
+
+    @Test
+    public void curvesStartSilentAndEndAtFullVolume() {
+        for (Crossfade.Curve c : Crossfade.Curve.values()) {
+            assertEquals(c.name(), 0f, c.fadeIn(0f), 0f);
+            assertEquals(c.name(), 1f, c.fadeIn(1f), 0f);
+            assertEquals(c.name(), 1f, c.fadeOut(0f), 0f);
+            assertEquals(c.name(), 0f, c.fadeOut(1f), 0f);
+            // 範囲外は端に張り付く
+            assertEquals(c.name(), 0f, c.fadeIn(-0.5f), 0f);
+            assertEquals(c.name(), 1f, c.fadeIn(1.5f), 0f);
+        }
+    }
+
+    @Test
+    public void curvesRiseMonotonically() {
+        for (Crossfade.Curve c : Crossfade.Curve.values()) {
+            float prev = 0f;
+            for (int i = 1; i <= 100; i++) {
+                float g = c.fadeIn(i / 100f);
+                assertTrue(c.name() + " at " + i, g >= prev);
+                prev = g;
+            }
+        }
+    }
+
+    @Test
+    public void equalPowerKeepsPowerAndOthersKeepAmplitude() {
+        for (int i = 0; i <= 20; i++) {
+            float x = i / 20f;
+            float in = Crossfade.Curve.EQUAL_POWER.fadeIn(x);
+            float out = Crossfade.Curve.EQUAL_POWER.fadeOut(x);
+            assertEquals(1f, in * in + out * out, 1e-5f);
+            assertEquals(1f, Crossfade.Curve.LINEAR.fadeIn(x) + Crossfade.Curve.LINEAR.fadeOut(x), 1e-5f);
+            assertEquals(1f, Crossfade.Curve.S_CURVE.fadeIn(x) + Crossfade.Curve.S_CURVE.fadeOut(x), 1e-5f);
+        }
+    }
+
+    @Test
+    public void durationIsClampedToSupportedRange() {
+        assertEquals(0, new Crossfade(-1, Crossfade.Curve.LINEAR).durationMs);
+        assertEquals(Crossfade.MAX_MS, new Crossfade(60_000, Crossfade.Curve.LINEAR).durationMs);
+        assertEquals(Crossfade.Curve.EQUAL_POWER, Crossfade.of(1000, 99).curve);
+        assertEquals(Crossfade.Curve.S_CURVE, Crossfade.of(1000, Crossfade.Curve.S_CURVE.ordinal()).curve);
+    }
+
+    @Test
+    public void overlapIsLimitedByHalfOfTheShorterTrack() {
+        Crossfade fade = new Crossfade(8_000, Crossfade.Curve.EQUAL_POWER);
+        assertEquals(8_000, fade.overlapMs(240_000, 180_000));
+        assertEquals(5_000, fade.overlapMs(240_000, 10_000));
+        // 長さが分からない曲・クロスフェードなしは重ねない
+        assertEquals(0, fade.overlapMs(-1, 180_000));
+        assertEquals(0, fade.overlapMs(240_000, 0));
+        assertEquals(0, Crossfade.NONE.overlapMs(240_000, 180_000));
+    }
+}
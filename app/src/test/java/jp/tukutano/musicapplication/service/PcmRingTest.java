@@ -0,0 +1,125 @@
+package jp.tukutano.musicapplication.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * PcmRing のローカルユニットテスト
+ */
+public class PcmRingTest {
+
+    private static void put(PcmRing ring, int value) {
+        PcmRing.Slot slot = ring.acquire();
+        slot.data.putInt(value);
+        ring.commit(slot);
+    }
+
+    private static int takeValue(PcmRing ring) {
+        PcmRing.Slot slot = ring.take();
+        int v = slot.data.getInt();
+        ring.recycle(slot);
+        return v;
+    }
+
+    @Test
+    public void slotsComeOutInOrderAndAreReused() {
+        PcmRing ring = new PcmRing(3, 16);
+        PcmRing.Slot first = null;
+        // 3 スロットを 2 周する
+        for (int round = 0; round < 3; round++) {
+            put(ring, round * 10);
+            put(ring, round * 10 + 1);
+            PcmRing.Slot slot = ring.take();
+            if (first == null) first = slot;
+            assertEquals(round * 10, slot.data.getInt());
+            ring.recycle(slot);
+            assertEquals(round * 10 + 1, takeValue(ring));
+        }
+        // 同じスロットが巡回して使われる
+        assertEquals(0, ring.filled());
+        put(ring, 99);
+        put(ring, 100);
+        assertSame(first, ring.take());
+    }
+
+    @Test
+    public void clear_dropsFilledSlotsAndTheSlotBeingWritten() {
+        PcmRing ring = new PcmRing(4, 16);
+        put(ring, 1);
+        put(ring, 2);
+        PcmRing.Slot writing = ring.acquire();
+        writing.data.putInt(3);
+        ring.clear();
+        ring.commit(writing);
+        assertEquals(0, ring.filled());
+
+        // 全スロットが空きに戻っている
+        for (int i = 0; i < 4; i++) put(ring, 10 + i);
+        for (int i = 0; i < 4; i++) assertEquals(10 + i, takeValue(ring));
+    }
+
+    @Test
+    public void clear_dropsDataDecodedBeforeItEvenInSlotsAcquiredAfter() {
+        PcmRing ring = new PcmRing(4, 16);
+        int decodedAt = ring.generation();
+        ring.clear();
+        // clear() 後に取ったスロットでも、clear() 前の世代のデータは捨てる
+        PcmRing.Slot stale = ring.acquire(decodedAt);
+        stale.data.putInt(1);
+        assertFalse(ring.commit(stale));
+        assertEquals(0, ring.filled());
+
+        PcmRing.Slot fresh = ring.acquire(ring.generation());
+        fresh.data.putInt(2);
+        assertTrue(ring.commit(fresh));
+        assertEquals(2, takeValue(ring));
+    }
+
+    @Test
+    public void acquireBlocksUntilReaderRecycles() throws Exception {
+        PcmRing ring = new PcmRing(2, 16);
+        put(ring, 1);
+        put(ring, 2);
+        Thread writer = new Thread(() -> put(ring, 3));
+        writer.start();
+        writer.join(100);
+        assertTrue(writer.isAlive());
+        assertEquals(1, takeValue(ring));
+        writer.join(1000);
+        assertFalse(writer.isAlive());
+        assertEquals(2, takeValue(ring));
+        assertEquals(3, takeValue(ring));
+    }
+
+    @Test
+    public void poll_returnsNullInsteadOfWaiting() {
+        PcmRing ring = new PcmRing(2, 16);
+        assertNull(ring.poll());
+        put(ring, 7);
+        PcmRing.Slot slot = ring.poll();
+        assertEquals(7, slot.data.getInt());
+        ring.recycle(slot);
+        assertNull(ring.poll());
+        put(ring, 8);
+        ring.close();
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void close_wakesWaitingReader() throws Exception {
+        PcmRing ring = new PcmRing(2, 16);
+        PcmRing.Slot[] result = {ring.acquire()};
+        ring.commit(result[0]);
+        ring.recycle(ring.take());
+        Thread reader = new Thread(() -> result[0] = ring.take());
+        reader.start();
+        reader.join(100);
+        assertTrue(reader.isAlive());
+        ring.close();
+        reader.join(1000);
+        assertFalse(reader.isAlive());
+        assertNull(result[0]);
+        assertNull(ring.acquire());
+    }
+}
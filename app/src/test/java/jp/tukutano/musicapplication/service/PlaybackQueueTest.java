@@ -0,0 +1,157 @@
+package jp.tukutano.musicapplication.service;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * PlaybackQueue のローカルユニットテスト
+ */
+public class PlaybackQueueTest {
+
+    @Test
+    public void next_inOrderWithRepeatAllWraps() {
+        PlaybackQueue q = new PlaybackQueue(new Random(1));
+        q.reset(3, 1);
+        assertEquals(1, q.current());
+        assertEquals(2, q.peekNext());
+        assertEquals(2, q.next());
+        assertEquals(0, q.next());
+        assertEquals(2, q.previous());
+    }
+
+    @Test
+    public void next_repeatOffStopsAtEnd() {
+        PlaybackQueue q = new PlaybackQueue(new Random(1));
+        q.setRepeatMode(PlaybackQueue.RepeatMode.OFF);
+        q.reset(2, 0);
+        assertEquals(1, q.next());
+        assertEquals(-1, q.peekNext());
+        assertEquals(-1, q.next());
+        assertEquals(1, q.current());
+    }
+
+    @Test
+    public void next_repeatOneRepeatsButSkipAdvances() {
+        PlaybackQueue q = new PlaybackQueue(new Random(1));
+        q.setRepeatMode(PlaybackQueue.RepeatMode.ONE);
+        q.reset(5, 3);
+        assertEquals(3, q.peekNext());
+        assertEquals(3, q.next());
+        assertEquals(4, q.skipToNext());
+    }
+
+    @Test
+    public void shuffle_visitsEveryIndexOnceAndPeekMatchesNext() {
+        int n = 1000;
+        PlaybackQueue q = new PlaybackQueue(new Random(42));
+        q.setShuffle(true);
+        q.reset(n, 7);
+        boolean[] seen = new boolean[n];
+        seen[q.current()] = true;
+        assertEquals(7, q.current());
+        for (int i = 1; i < n; i++) {
+            int peek = q.peekNext();
+            int next = q.next();
+            assertEquals(peek, next);
+            assertFalse("duplicate " + next, seen[next]);
+            seen[next] = true;
+        }
+        for (boolean b : seen) assertTrue(b);
+        // 一巡したら同じ並びで先頭に戻る
+        assertEquals(7, q.next());
+    }
+
+    @Test
+    public void shuffle_previousReturnsSamePlayedOrder() {
+        PlaybackQueue q = new PlaybackQueue(new Random(3));
+        q.reset(50, 0);
+        q.setShuffle(true);
+        int[] played = new int[10];
+        played[0] = q.current();
+        for (int i = 1; i < played.length; i++) played[i] = q.next();
+        for (int i = played.length - 2; i >= 0; i--) assertEquals(played[i], q.previous());
+        for (int i = 1; i < played.length; i++) assertEquals(played[i], q.next());
+    }
+
+    @Test
+    public void shuffle_offContinuesFromCurrentSong() {
+        PlaybackQueue q = new PlaybackQueue(new Random(5));
+        q.reset(20, 0);
+        q.setShuffle(true);
+        int cur = q.next();
+        q.setShuffle(false);
+        assertEquals(cur, q.current());
+        assertEquals((cur + 1) % 20, q.next());
+    }
+
+    @Test
+    public void playNext_lastAddedPlaysFirstThenResumesMainOrder() {
+        PlaybackQueue q = new PlaybackQueue(new Random(1));
+        q.reset(10, 0);
+        q.playNext(5);
+        q.playNext(8);
+        assertEquals(8, q.peekNext());
+        assertEquals(8, q.next());
+        assertEquals(5, q.next());
+        assertEquals(1, q.next());
+    }
+
+    @Test
+    public void playNext_previousReturnsToInterruptedSong() {
+        PlaybackQueue q = new PlaybackQueue(new Random(1));
+        q.reset(10, 4);
+        for (int i = 0; i < 20; i++) q.playNext(i % 10);
+        assertEquals(9, q.next());
+        assertEquals(4, q.previous());
+    }
+
+    @Test
+    public void emptyQueue() {
+        PlaybackQueue q = new PlaybackQueue(new Random(1));
+        q.reset(0, 0);
+        assertEquals(-1, q.current());
+        assertEquals(-1, q.next());
+        assertEquals(-1, q.peekNext());
+        assertEquals(-1, q.previous());
+    }
+
+    @Test
+    public void saveRestore_resumesSameShuffledOrder() throws IOException {
+        PlaybackQueue q = new PlaybackQueue(new Random(9));
+        q.reset(500, 17);
+        q.setShuffle(true);
+        q.setRepeatMode(PlaybackQueue.RepeatMode.ONE);
+        for (int i = 0; i < 40; i++) q.skipToNext();
+        q.playNext(3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        q.save(new DataOutputStream(bytes));
+
+        PlaybackQueue r = new PlaybackQueue(new Random(1234));
+        assertTrue(r.restore(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 500));
+        assertEquals(q.current(), r.current());
+        assertEquals(PlaybackQueue.RepeatMode.ONE, r.getRepeatMode());
+        for (int i = 0; i < 20; i++) assertEquals(q.previous(), r.previous());
+        for (int i = 0; i < 600; i++) assertEquals(q.skipToNext(), r.skipToNext());
+    }
+
+    @Test
+    public void restore_rejectsDifferentSize() throws IOException {
+        PlaybackQueue q = new PlaybackQueue(new Random(9));
+        q.reset(10, 2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        q.save(new DataOutputStream(bytes));
+
+        PlaybackQueue r = new PlaybackQueue(new Random(1));
+        r.reset(11, 5);
+        assertFalse(r.restore(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 11));
+        assertEquals(5, r.current());
+    }
+}
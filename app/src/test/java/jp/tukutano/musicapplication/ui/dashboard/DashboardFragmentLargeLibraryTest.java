@@ -0,0 +1,113 @@
+package jp.tukutano.musicapplication.ui.dashboard;
+
+import android.os.Looper;
+
+import androidx.appcompat.widget.SearchView;
+import androidx.fragment.app.testing.FragmentScenario;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import jp.tukutano.musicapplication.R;
+import jp.tukutano.musicapplication.TestSingletons;
+import jp.tukutano.musicapplication.library.FakeAudioProvider;
+import jp.tukutano.musicapplication.library.LibraryRepository;
+import jp.tukutano.musicapplication.library.LibrarySnapshot;
+import jp.tukutano.musicapplication.model.Song;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 大規模ライブラリでのダッシュボード画面（Robolectric）
+ * - FakeAudioProvider の曲を読み込み（全件スキャン → キャッシュ書き込み）、一覧に全曲が出るまで
+ * - 検索語を入れてから絞り込み結果が一覧に出るまで
+ * の時間を予算内に収める。曲数は -PdashboardRows=...（既定 1 万曲）
+ * - DB はメモリ上の AppDatabase。LibraryRepository などはテストごとに作り直す
+ * - 通常の test では 2 千曲・予算 3 倍で実行する（-PlargeLibrary で 1 万曲・予算どおり。app/build.gradle 参照）
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DashboardFragmentLargeLibraryTest {
+
+    private static final int ROWS = Integer.getInteger("bikemusic.dashboardRows", 10_000);
+    // 予算の倍率（通常の test では緩める）
+    private static final long BUDGET_SCALE = Integer.getInteger("bikemusic.budgetScale", 1);
+
+    // 画面表示から全曲が一覧に並ぶまで: 1 曲 500µs まで
+    private static final long LOAD_NS_PER_ROW = 500_000;
+    // 検索語の確定から一覧の更新まで
+    private static final long SEARCH_BUDGET_MS = 500;
+
+    @Before
+    public void setUp() {
+        FakeAudioProvider.register(ROWS);
+        TestSingletons.useInMemoryDatabase(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        TestSingletons.reset();
+    }
+
+    /**
+     * ワーカー・差分計算の結果を UI スレッドで処理しながら、条件が満たされるまで待つ
+     *
+     * @return 待った時間（ms）
+     */
+    private static long awaitOnMain(String what, long budgetMs, BooleanSupplier condition) {
+        budgetMs *= BUDGET_SCALE;
+        long start = System.nanoTime();
+        while (true) {
+            shadowOf(Looper.getMainLooper()).idle();
+            if (condition.getAsBoolean()) break;
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(what + ": " + elapsedMs + "ms（予算 " + budgetMs + "ms）", elapsedMs <= budgetMs);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Test
+    public void showsWholeLibraryAndSearchesWithinBudget() {
+        LibraryRepository repository =
+                LibraryRepository.getInstance(ApplicationProvider.getApplicationContext());
+
+        try (FragmentScenario<DashboardFragment> scenario = FragmentScenario.launchInContainer(
+                DashboardFragment.class, null, R.style.Theme_MusicApplication)) {
+            RecyclerView[] list = new RecyclerView[1];
+            SearchView[] search = new SearchView[1];
+            scenario.onFragment(f -> {
+                list[0] = f.requireView().findViewById(R.id.recyclerView);
+                search[0] = f.requireView().findViewById(R.id.searchView);
+            });
+
+            awaitOnMain("全曲の表示", LOAD_NS_PER_ROW * ROWS / 1_000_000, () -> {
+                LibrarySnapshot s = repository.getLibrary().getValue();
+                return s != null && s.complete && list[0].getAdapter().getItemCount() == ROWS;
+            });
+
+            LibrarySnapshot library = repository.getLibrary().getValue();
+            assertNotNull(library);
+            assertEquals(ROWS, library.songs.size());
+            List<Song> expected = SongFilter.filter(library.songs, null, "love",
+                    SongFilter.ALL_ARTISTS, () -> false);
+            assertTrue(expected.size() < ROWS);
+
+            scenario.onFragment(f -> search[0].setQuery("love", true));
+            awaitOnMain("検索結果の表示", SEARCH_BUDGET_MS,
+                    () -> list[0].getAdapter().getItemCount() == expected.size());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package jp.tukutano.musicapplication.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * LatencyHistogram のローカルユニットテスト
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverValuesWithBoundedError() {
+        long[] samples = {0, 1, 15, 16, 17, 31, 32, 47, 1000, 16_667, 123_456_789L, 1L << 36};
+        for (long v : samples) {
+            int b = LatencyHistogram.bucketOf(v);
+            assertTrue(v + " >= lower", v >= LatencyHistogram.lowerBound(b));
+            assertTrue(v + " <= upper", v <= LatencyHistogram.upperBound(b));
+            // バケット幅は値の 1/16 以内
+            assertTrue(v + " width", LatencyHistogram.upperBound(b) - LatencyHistogram.lowerBound(b) <= v / 16);
+        }
+        // 範囲外の値は最後のバケットへ
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        // バケットは隙間なく並ぶ
+        for (int b = 1; b < LatencyHistogram.BUCKETS; b++) {
+            assertEquals(LatencyHistogram.upperBound(b - 1) + 1, LatencyHistogram.lowerBound(b));
+        }
+    }
+
+    @Test
+    public void percentilesMatchUniformSamples() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int v = 1; v <= 10_000; v++) h.record(v);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(10_000, s.count);
+        assertEquals(10_000, s.max);
+        assertEquals(5000, s.mean());
+        assertEquals(5000, s.percentile(0.50), 5000 / 16.0);
+        assertEquals(9900, s.percentile(0.99), 9900 / 16.0);
+        assertEquals(10_000, s.percentile(1.0));
+        // 最大値を超えない
+        assertTrue(s.percentile(0.999) <= s.max);
+    }
+
+    @Test
+    public void countAboveAndOctaves() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) h.record(8_000);
+        for (int i = 0; i < 10; i++) h.record(40_000);
+        h.record(-5);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(101, s.count);
+        assertEquals(10, s.countAbove(16_667));
+        assertEquals(100, s.countAbove(0));
+
+        long[] octaves = s.octaves(20);
+        assertEquals(1, octaves[0]);
+        // 8000 は 2^12 以上 2^13 未満、40000 は 2^15 以上 2^16 未満
+        assertEquals(90, octaves[13]);
+        assertEquals(10, octaves[16]);
+        // 範囲外は最後にまとめる
+        assertEquals(100, s.octaves(10)[9]);
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(123);
+        h.reset();
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(0, s.count);
+        assertEquals(0, s.max);
+        assertEquals(0, s.percentile(0.5));
+        assertEquals(0, s.countAbove(0));
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        LatencyHistogram h = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) h.record(id * 1000 + i % 1000);
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(400_000, s.count);
+        assertEquals(3999, s.max);
+    }
+}
@@ -0,0 +1,91 @@
+package jp.tukutano.musicapplication.util;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * TraceBuffer のローカルユニットテスト
+ */
+public class TraceBufferTest {
+
+    @Test
+    public void keepsNewestRecordsInOrder() {
+        TraceBuffer buffer = new TraceBuffer(8);
+        for (int i = 0; i < 20; i++) buffer.put(i % 3, i * 10L, 1000L + i, 7L);
+        assertEquals(20, buffer.recorded());
+
+        List<Long> seqs = new ArrayList<>();
+        int n = buffer.forEach((seq, timeNs, event, arg, threadId) -> {
+            seqs.add(seq);
+            assertEquals(seq % 3, event);
+            assertEquals(seq * 10, arg);
+            assertEquals(1000 + seq, timeNs);
+            assertEquals(7L, threadId);
+        });
+        // 古い 12 件は上書きされ、残りの 8 件が古い順に並ぶ
+        assertEquals(8, n);
+        assertEquals(Long.valueOf(12), seqs.get(0));
+        assertEquals(Long.valueOf(19), seqs.get(7));
+    }
+
+    @Test
+    public void rejectsCapacityNotPowerOfTwo() {
+        try {
+            new TraceBuffer(100);
+            fail("2 のべき乗以外を受け付けた");
+        } catch (IllegalArgumentException expected) {
+            // 枠の位置をマスクで求めるため
+        }
+    }
+
+    @Test
+    public void concurrentWritersNeverProduceTornRecords() throws InterruptedException {
+        TraceBuffer buffer = new TraceBuffer(256);
+        int writers = 4;
+        int perWriter = 50_000;
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            int id = w;
+            threads[w] = new Thread(() -> {
+                // 引数と時刻を同じ値にし、読み取った記録で食い違わないことを確認する
+                for (int i = 0; i < perWriter; i++) buffer.put(id, i, i, id);
+            });
+            threads[w].start();
+        }
+        // 書き込みと並行して読み続ける
+        for (Thread t : threads) {
+            while (t.isAlive()) {
+                buffer.forEach((seq, timeNs, event, arg, threadId) -> {
+                    assertEquals(arg, timeNs);
+                    assertEquals(event, threadId);
+                });
+            }
+            t.join();
+        }
+        assertEquals((long) writers * perWriter, buffer.recorded());
+        assertEquals(256, buffer.forEach((seq, timeNs, event, arg, threadId) -> assertEquals(arg, timeNs)));
+    }
+
+    @Test
+    public void putDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long id = Thread.currentThread().getId();
+
+        TraceBuffer buffer = new TraceBuffer(1024);
+        // JIT が落ち着くまで回す
+        for (int i = 0; i < 100_000; i++) buffer.put(i & 7, i, System.nanoTime(), id);
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 10_000; i++) buffer.put(i & 7, i, System.nanoTime(), id);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        // 1 回でも確保すれば 16 バイト以上になる（計測自体の数十バイトは許す）
+        assertTrue("allocated bytes: " + allocated, allocated < 10_000);
+    }
+}
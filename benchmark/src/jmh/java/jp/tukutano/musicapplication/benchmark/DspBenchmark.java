@@ -0,0 +1,66 @@
+package jp.tukutano.musicapplication.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import jp.tukutano.musicapplication.dsp.DspChain;
+import jp.tukutano.musicapplication.dsp.DspConfig;
+import jp.tukutano.musicapplication.dsp.EqPreset;
+
+/**
+ * DSP チェーンの処理（PcmOutput が出力 1 回ごとに行う処理）
+ * - 1 回 = 1024 フレーム・ステレオ・48kHz（≒ 21ms 分）。実時間に間に合うには 47 ops/s 以上
+ * - config は段なし・EQ のみ・コンプレッサーのみ・リミッターのみ・全段
+ */
+@State(Scope.Benchmark)
+public class DspBenchmark {
+
+    private static final int RATE = 48_000;
+    private static final int FRAMES = 1024;
+
+    @Param({"off", "eq", "compressor", "limiter", "all"})
+    public String config;
+
+    private DspChain chain;
+    private float[] source;
+    private float[] buf;
+
+    @Setup
+    public void setUp() {
+        chain = new DspChain(RATE, 2, FRAMES * 2);
+        chain.setStages(configOf(config).createStages());
+        source = new float[FRAMES * 2];
+        for (int f = 0; f < FRAMES; f++) {
+            float v = (float) (0.8 * Math.sin(2 * Math.PI * 440 * f / RATE));
+            source[2 * f] = v;
+            source[2 * f + 1] = v;
+        }
+        buf = new float[FRAMES * 2];
+    }
+
+    private static DspConfig configOf(String name) {
+        switch (name) {
+            case "eq":
+                return new DspConfig(EqPreset.WIND, false, false);
+            case "compressor":
+                return new DspConfig(EqPreset.FLAT, true, false);
+            case "limiter":
+                return new DspConfig(EqPreset.FLAT, false, true);
+            case "all":
+                return new DspConfig(EqPreset.WIND, true, true);
+            default:
+                return DspConfig.OFF;
+        }
+    }
+
+    @Benchmark
+    public float process() {
+        // 毎回同じ入力から処理する（出力を入力に使い回すと減衰した信号を測ることになる）
+        System.arraycopy(source, 0, buf, 0, buf.length);
+        chain.process(buf, FRAMES);
+        return buf[FRAMES];
+    }
+}
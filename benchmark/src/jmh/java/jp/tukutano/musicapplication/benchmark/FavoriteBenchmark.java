@@ -0,0 +1,67 @@
+package jp.tukutano.musicapplication.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+
+import jp.tukutano.musicapplication.model.Song;
+import jp.tukutano.musicapplication.util.LongHashSet;
+
+/**
+ * お気に入り判定（FavoriteCache.isFavorite と同じく ID 文字列を数値にして LongHashSet を引く）
+ * - 全曲を 1 回ずつ判定する（一覧をスクロールし切った時のバインド回数に相当）
+ * - 登録時のコピーオンライト（FavoriteCache.setFavorite の copy + add）
+ */
+@State(Scope.Benchmark)
+public class FavoriteBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<Song> songs;
+    private LongHashSet favorites;
+    private long extraId;
+
+    @Setup
+    public void setUp() {
+        songs = new SyntheticLibrary(size).toSongs();
+        // 1 割をお気に入りに登録
+        Random random = new Random(size);
+        favorites = new LongHashSet(size / 10);
+        for (Song s : songs) {
+            if (random.nextInt(10) == 0) favorites.add(Long.parseLong(s.getId()));
+        }
+        extraId = Long.MAX_VALUE - 1;
+    }
+
+    @Benchmark
+    public int lookupAll() {
+        int hits = 0;
+        for (int i = 0; i < songs.size(); i++) {
+            if (isFavorite(songs.get(i).getId())) hits++;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public LongHashSet toggle() {
+        LongHashSet next = favorites.copy();
+        next.add(extraId);
+        return next;
+    }
+
+    private boolean isFavorite(String songId) {
+        long id;
+        try {
+            id = Long.parseLong(songId);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return favorites.contains(id);
+    }
+}
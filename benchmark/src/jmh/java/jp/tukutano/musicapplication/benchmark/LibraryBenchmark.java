@@ -0,0 +1,73 @@
+package jp.tukutano.musicapplication.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.tukutano.musicapplication.library.LibrarySnapshot;
+import jp.tukutano.musicapplication.library.SongSearchIndex;
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * ライブラリ読み込み時のホットパス
+ * - Song リストの構築（カーソルの行 → Song）
+ * - ページ単位のストリーミング（LibrarySnapshot.append。アーティスト一覧も都度更新）
+ * - 差分同期後の差し替え（LibrarySnapshot.replace。アーティスト一覧を作り直す）
+ * - 検索インデックスの構築
+ */
+@State(Scope.Benchmark)
+public class LibraryBenchmark {
+
+    // LibrarySync と同じページサイズ（最初のページだけ小さい）
+    private static final int FIRST_PAGE_SIZE = 50;
+    private static final int PAGE_SIZE = 500;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private SyntheticLibrary library;
+    private List<Song> songs;
+    private List<List<Song>> pages;
+
+    @Setup
+    public void setUp() {
+        library = new SyntheticLibrary(size);
+        songs = library.toSongs();
+        pages = new ArrayList<>();
+        int from = 0;
+        int limit = FIRST_PAGE_SIZE;
+        while (from < size) {
+            int to = Math.min(size, from + limit);
+            pages.add(songs.subList(from, to));
+            from = to;
+            limit = PAGE_SIZE;
+        }
+    }
+
+    @Benchmark
+    public List<Song> buildSongList() {
+        return library.toSongs();
+    }
+
+    @Benchmark
+    public LibrarySnapshot streamPages() {
+        LibrarySnapshot snapshot = LibrarySnapshot.EMPTY;
+        for (List<Song> page : pages) snapshot = snapshot.append(page);
+        return snapshot.completed();
+    }
+
+    @Benchmark
+    public List<String> buildArtists() {
+        return LibrarySnapshot.EMPTY.replace(songs).artists;
+    }
+
+    @Benchmark
+    public SongSearchIndex buildSearchIndex() {
+        return new SongSearchIndex(songs);
+    }
+}
@@ -0,0 +1,59 @@
+package jp.tukutano.musicapplication.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+import jp.tukutano.musicapplication.service.PlaybackQueue;
+
+/**
+ * 再生キューの操作（MusicService が曲の終了・先読みのたびに呼ぶ処理）
+ * - キューの切り替え（reset）
+ * - 全曲を先読み（peekNext）しながら最後まで進める
+ * - 「次に再生」への追加と消化
+ */
+@State(Scope.Benchmark)
+public class QueueBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean shuffle;
+
+    private PlaybackQueue queue;
+
+    @Setup
+    public void setUp() {
+        queue = new PlaybackQueue(new Random(size));
+        queue.setShuffle(shuffle);
+        queue.setRepeatMode(PlaybackQueue.RepeatMode.OFF);
+    }
+
+    @Benchmark
+    public int reset() {
+        queue.reset(size, size / 2);
+        return queue.current();
+    }
+
+    @Benchmark
+    public long advanceThroughQueue() {
+        queue.reset(size, 0);
+        long sum = 0;
+        while (queue.peekNext() >= 0) sum += queue.next();
+        return sum;
+    }
+
+    @Benchmark
+    public long playNextAndDrain() {
+        queue.reset(size, 0);
+        for (int i = 0; i < 64; i++) queue.playNext((i * 7919) % size);
+        long sum = 0;
+        for (int i = 0; i < 64; i++) sum += queue.skipToNext();
+        return sum;
+    }
+}
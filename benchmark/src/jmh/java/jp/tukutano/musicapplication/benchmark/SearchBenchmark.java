@@ -0,0 +1,65 @@
+package jp.tukutano.musicapplication.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+import jp.tukutano.musicapplication.library.SongSearchIndex;
+import jp.tukutano.musicapplication.model.Song;
+import jp.tukutano.musicapplication.ui.dashboard.SongFilter;
+
+/**
+ * ダッシュボードの絞り込み（DashboardFragment.applyFilters が SongFilterPipeline 経由で行う処理）
+ * - インデックス構築後と、構築前（読み込み中）の線形走査の両方を測る
+ * - indexed は毎回前回結果なしで検索する。typing は 1 文字ずつ入力を続けた場合（前回結果の絞り込み）
+ * - query は 1 文字・よく当たる語・日本語・当たらない語、artist は絞り込みなしと 1 人指定
+ */
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"l", "love", "ドライブ", "zzz"})
+    public String query;
+
+    @Param({"all", "one"})
+    public String artistFilter;
+
+    private List<Song> songs;
+    private SongSearchIndex index;
+    private String artist;
+
+    @Setup
+    public void setUp() {
+        songs = new SyntheticLibrary(size).toSongs();
+        index = new SongSearchIndex(songs);
+        artist = "all".equals(artistFilter) ? SongFilter.ALL_ARTISTS : songs.get(0).getArtist();
+    }
+
+    @Benchmark
+    public List<Song> indexed() {
+        // 前回結果を使わない検索（同じ query の繰り返しで絞り込みの近道を測らないように）
+        return SongFilter.filter(songs, index, query, artist, () -> false);
+    }
+
+    @Benchmark
+    public List<Song> typing() {
+        // 空欄から 1 文字ずつ入力した場合。最後の 1 文字分の結果を返す
+        SongSearchIndex.Narrowing narrowing = new SongSearchIndex.Narrowing();
+        List<Song> result = null;
+        for (int i = 1; i <= query.length(); i++) {
+            result = SongFilter.filter(songs, index, narrowing, query.substring(0, i), artist, () -> false);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Song> linear() {
+        return SongFilter.filter(songs, null, query, artist, () -> false);
+    }
+}
@@ -0,0 +1,69 @@
+package jp.tukutano.musicapplication.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jp.tukutano.musicapplication.model.Song;
+
+/**
+ * ベンチマーク用の合成ライブラリ（同じ曲数なら毎回同じ内容）
+ * - MediaStore のカーソルから読む列を配列で持ち、toSongs() で Song を作る
+ * - 曲名は英語・日本語の単語の組み合わせ、アーティストは 25 曲に 1 人程度
+ */
+final class SyntheticLibrary {
+
+    private static final String[] WORDS = {
+            "love", "night", "road", "wind", "summer", "rain", "blue", "heart", "city", "light",
+            "dream", "fire", "river", "star", "home", "ride", "moon", "highway", "sky", "story",
+            "夜", "風", "海", "空", "雨", "夢", "道", "光", "花", "星",
+            "ドライブ", "サマー", "ライド", "メモリー", "ブルー", "ハイウェイ",
+    };
+
+    final int size;
+    final long[] ids;
+    final String[] titles;
+    final String[] artists;
+    final String[] albums;
+    final long[] durations;
+
+    SyntheticLibrary(int size) {
+        this.size = size;
+        Random random = new Random(size);
+        int artistCount = Math.max(10, size / 25);
+        ids = new long[size];
+        titles = new String[size];
+        artists = new String[size];
+        albums = new String[size];
+        durations = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = 1000 + i;
+            int words = 1 + random.nextInt(3);
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < words; w++) {
+                if (w > 0) title.append(' ');
+                String word = WORDS[random.nextInt(WORDS.length)];
+                title.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+            }
+            titles[i] = title.toString();
+            int artist = random.nextInt(artistCount);
+            artists[i] = (artist % 3 == 0 ? "アーティスト " : "Artist ") + artist;
+            albums[i] = "Album " + (artist * 4 + random.nextInt(4));
+            durations[i] = 120_000 + random.nextInt(240_000);
+        }
+    }
+
+    /**
+     * MusicUtils / LibrarySong.toSong() と同じ形で Song を作る
+     */
+    Song song(int i) {
+        return new Song(String.valueOf(ids[i]), titles[i], artists[i], albums[i],
+                "content://media/external/audio/media/" + ids[i], durations[i]);
+    }
+
+    List<Song> toSongs() {
+        List<Song> songs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) songs.add(song(i));
+        return songs;
+    }
+}